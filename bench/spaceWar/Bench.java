@@ -0,0 +1,102 @@
+package spaceWar;
+
+/**
+ * Times a piece of code for the benchmarks. The code is first run until
+ * the JIT has compiled it, then timed over several rounds, and the
+ * fastest round is reported. Every run returns a value that is summed
+ * and printed, so the work cannot be optimized away.
+ */
+public abstract class Bench
+{
+	// Rounds run before timing and rounds timed
+	protected static final int WARMUP_ROUNDS = 5, TIMED_ROUNDS = 10;
+
+	// Shortest time a round is made to take, in nanoseconds
+	protected static final long ROUND_NANOS = 200000000L;
+
+	// Sum of the values returned by every run
+	protected static long sink = 0;
+
+	/**
+	 * Name printed with the result
+	 */
+	public final String name;
+
+
+	/**
+	 * Creates a benchmark.
+	 *
+	 * @param name name printed with the result
+	 */
+	public Bench( String name )
+	{
+		this.name = name;
+
+	} // end Bench constructor
+
+
+	/**
+	 * Runs the code being timed once.
+	 *
+	 * @return any value depending on the work done
+	 */
+	public abstract long run();
+
+
+	/**
+	 * Times the code and prints the time of one run.
+	 *
+	 * @return nanoseconds taken by one run in the fastest round
+	 */
+	public double measure()
+	{
+		// Enough runs for a round to take ROUND_NANOS
+		int runs = 1;
+
+		while ( time( runs ) < ROUND_NANOS / 4 ) {
+			runs *= 2;
+		}
+
+		long warm = 0;
+
+		for ( int i = 0; i < WARMUP_ROUNDS; i++ ) {
+			warm = time( runs );
+		}
+
+		// Sized again now the code is compiled, as the first runs are slow
+		runs = (int) Math.max( 1, (long) runs * ROUND_NANOS / Math.max( 1, warm ) );
+
+		long best = Long.MAX_VALUE;
+
+		for ( int i = 0; i < TIMED_ROUNDS; i++ ) {
+			best = Math.min( best, time( runs ) );
+		}
+
+		double perRun = (double) best / runs;
+
+		System.out.println( String.format( "%-48s %14.1f ns/run   (%d)", name, perRun, sink & 0xF ) );
+
+		return perRun;
+
+	} // end measure
+
+
+	/**
+	 * Runs the code a number of times.
+	 *
+	 * @param runs number of runs
+	 * @return nanoseconds taken
+	 */
+	protected long time( int runs )
+	{
+		long start = System.nanoTime();
+
+		for ( int i = 0; i < runs; i++ ) {
+			sink += run();
+		}
+
+		return System.nanoTime() - start;
+
+	} // end time
+
+} // end Bench class
@@ -0,0 +1,134 @@
+package spaceWar;
+
+import java.util.Random;
+
+/**
+ * Compares the collision test that took the square root of the squared
+ * distance in doubles with the integer test comparing squared distances,
+ * over random pairs of positions near enough to each other that about 
+ * a third collide. Times the integer test both one pair at a time and in 
+ * its batch form, which tests one position against a list of candidates
+ * held in a store until one collides.
+ *
+ * Usage: java -cp out spaceWar.CollisionBench [pairs]
+ */
+public class CollisionBench
+{
+	// Candidates tested against each position in the batch form
+	static final int CANDIDATES = 16;
+
+
+	public static void main( String[] args )
+	{
+		final int pairs = ( args.length > 0 ) ? Integer.parseInt( args[0] ) : 1000000;
+		Random random = new Random( 19 );
+
+		final int x1[] = new int[ pairs ], y1[] = new int[ pairs ];
+		final int x2[] = new int[ pairs ], y2[] = new int[ pairs ];
+
+		// The second of each pair is held in a store for the batch form,
+		// in runs of candidates that share the first position
+		final EntityStore store = new EntityStore();
+		final int runs[][] = new int[ ( pairs + CANDIDATES - 1 ) / CANDIDATES ][];
+
+		for ( int i = 0; i < pairs; i++ ) {
+
+			if ( i % CANDIDATES == 0 ) {
+
+				x1[i] = 2 * Constants.OBJECT_WIDTH + random.nextInt( Constants.MAX_SECTOR_X - 4 * Constants.OBJECT_WIDTH );
+				y1[i] = 2 * Constants.OBJECT_WIDTH + random.nextInt( Constants.MAX_SECTOR_Y - 4 * Constants.OBJECT_WIDTH );
+			}
+			else {
+
+				x1[i] = x1[i - 1];
+				y1[i] = y1[i - 1];
+			}
+
+			x2[i] = x1[i] + random.nextInt( 3 * Constants.OBJECT_WIDTH ) - 3 * Constants.OBJECT_WIDTH / 2;
+			y2[i] = y1[i] + random.nextInt( 3 * Constants.OBJECT_WIDTH ) - 3 * Constants.OBJECT_WIDTH / 2;
+
+			if ( i % CANDIDATES == 0 ) {
+				runs[ i / CANDIDATES ] = new int[ Math.min( CANDIDATES, pairs - i ) ];
+			}
+
+			runs[ i / CANDIDATES ][ i % CANDIDATES ] = i + 1;
+			store.set( store.add( i + 1 ), x2[i], y2[i], Constants.NORTH );
+		}
+
+		// The batch form stops at the first candidate in collision, so
+		// fewer pairs are tested
+		long batchTests = 0;
+
+		for ( int r = 0; r < runs.length; r++ ) {
+
+			int hit = SectorModel.firstCollision( x1[ r * CANDIDATES ], y1[ r * CANDIDATES ], 
+					store, runs[r], runs[r].length, -1 );
+
+			batchTests += ( hit < 0 ) ? runs[r].length : hit + 1;
+		}
+
+		System.out.println( pairs + " pairs" );
+
+		double sqrt = new Bench( "sqrt of doubles" ) {
+			public long run() {
+
+				long hits = 0;
+
+				for ( int i = 0; i < pairs; i++ ) {
+
+					if ( sqrtCollision( x1[i], y1[i], x2[i], y2[i] ) ) {
+						hits++;
+					}
+				}
+				return hits;
+			}
+		}.measure();
+
+		double squared = new Bench( "squared ints, inCollision" ) {
+			public long run() {
+
+				long hits = 0;
+
+				for ( int i = 0; i < pairs; i++ ) {
+
+					if ( SectorModel.inCollision( x1[i], y1[i], x2[i], y2[i] ) ) {
+						hits++;
+					}
+				}
+				return hits;
+			}
+		}.measure();
+
+		double batch = new Bench( "squared ints, firstCollision" ) {
+			public long run() {
+
+				long sum = 0;
+
+				for ( int r = 0; r < runs.length; r++ ) {
+
+					sum += SectorModel.firstCollision( x1[ r * CANDIDATES ], y1[ r * CANDIDATES ], 
+							store, runs[r], runs[r].length, -1 );
+				}
+				return sum;
+			}
+		}.measure();
+
+		System.out.println( String.format( "  M tests/s: sqrt %.0f, inCollision %.0f, firstCollision %.0f",
+				pairs / sqrt * 1000, pairs / squared * 1000, batchTests / batch * 1000 ) );
+
+	} // end main
+
+
+	/*
+	 * The collision test before it used integers.
+	 */
+	static boolean sqrtCollision( int x1, int y1, int x2, int y2 )
+	{
+		double diffX = x1 - x2;
+		double diffY = y1 - y2;
+
+		return Math.sqrt( diffX * diffX + diffY * diffY ) <= Constants.OBJECT_WIDTH;
+
+	} // end sqrtCollision
+
+} // end CollisionBench class
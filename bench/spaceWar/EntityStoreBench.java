@@ -0,0 +1,113 @@
+package spaceWar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Compares torpedoes held as Torpedo objects in a list, as sectors held
+ * them before, with torpedoes held in an EntityStore. Times a torpedo
+ * step over every torpedo, and copying every torpedo into a snapshot as
+ * the SnapshotBroadcaster does each tick.
+ *
+ * Usage: java -cp out spaceWar.EntityStoreBench [torpedoes]
+ */
+public class EntityStoreBench
+{
+	public static void main( String[] args )
+	{
+		int count = ( args.length > 0 ) ? Integer.parseInt( args[0] ) : 10000;
+		Random random = new Random( 18 );
+
+		// Objects are allocated between other garbage and visited in a 
+		// shuffled order, the way they end up after a game has run a while
+		final ArrayList<Torpedo> objects = new ArrayList<Torpedo>();
+		ArrayList<byte[]> garbage = new ArrayList<byte[]>();
+
+		final EntityStore store = new EntityStore();
+
+		for ( int id = 1; id <= count; id++ ) {
+
+			int x = 1 + random.nextInt( Constants.MAX_SECTOR_X - 1 );
+			int y = 1 + random.nextInt( Constants.MAX_SECTOR_Y - 1 );
+			int heading = 1 + random.nextInt( 8 );
+
+			objects.add( new Torpedo( id, x, y, heading ) );
+			garbage.add( new byte[ random.nextInt( 256 ) ] );
+
+			store.set( store.add( id ), x, y, heading );
+		}
+
+		Collections.shuffle( objects, random );
+		garbage = null;
+
+		final int moved[] = new int[ count ];
+		final Snapshot snapshot = new Snapshot();
+
+		System.out.println( count + " torpedoes" );
+
+		new Bench( "step, Torpedo objects" ) {
+			public long run() {
+
+				long sum = 0;
+
+				for ( int i = 0; i < objects.size(); i++ ) {
+
+					Torpedo torpedo = objects.get( i );
+
+					// Spent torpedoes start over so the work stays the same
+					if ( !torpedo.update() ) {
+						torpedo.lifeCounter = 0;
+					}
+					sum += torpedo.xPosition;
+				}
+				return sum;
+			}
+		}.measure();
+
+		new Bench( "step, EntityStore" ) {
+			public long run() {
+
+				Torpedo.update( store, moved );
+
+				long sum = 0;
+
+				for ( int i = 0; i < store.count; i++ ) {
+
+					if ( moved[i] == 0 ) {
+						store.life[i] = 0;
+					}
+					sum += store.x[i];
+				}
+				return sum;
+			}
+		}.measure();
+
+		new Bench( "snapshot, Torpedo objects" ) {
+			public long run() {
+
+				snapshot.reset( 0 );
+
+				for ( int i = 0; i < objects.size(); i++ ) {
+					snapshot.add( objects.get( i ) );
+				}
+				return snapshot.states[ snapshot.count - 1 ];
+			}
+		}.measure();
+
+		new Bench( "snapshot, EntityStore" ) {
+			public long run() {
+
+				snapshot.reset( 0 );
+
+				for ( int i = 0; i < store.count; i++ ) {
+					snapshot.add( store.id[i] | Snapshot.TORPEDO, 
+							Snapshot.state( store.x[i], store.y[i], store.heading[i] ) );
+				}
+				return snapshot.states[ snapshot.count - 1 ];
+			}
+		}.measure();
+
+	} // end main
+
+} // end EntityStoreBench class
@@ -0,0 +1,102 @@
+package spaceWar;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares probing for obstacles by scanning every obstacle, as sectors
+ * did before, with probing the occupancy map of a sector. Each run 
+ * probes in front of a fixed set of random positions and headings.
+ *
+ * Usage: java -cp out spaceWar.OccupancyBench [obstacles]
+ */
+public class OccupancyBench
+{
+	// Positions probed by each run
+	static final int PROBES = 1000;
+
+
+	public static void main( String[] args )
+	{
+		int count = ( args.length > 0 ) ? Integer.parseInt( args[0] ) : 10000;
+		Random random = new Random( 21 );
+
+		final SectorModel sector = new SectorModel();
+		final ArrayList<Obstacle> obstacles = new ArrayList<Obstacle>();
+
+		for ( int i = 0; i < count; i++ ) {
+
+			Obstacle obstacle = new Obstacle( random.nextInt( Constants.MAX_SECTOR_X ), 
+					random.nextInt( Constants.MAX_SECTOR_Y ) );
+
+			obstacles.add( obstacle );
+			sector.addObstacle( obstacle );
+		}
+
+		final int x[] = new int[ PROBES ], y[] = new int[ PROBES ], heading[] = new int[ PROBES ];
+
+		for ( int i = 0; i < PROBES; i++ ) {
+
+			x[i] = random.nextInt( Constants.MAX_SECTOR_X );
+			y[i] = random.nextInt( Constants.MAX_SECTOR_Y );
+			heading[i] = 1 + random.nextInt( 8 );
+		}
+
+		System.out.println( count + " obstacles, " + PROBES + " probes a run" );
+
+		new Bench( "scan of every obstacle" ) {
+			public long run() {
+
+				long clear = 0;
+
+				for ( int i = 0; i < PROBES; i++ ) {
+
+					if ( scanClear( obstacles, x[i], y[i], heading[i] ) ) {
+						clear++;
+					}
+				}
+				return clear;
+			}
+		}.measure();
+
+		new Bench( "occupancy map" ) {
+			public long run() {
+
+				long clear = 0;
+
+				for ( int i = 0; i < PROBES; i++ ) {
+
+					if ( sector.obstacleClear( x[i], y[i], heading[i], true ) ) {
+						clear++;
+					}
+				}
+				return clear;
+			}
+		}.measure();
+
+	} // end main
+
+
+	/*
+	 * Probes in front of a position by scanning every obstacle.
+	 */
+	static boolean scanClear( ArrayList<Obstacle> obstacles, int x, int y, int heading )
+	{
+		int xObs = x + Constants.dx( heading ) * Constants.INCREMENT;
+		int yObs = y + Constants.dy( heading ) * Constants.INCREMENT;
+
+		for ( int i = 0; i < obstacles.size(); i++ ) {
+
+			Obstacle obs = obstacles.get( i );
+
+			if ( Math.abs( obs.getXPosition() - xObs ) < OccupancyMap.CLEARANCE
+					&& Math.abs( obs.getYPosition() - yObs ) < OccupancyMap.CLEARANCE ) {
+				return false;
+			}
+		}
+
+		return true;
+
+	} // end scanClear
+
+} // end OccupancyBench class
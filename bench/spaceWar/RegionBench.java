@@ -0,0 +1,112 @@
+package spaceWar;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times one torpedo update of a crowded sector stepped on one thread and
+ * then in regions on pools of every size from 1 thread up to the number
+ * of cores. The pool of one thread shows the cost of splitting the work
+ * into regions against stepping it whole. It steps two regions, the 
+ * fewest that use the pool; larger pools step one region per thread.
+ * Destroyed ships and torpedoes are put back at random each tick, so
+ * every tick has the same amount of work.
+ *
+ * Usage: java -cp out spaceWar.RegionBench [torpedoes] [ships]
+ */
+public class RegionBench
+{
+	public static void main( String[] args )
+	{
+		int torpedoes = ( args.length > 0 ) ? Integer.parseInt( args[0] ) : 50000;
+		int ships = ( args.length > 1 ) ? Integer.parseInt( args[1] ) : 500;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		System.out.println( torpedoes + " torpedoes, " + ships + " ships, " + cores + " cores" );
+
+		double serial = time( null, 1, torpedoes, ships );
+
+		for ( int threads = 1; threads <= cores; threads++ ) {
+
+			ForkJoinPool pool = new ForkJoinPool( threads );
+			double split = time( pool, Math.max( 2, threads ), torpedoes, ships );
+			pool.shutdown();
+
+			System.out.println( String.format( "  speedup on %d thread%s: %.2f", threads, 
+					( threads == 1 ) ? "" : "s", serial / split ) );
+		}
+
+	} // end main
+
+
+	/**
+	 * Times a tick of a sector split into a number of regions.
+	 *
+	 * @param pool pool stepping the regions. null to step on one thread.
+	 * @param regions number of regions
+	 * @param torpedoes torpedoes kept in the sector
+	 * @param ships ships kept in the sector
+	 * @return nanoseconds taken by one tick
+	 */
+	static double time( ForkJoinPool pool, int regions, int torpedoes, int ships )
+	{
+		final SectorModel sector = new SectorModel();
+		final Random random = new Random( 23 );
+
+		sector.stepInRegions( pool, regions );
+
+		for ( int i = 0; i < 200; i++ ) {
+			sector.addObstacle( random.nextInt( Constants.MAX_SECTOR_X ), random.nextInt( Constants.MAX_SECTOR_Y ) );
+		}
+
+		for ( int id = 1; id <= ships; id++ ) {
+			place( sector, random, id, false );
+		}
+
+		// Torpedo IDs follow the ship IDs
+		for ( int id = ships + 1; id <= ships + torpedoes; id++ ) {
+			place( sector, random, id, true );
+		}
+
+		return new Bench( "tick, " + ( ( pool == null ) ? "one thread" 
+				: regions + " regions, pool of " + pool.getParallelism() ) ) {
+			public long run() {
+
+				ArrayList<SpaceCraft> destroyed = sector.updateTorpedoes();
+
+				if ( destroyed == null ) {
+					return 0;
+				}
+
+				for ( int i = 0; i < destroyed.size(); i++ ) {
+
+					SpaceCraft craft = destroyed.get( i );
+					place( sector, random, craft.ID, craft instanceof Torpedo );
+				}
+				return destroyed.size();
+			}
+		}.measure();
+
+	} // end time
+
+
+	/*
+	 * Adds a ship or torpedo at a random position.
+	 */
+	static void place( SectorModel sector, Random random, int id, boolean torpedo )
+	{
+		int x = 1 + random.nextInt( Constants.MAX_SECTOR_X - 1 );
+		int y = 1 + random.nextInt( Constants.MAX_SECTOR_Y - 1 );
+		int heading = 1 + random.nextInt( 8 );
+
+		if ( torpedo ) {
+			sector.updateOrAddTorpedo( id, x, y, heading );
+		}
+		else {
+			sector.updateOrAddSpaceCraft( id, x, y, heading );
+		}
+
+	} // end place
+
+} // end RegionBench class
@@ -0,0 +1,77 @@
+package spaceWar;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Times one torpedo update of a sector, which moves every torpedo and
+ * tests it against the ships near it, for a range of ship and torpedo
+ * counts. Destroyed ships and torpedoes are put back at random each 
+ * tick, so every tick has the same amount of work.
+ *
+ * Usage: java -cp out spaceWar.TorpedoBench [most ships] [most torpedoes]
+ */
+public class TorpedoBench
+{
+	public static void main( String[] args )
+	{
+		int mostShips = ( args.length > 0 ) ? Integer.parseInt( args[0] ) : 1000;
+		int mostTorpedoes = ( args.length > 1 ) ? Integer.parseInt( args[1] ) : 10000;
+
+		for ( int ships = 10; ships <= mostShips; ships *= 10 ) {
+
+			for ( int torpedoes = 100; torpedoes <= mostTorpedoes; torpedoes *= 10 ) {
+
+				time( ships, torpedoes );
+			}
+		}
+
+	} // end main
+
+
+	/**
+	 * Times a tick of a sector holding a number of ships and torpedoes.
+	 *
+	 * @param ships ships kept in the sector
+	 * @param torpedoes torpedoes kept in the sector
+	 * @return nanoseconds taken by one tick
+	 */
+	static double time( int ships, int torpedoes )
+	{
+		final SectorModel sector = new SectorModel();
+		final Random random = new Random( 4 );
+
+		for ( int i = 0; i < Constants.NUMBER_OF_OBSTACLES; i++ ) {
+			sector.addObstacle( random.nextInt( Constants.MAX_SECTOR_X ), random.nextInt( Constants.MAX_SECTOR_Y ) );
+		}
+
+		for ( int id = 1; id <= ships; id++ ) {
+			RegionBench.place( sector, random, id, false );
+		}
+
+		// Torpedo IDs follow the ship IDs
+		for ( int id = ships + 1; id <= ships + torpedoes; id++ ) {
+			RegionBench.place( sector, random, id, true );
+		}
+
+		return new Bench( "tick, " + ships + " ships, " + torpedoes + " torpedoes" ) {
+			public long run() {
+
+				ArrayList<SpaceCraft> destroyed = sector.updateTorpedoes();
+
+				if ( destroyed == null ) {
+					return 0;
+				}
+
+				for ( int i = 0; i < destroyed.size(); i++ ) {
+
+					SpaceCraft craft = destroyed.get( i );
+					RegionBench.place( sector, random, craft.ID, craft instanceof Torpedo );
+				}
+				return destroyed.size();
+			}
+		}.measure();
+
+	} // end time
+
+} // end TorpedoBench class
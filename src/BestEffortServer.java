@@ -1,36 +1,41 @@
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 import spaceWar.Constants;
-import spaceWar.SpaceCraft;
+import spaceWar.Protocol;
+import spaceWar.SectorCommand;
 
 /**
- *  Class to receive and forward UDP packets containing
- *  updates from clients. In addition, it checks for 
- *  collisions caused by client movements and sends
- *  appropriate removal information
+ *  Class to receive UDP packets containing updates and
+ *  snapshot acknowledgements from clients of every room. Updates are
+ *  submitted to the sector of the sender's room as commands, which the 
+ *  GameLoop of the room applies and checks for collisions at its next 
+ *  tick. Clients learn of the updates through the snapshots sent by the 
+ *  SnapshotBroadcaster. Updates from session IDs that are not registered
+ *  are dropped.
+ *  
+ *  Steady state receiving does not allocate. Fields are decoded straight
+ *  out of a reused direct buffer using Protocol, ships are identified 
+ *  by the session ID carried in the message, and each client's command is
+ *  reused. Submitting never blocks.
  *  
  * @author bachmaer
  */
 class BestEffortServer extends Thread {
 	
-	// Socket through which all client UDP messages are received
-	protected DatagramSocket gamePlaySocket = null;
+	// Channel through which all client UDP messages are received
+	protected DatagramChannel gamePlayChannel = null;
 
-	// DatagramPacket for receiving updates. All updates are 24 bytes.
-	protected DatagramPacket recPack = new DatagramPacket(new byte[24], 24);
+	// Buffer for receiving updates and acknowledgements, which are the 
+	// same size. One byte larger than that so that longer messages can be
+	// recognized and ignored.
+	protected ByteBuffer recBuffer = ByteBuffer.allocateDirect( Protocol.SHIP_UPDATE_SIZE + 1 );
 	
 	// Data members for holding values contained in the fields of
 	// received messages
-	protected byte ipBytes[] = new byte[4];
-	protected int port, code, x, y, heading;
-	protected InetSocketAddress id;
+	protected int id, code, x, y, heading, seq;
 	
 	// Reference to the SpaceGameServer object that instantiated an object 
 	// of this class. Methods of that class are called through this reference.
@@ -38,10 +43,10 @@ class BestEffortServer extends Thread {
 
 	// Setting to false cases all message forwarding
 	// and game state updating to end.
-	protected boolean playing = true;
+	protected volatile boolean playing = true;
 	
 	/**
-	 * Creates DatagramSocket through which all client update messages
+	 * Creates DatagramChannel through which all client update messages
 	 * will be received and forwarded.
 	 */
 	public BestEffortServer( SpaceGameServer spaceGameServer ){
@@ -52,7 +57,8 @@ class BestEffortServer extends Thread {
 
 			// Uses the same port number as the TCP socket that is used
 			// to reliably send game information.
-			gamePlaySocket = new DatagramSocket( Constants.SERVER_PORT );
+			gamePlayChannel = DatagramChannel.open();
+			gamePlayChannel.socket().bind( new InetSocketAddress( spaceGameServer.options.port() ) );
 			
 		} catch (IOException e) {
 
@@ -66,109 +72,125 @@ class BestEffortServer extends Thread {
 	
 	/**
 	 * Causes all threads and timer tasks to cease execution and closes all
-	 * sockets.
+	 * sockets. Closing the channel ends a receive that is waiting.
 	 */
 	public void close ()
 	{		
 		playing = false;
+		
+		try {
+			gamePlayChannel.close();
+		} catch (IOException e) {
+			System.err.println("Error closing game play channel.");
+		}
 
 	} // end close 
 	
 	
 	/**
-	 * run method that continuously receives update messages, updates the display, 
-	 * and then forwards update messages.
+	 * run method that continuously receives update messages and queues 
+	 * them for the next tick of the game.
 	 */
 	public void run() {
 
-		// Receive and forward messages
+		// Receive messages
 		while (playing) {
 			
 			try {
 				
-				receiveReadAndForwardMessage();
+				if ( receiveAndReadMessage() ) {
 						
-				updateDisplay();
+					queueUpdate();
+				}
 
 				// Be nice to other threads
-				yield();
+				Thread.yield();
 
 			} catch (IOException e) {
-				System.err.println("Error sending remove message.");
+				
+				// Closing the channel ends the receive it was waiting in
+				if ( playing ) {
+					System.err.println("Error receiving update message.");
+				}
 			}
 		}
-		
-		gamePlaySocket.close();
 
 	} // end run
 	
 	
 	/**
-	 * Receives an update message and extracts the value contained in 
-	 * each field of the message. The message is then forwared to all other 
-	 * clients.
+	 * Receives a message and extracts the value contained in each field 
+	 * of the message. Acknowledgements of snapshots are handled here. 
+	 * Messages of another protocol version or size are dropped.
 	 * 
+	 * @return true if a ship update was received
 	 * @throws IOException
 	 */
-	protected void receiveReadAndForwardMessage() throws IOException
+	protected boolean receiveAndReadMessage() throws IOException
 	{
 		// Receive packet
-		gamePlaySocket.receive(recPack);
-
-		// Create streams
-		ByteArrayInputStream bais = new ByteArrayInputStream(
-				recPack.getData());
-		DataInputStream dis = new DataInputStream(bais);
+		recBuffer.clear();
+		gamePlayChannel.receive( recBuffer );
+		recBuffer.flip();
+		
+		if ( recBuffer.limit() != Protocol.SHIP_UPDATE_SIZE 
+				|| !Protocol.isCurrentVersion( recBuffer, recBuffer.limit() ) ) {
+			
+			return false;
+		}
 
 		// Read message fields
-		dis.read(ipBytes);
-		port = dis.readInt();
-		code = dis.readInt();
-		x = dis.readInt();
-		y = dis.readInt();
-		heading = dis.readInt();
+		code = Protocol.getCode( recBuffer );
+		id = Protocol.getId( recBuffer, Protocol.HEADER_SIZE );
 		
-		// Get id for the client that sent the message
-		id = new InetSocketAddress( InetAddress.getByAddress(ipBytes), port);
+		if ( code == Constants.ACK ) {
+			
+			seq = Protocol.getAckSeq( recBuffer );
+			ClientSocketConnection client = spaceGameServer.clients.get( id );
+			
+			if ( client != null ) {
+				client.acknowledge( seq );
+			}
+			
+			return false;
+		}
+		
+		x = Protocol.getX( recBuffer, Protocol.HEADER_SIZE );
+		y = Protocol.getY( recBuffer, Protocol.HEADER_SIZE );
+		heading = Protocol.getHeading( recBuffer, Protocol.HEADER_SIZE );
 		
-		// Forward to all clients except the one that sent it.
-		spaceGameServer.selectiveForward( recPack, id, gamePlaySocket);
+		return true;
 
-	} // end receiveReadAndForwardMessage
+	} // end receiveAndReadMessage
 	
 	
 	/**
-	 * Updates the sector display and check for collisions. If it determines
-	 * a collision has occurred. it sends remove messages to all clients.
+	 * Submits a received ship update for the next tick of the game. If the
+	 * previous update of the ship has not been applied yet it is replaced.
 	 */
-	protected void updateDisplay()
+	protected void queueUpdate()
 	{
 		if (code == Constants.JOIN || code == Constants.UPDATE_SHIP ) {
 			
-			// Create a temp spacecraft for adding to the sector display 
-			// or for updating.
-			SpaceCraft ship = new SpaceCraft( id, x, y, heading );
+			ClientSocketConnection client = spaceGameServer.clients.get( id );
 			
-			// Update the sector display
-			spaceGameServer.sector.updateOrAddSpaceCraft( ship );
-			
-			// Check to see if any collisions have occurred
-			ArrayList<SpaceCraft> destroyed = spaceGameServer.sector.collisionCheck( ship );
+			if ( client == null ) {
+				return;
+			}
 			
-			// Send remove information if something was destroyed in a 
-			// collision.
-			if (destroyed != null ) {
-				
-				for ( SpaceCraft sc: destroyed) {
-					spaceGameServer.sendRemove( sc );
-				}
+			if ( client.move == null ) {
+				client.move = new SectorCommand( Constants.UPDATE_SHIP, id, x, y, heading );
 			}
+			
+			client.move.set( x, y, heading );
+			client.room.sector.submit( client.move );
 		}
 		else {
 			System.out.println("Unknown UDP message received. Code: " + code);
 		}
 		
-	} // end updateDisplay
+	} // end queueUpdate
 	
 	
 } // end gamePlayServer class
+
@@ -0,0 +1,237 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+import spaceWar.Protocol;
+
+/**
+ * Registry of the clients connected to the server. Joining and leaving
+ * replace a published array with a new copy, so threads sending to 
+ * every client read the current array without taking a lock and never
+ * see it change while they iterate over it.
+ * 
+ * The registry also hands out the session IDs that identify clients and 
+ * their ships in game play messages. IDs are handed out in turn rather 
+ * than reusing the one just released, so removals of a departed client's 
+ * ship are not mistaken for a newcomer's.
+ * 
+ * The servers of a cluster share one space of session IDs, so that a ship
+ * keeps its ID when it moves from one server to another. Each server 
+ * hands out every n-th ID, starting from a different one.
+ */
+class ClientRegistry 
+{
+	// Currently registered clients. Never modified once published.
+	protected volatile ClientSocketConnection clients[] = new ClientSocketConnection[0];
+	
+	// Registered clients indexed by session ID. Replaced like clients.
+	protected volatile ClientSocketConnection byID[] = new ClientSocketConnection[0];
+	
+	// Session IDs in use and the next one to try. Zero is never used.
+	protected BitSet sessionIDs = new BitSet();
+	protected int nextSessionID = 1;
+	
+	// First session ID handed out and the distance between the IDs
+	protected final int firstSessionID, sessionIDStep;
+	
+	
+	/**
+	 * Creates a registry handing out every session ID.
+	 */
+	public ClientRegistry()
+	{
+		this( 1, 1 );
+		
+	} // end ClientRegistry constructor
+	
+	
+	/**
+	 * Creates a registry handing out every step-th session ID, starting 
+	 * with first.
+	 * 
+	 * @param first first session ID handed out. Must be at least 1.
+	 * @param step distance between the session IDs handed out
+	 */
+	public ClientRegistry( int first, int step )
+	{
+		firstSessionID = first;
+		sessionIDStep = step;
+		nextSessionID = first;
+		
+	} // end ClientRegistry constructor
+	
+	
+	
+	/**
+	 * Reserves a session ID for a registering client.
+	 * 
+	 * @return session ID or -1 if every ID is in use
+	 */
+	public synchronized int allocateSessionID()
+	{
+		for ( int tries = 0; tries < Protocol.MAX_SESSION_ID; tries += sessionIDStep ) {
+			
+			int id = nextSessionID;
+			nextSessionID = ( id + sessionIDStep > Protocol.MAX_SESSION_ID ) ? firstSessionID : id + sessionIDStep;
+			
+			if ( !sessionIDs.get( id ) ) {
+				
+				sessionIDs.set( id );
+				return id;
+			}
+		}
+		
+		return -1;
+		
+	} // end allocateSessionID
+	
+	
+	/**
+	 * Reserves the session ID of a ship that has moved here from another
+	 * server of a cluster.
+	 * 
+	 * @param id session ID the ship had on the other server
+	 * @return false if a registered client already has the ID
+	 */
+	public synchronized boolean claimSessionID( int id )
+	{
+		if ( id <= 0 || id > Protocol.MAX_SESSION_ID || get( id ) != null ) {
+			return false;
+		}
+		
+		sessionIDs.set( id );
+		return true;
+		
+	} // end claimSessionID
+	
+	
+	/**
+	 * Makes a session ID available again. Called for clients that are
+	 * rejected before being added. remove releases the IDs of added ones.
+	 * 
+	 * @param id session ID to release
+	 */
+	public synchronized void releaseSessionID( int id )
+	{
+		sessionIDs.clear( id );
+		
+	} // end releaseSessionID
+	
+	
+	/**
+	 * Adds a client and publishes the new array.
+	 * 
+	 * @param client connection of the registering client
+	 */
+	public synchronized void add( ClientSocketConnection client )
+	{
+		ClientSocketConnection current[] = clients;
+		ClientSocketConnection updated[] = new ClientSocketConnection[ current.length + 1 ];
+		
+		System.arraycopy( current, 0, updated, 0, current.length );
+		updated[ current.length ] = client;
+		
+		ClientSocketConnection updatedByID[] = Arrays.copyOf( byID, 
+				Math.max( byID.length, Integer.highestOneBit( client.sessionID ) << 1 ) );
+		updatedByID[ client.sessionID ] = client;
+		
+		clients = updated;
+		byID = updatedByID;
+		
+	} // end add
+	
+	
+	/**
+	 * Removes a client, releases its session ID and publishes the new 
+	 * array. Nothing is done if the client is not registered.
+	 * 
+	 * @param client connection of the departing client
+	 */
+	public synchronized void remove( ClientSocketConnection client )
+	{
+		ClientSocketConnection current[] = clients;
+		
+		for ( int i = 0; i < current.length; i++ ) {
+			
+			if ( current[i] == client ) {
+				
+				ClientSocketConnection updated[] = new ClientSocketConnection[ current.length - 1 ];
+				
+				System.arraycopy( current, 0, updated, 0, i );
+				System.arraycopy( current, i + 1, updated, i, current.length - i - 1 );
+				
+				ClientSocketConnection updatedByID[] = byID.clone();
+				updatedByID[ client.sessionID ] = null;
+				
+				clients = updated;
+				byID = updatedByID;
+				sessionIDs.clear( client.sessionID );
+				return;
+			}
+		}
+		
+	} // end remove
+	
+	
+	/**
+	 * Removes a client whose ship has moved to another server of a 
+	 * cluster. A session ID this registry handed out stays reserved until
+	 * the server holding the ship reports it has left the game, so that 
+	 * it is not handed out while the ship is still flying elsewhere.
+	 * 
+	 * @param client connection of the client
+	 */
+	public synchronized void handOff( ClientSocketConnection client )
+	{
+		remove( client );
+		
+		if ( ( client.sessionID - 1 ) % sessionIDStep == firstSessionID - 1 ) {
+			sessionIDs.set( client.sessionID );
+		}
+		
+	} // end handOff
+	
+	
+	/**
+	 * Makes the session ID of a ship handed to another server available
+	 * again once the ship has left the game. A ship that has come back
+	 * meanwhile keeps the ID its client claimed again.
+	 * 
+	 * @param id session ID of the ship handed over
+	 */
+	public synchronized void releaseHandedOff( int id )
+	{
+		if ( get( id ) == null ) {
+			sessionIDs.clear( id );
+		}
+		
+	} // end releaseHandedOff
+	
+	
+	/**
+	 * Accessor for the clients registered at the time of the call. The 
+	 * array must not be modified.
+	 * 
+	 * @return registered clients
+	 */
+	public ClientSocketConnection[] snapshot()
+	{
+		return clients;
+		
+	} // end snapshot
+	
+	
+	/**
+	 * Looks up a registered client by its session ID.
+	 * 
+	 * @param id session ID
+	 * @return connection of the client or null if none has the ID
+	 */
+	public ClientSocketConnection get( int id )
+	{
+		ClientSocketConnection current[] = byID;
+		
+		return ( id >= 0 && id < current.length ) ? current[id] : null;
+		
+	} // end get
+	
+} // end ClientRegistry class
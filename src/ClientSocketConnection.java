@@ -0,0 +1,336 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+import spaceWar.SectorCommand;
+import spaceWar.Snapshot;
+
+/**
+ * Helper class to keep track of client TCP connections. Maintaining 
+ * a collection of these objects removes the requirement to have a 
+ * continuous running thread for each client. After a client has 
+ * registered, removal information is sent using this connection by 
+ * the server. Requests from the client arrive on the same connection 
+ * and are read by the ReliableServer.
+ * 
+ * Frames are not written by the thread that sends them. They are put
+ * in a bounded outbound queue that is drained by the ReliableServer 
+ * when the socket can take more data, so a slow client never holds up
+ * the thread sending to it. What happens when the queue is full is 
+ * decided by an OverflowPolicy.
+ *  
+ * @author bachmaer
+ *
+ */
+class ClientSocketConnection
+{	
+	/**
+	 * What to do with a frame sent to a client whose outbound queue is full.
+	 */
+	enum OverflowPolicy 
+	{
+		/**
+		 * Discard the frame.
+		 */
+		DROP,
+		
+		/**
+		 * Append the frame to the last frame in the queue so the number
+		 * of queued buffers does not grow. Once the last buffer would grow
+		 * past MAX_COALESCED_BYTES the client is treated as by DISCONNECT,
+		 * so a client that never reads cannot hold unbounded memory.
+		 */
+		COALESCE,
+		
+		/**
+		 * Keep queuing frames past the capacity, and disconnect the client
+		 * once its queue has stayed full for longer than the stall time.
+		 * A client that catches up before then misses no frame.
+		 */
+		DISCONNECT
+	}
+	
+	/**
+	 * Largest buffer the COALESCE policy merges frames into
+	 */
+	static final int MAX_COALESCED_BYTES = 64 * 1024;
+	
+	/**
+	 * Connection to a client that is listing for remove information
+	 */
+	public SocketChannel clientTCPConnection;
+	
+	/**
+	 * Address of the DatagramSocket the client uses for game play messages
+	 */
+	public InetSocketAddress clientDatagramAddress;
+	
+	/**
+	 * Session ID assigned to the client when it registered
+	 */
+	public int sessionID;
+	
+	// Room the client plays in. Set when it registers.
+	protected Room room;
+	
+	// Set once the client's ship has been handed to another server of a
+	// cluster. The client is then redirected there.
+	protected volatile boolean handedOff = false;
+	
+	// Command reused for every move of the client's ship. Created and
+	// used by the BestEffortServer.
+	protected SectorCommand move;
+	
+	// Session IDs of the ships the client is being sent updates for. 
+	// Only used by the InterestManager.
+	protected BitSet visible = new BitSet();
+	
+	// Snapshots recently sent to the client indexed by sequence number 
+	// modulo their number. Created and used by the SnapshotBroadcaster.
+	protected Snapshot sentSnapshots[];
+	
+	// Sequence numbers of the last snapshot sent and the newest one the 
+	// client has acknowledged. Zero before the first.
+	protected volatile int lastSentSeq = 0;
+	protected volatile int ackedSeq = 0;
+	
+	// Key of the connection in the selector of the ReliableServer
+	protected SelectionKey key;
+	
+	// Frames waiting to be written
+	protected ArrayDeque<ByteBuffer> outbound = new ArrayDeque<ByteBuffer>();
+	
+	// Frames taken from the queue to be written with one gathering write.
+	// Those from writeStart up to writeEnd still have bytes to write. Only
+	// used by the writing thread.
+	protected ByteBuffer writing[];
+	protected int writeStart = 0, writeEnd = 0;
+	
+	// Backpressure settings
+	protected int capacity;
+	protected OverflowPolicy policy;
+	protected long stallMillis;
+	
+	// Time at which the queue was first found full. Zero when it is not full.
+	protected long fullSince = 0;
+	
+	// True while the connection is waiting to be drained by the writer
+	protected boolean scheduled = false;
+	
+	// Set when the client has stalled for too long
+	protected boolean disconnectRequested = false;
+	
+	/**
+	 * Creates a connection with an empty outbound queue.
+	 * 
+	 * @param channel connection to the client
+	 * @param datagramAddress address of the client's DatagramSocket
+	 * @param sessionID session ID assigned to the client
+	 * @param key key of the channel in the selector of the writer
+	 * @param capacity maximum number of queued frames
+	 * @param policy what to do when the queue is full
+	 * @param stallMillis how long the queue may stay full before 
+	 * the DISCONNECT policy drops the client
+	 */
+	public ClientSocketConnection(SocketChannel channel, InetSocketAddress datagramAddress, 
+								  int sessionID, SelectionKey key, int capacity, OverflowPolicy policy, 
+								  long stallMillis)
+	{
+		// Save the connection
+		this.clientTCPConnection = channel;
+		this.clientDatagramAddress = datagramAddress;
+		this.sessionID = sessionID;
+		this.key = key;
+		this.capacity = capacity;
+		this.policy = policy;
+		this.stallMillis = stallMillis;
+		this.writing = new ByteBuffer[ Math.max( capacity, 1 ) ];
+		
+	} // end ClientSocketConnection constructor
+	
+	
+	/**
+	 * Puts a frame in the outbound queue. Never blocks on the socket. The
+	 * frame may be shared with other connections. It is not modified.
+	 * 
+	 * @param frame buffer holding the frame
+	 * @return true if the connection must be handed to the writer. False 
+	 * if the writer already knows about it or the frame was not queued.
+	 */
+	public synchronized boolean send(ByteBuffer frame)
+	{
+		if ( disconnectRequested ) {
+			return false;
+		}
+		
+		if ( outbound.size() >= capacity ) {
+			
+			switch ( policy ) {
+			
+			case COALESCE:
+				
+				ByteBuffer last = outbound.peekLast();
+				
+				if ( last.remaining() + frame.remaining() <= MAX_COALESCED_BYTES ) {
+					
+					ByteBuffer merged = ByteBuffer.allocate( last.remaining() + frame.remaining() );
+					merged.put( last.duplicate() );
+					merged.put( frame.duplicate() );
+					merged.flip();
+					outbound.pollLast();
+					outbound.addLast( merged );
+					break;
+				}
+				
+				// Too much held for the client
+				return stall( frame );
+				
+			case DISCONNECT:
+				
+				return stall( frame );
+				
+			default:
+				
+				return false;
+			}
+		}
+		else {
+			
+			fullSince = 0;
+			outbound.addLast( frame.duplicate() );
+		}
+		
+		return schedule();
+		
+	} // end send
+	
+	
+	/**
+	 * Queues a frame past the capacity for a client whose queue is full, 
+	 * unless the queue has stayed full for longer than the stall time. 
+	 * The client is then disconnected instead.
+	 * 
+	 * @param frame buffer holding the frame
+	 * @return true if the connection must be handed to the writer
+	 */
+	private boolean stall( ByteBuffer frame )
+	{
+		long now = System.currentTimeMillis();
+		
+		if ( fullSince == 0 ) {
+			fullSince = now;
+		}
+		else if ( now - fullSince > stallMillis ) {
+			
+			// The writer closes the connection
+			disconnectRequested = true;
+			return schedule();
+		}
+		
+		outbound.addLast( frame.duplicate() );
+		return schedule();
+		
+	} // end stall
+	
+	
+	/**
+	 * Marks the connection as waiting for the writer.
+	 * 
+	 * @return true if it was not already waiting
+	 */
+	protected boolean schedule()
+	{
+		if ( scheduled ) {
+			return false;
+		}
+		
+		scheduled = true;
+		return true;
+		
+	} // end schedule
+	
+	
+	/**
+	 * Determines whether the client should be disconnected because it
+	 * stopped reading. Called by the writer.
+	 * 
+	 * @return true if the connection should be closed
+	 */
+	public synchronized boolean isDisconnectRequested()
+	{
+		return disconnectRequested;
+		
+	} // end isDisconnectRequested
+	
+	
+	/**
+	 * Writes queued frames until the queue is empty or the socket will 
+	 * not take any more. Everything queued is written with a single 
+	 * gathering write when the socket has room. Only called by the writer.
+	 * 
+	 * @return true if everything queued has been written
+	 * @throws IOException
+	 */
+	public boolean flush() throws IOException
+	{
+		while ( true ) {
+			
+			if ( writeStart == writeEnd ) {
+				
+				synchronized ( this ) {
+					
+					writeStart = 0;
+					writeEnd = 0;
+					
+					ByteBuffer frame;
+					
+					while ( writeEnd < writing.length && ( frame = outbound.pollFirst() ) != null ) {
+						writing[ writeEnd++ ] = frame;
+					}
+					
+					if ( writeEnd == 0 ) {
+						
+						// Producers must hand the connection over again
+						scheduled = false;
+						return true;
+					}
+				}
+			}
+			
+			clientTCPConnection.write( writing, writeStart, writeEnd - writeStart );
+			
+			// Let go of frames that have been completely written
+			while ( writeStart < writeEnd && !writing[ writeStart ].hasRemaining() ) {
+				writing[ writeStart++ ] = null;
+			}
+			
+			if ( writeStart < writeEnd ) {
+				return false;
+			}
+		}
+		
+	} // end flush
+	
+	/**
+	 * Records that the client has received a snapshot. Acknowledgements
+	 * of older snapshots than one already acknowledged, or of snapshots
+	 * that were never sent, are ignored. Called by the one thread 
+	 * receiving game play messages.
+	 * 
+	 * @param seq sequence number of the snapshot
+	 */
+	public void acknowledge(int seq)
+	{
+		if ( seq > ackedSeq && seq <= lastSentSeq ) {
+			
+			ackedSeq = seq;
+		}
+		
+	} // end acknowledge
+	
+	
+} // end ClientSocketConnection
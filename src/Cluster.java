@@ -0,0 +1,392 @@
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+import spaceWar.Constants;
+import spaceWar.Protocol;
+
+/**
+ * Place of a server in a cluster of servers that together host a map
+ * larger than one sector. The servers are laid out in columns and rows,
+ * each owning one sector of the map, and are numbered along the rows
+ * from 0. They run on one machine, each on its own port.
+ *
+ * A ship or torpedo that reaches an edge of the sector shared with
+ * another server is handed to that server over a PeerLink and enters its
+ * sector at the opposite edge. The client flying the ship is redirected
+ * to the other server and keeps its session ID. The ship and the 
+ * redirect carry the same random ticket, which the client must show to
+ * claim its session ID on the other server. An edge with no server
+ * beyond it, or whose server cannot be reached, stays a wall.
+ *
+ * Each server hands out its own session IDs. The ID of a ship that has
+ * moved on stays reserved on the server that handed it out until the
+ * server holding the ship reports that it has left the game.
+ */
+class Cluster
+{
+	/**
+	 * Sides of the sector, used to index the neighbours
+	 */
+	static final int WEST = 0, EAST = 1, NORTH = 2, SOUTH = 3;
+
+	// Layout of the cluster and the node of this server
+	protected final int columns, rows, node;
+
+	// Links to the neighbours indexed by side. Null where there is none.
+	protected PeerLink links[] = new PeerLink[4];
+
+	// Server this one is part of
+	protected SpaceGameServer spaceGameServer;
+
+	// Makes the tickets of ships handed over
+	protected SecureRandom tickets = new SecureRandom();
+
+
+	/**
+	 * Creates the links to the neighbours of a server. They connect as
+	 * the neighbours come up.
+	 *
+	 * @param spaceGameServer server in the cluster
+	 * @param columns number of servers across the map
+	 * @param rows number of servers down the map
+	 * @param node node of the server
+	 */
+	Cluster( SpaceGameServer spaceGameServer, int columns, int rows, int node )
+	{
+		this.spaceGameServer = spaceGameServer;
+		this.columns = columns;
+		this.rows = rows;
+		this.node = node;
+
+		int column = node % columns, row = node / columns;
+
+		if ( column > 0 ) {
+			links[WEST] = new PeerLink( node, node - 1 );
+		}
+		if ( column < columns - 1 ) {
+			links[EAST] = new PeerLink( node, node + 1 );
+		}
+		if ( row > 0 ) {
+			links[NORTH] = new PeerLink( node, node - columns );
+		}
+		if ( row < rows - 1 ) {
+			links[SOUTH] = new PeerLink( node, node + columns );
+		}
+
+	} // end Cluster constructor
+
+
+	/**
+	 * Port of a server of the cluster.
+	 *
+	 * @param node node of the server
+	 * @return port it listens on
+	 */
+	static int port( int node )
+	{
+		return Constants.SERVER_PORT + node;
+
+	} // end port
+
+
+	/**
+	 * Finds the side of the sector a position has reached, if there is a
+	 * connected server beyond it. A position in a corner has reached two
+	 * sides. The sides the heading moves towards are tried first, then 
+	 * the others, so a ship sliding along one wall still crosses the 
+	 * other, and of two sides equally ahead the one across is taken.
+	 *
+	 * @param x horizontal position
+	 * @param y vertical position
+	 * @param heading heading at the position
+	 * @return side or -1 if the position stays in this sector
+	 */
+	int sideReached( int x, int y, int heading )
+	{
+		int dx = Constants.dx( heading ), dy = Constants.dy( heading );
+
+		for ( int pass = 0; pass < 2; pass++ ) {
+
+			for ( int side = WEST; side <= SOUTH; side++ ) {
+
+				if ( reached( side, x, y ) && towards( side, dx, dy ) == ( pass == 0 ) 
+						&& isConnected( side ) ) {
+					
+					return side;
+				}
+			}
+		}
+
+		return -1;
+
+	} // end sideReached
+
+
+	/**
+	 * Checks whether there is a connected server beyond a side.
+	 *
+	 * @param side side of the sector
+	 * @return true if something reaching the side can be handed over
+	 */
+	protected boolean isConnected( int side )
+	{
+		return links[side] != null && links[side].isConnected();
+
+	} // end isConnected
+
+
+	/**
+	 * Checks whether a position is on or past a side of the sector.
+	 */
+	protected static boolean reached( int side, int x, int y )
+	{
+		switch ( side ) {
+
+		case WEST:
+			return x <= 0;
+
+		case EAST:
+			return x >= Constants.MAX_SECTOR_X;
+
+		case NORTH:
+			return y <= 0;
+
+		default:
+			return y >= Constants.MAX_SECTOR_Y;
+		}
+
+	} // end reached
+
+
+	/**
+	 * Checks whether a movement of dx and dy heads towards a side.
+	 */
+	protected static boolean towards( int side, int dx, int dy )
+	{
+		switch ( side ) {
+
+		case WEST:
+			return dx < 0;
+
+		case EAST:
+			return dx > 0;
+
+		case NORTH:
+			return dy < 0;
+
+		default:
+			return dy > 0;
+		}
+
+	} // end towards
+
+
+	/**
+	 * Hands a ship to the server beyond a side and redirects its client
+	 * there. The client is removed from this server, which the caller
+	 * must also do for the ship. Only called by the GameLoop of the room.
+	 *
+	 * @param room room of the ship
+	 * @param client client flying the ship
+	 * @param side side the ship reached
+	 * @param x x position
+	 * @param y y position
+	 * @param heading heading
+	 */
+	void handOffShip( Room room, ClientSocketConnection client, int side, int x, int y, int heading )
+	{
+		int enterX = enterX( side, x ), enterY = enterY( side, y );
+
+		// Zero means no ticket
+		int ticket;
+
+		do {
+			ticket = tickets.nextInt();
+		} while ( ticket == 0 );
+
+		links[side].send( handoffFrame( room, Constants.UPDATE_SHIP, client.sessionID,
+				enterX, enterY, heading, 0, ticket ) );
+
+		// Stop taking updates and sending snapshots
+		client.handedOff = true;
+		spaceGameServer.clients.handOff( client );
+		room.removeClient( client );
+
+		// Tell the client where to go, where its ship now is and the ticket
+		// to claim it with
+		ByteBuffer redirect = ByteBuffer.allocate( 24 );
+		redirect.putInt( 20 );
+		redirect.putInt( Constants.REDIRECT );
+		redirect.putInt( port( links[side].node ) );
+		redirect.putInt( enterX );
+		redirect.putInt( enterY );
+		redirect.putInt( ticket );
+		redirect.flip();
+
+		ReliableServer reliableServer = spaceGameServer.reliableServer;
+
+		if ( client.send( redirect ) ) {
+			reliableServer.schedule( client );
+		}
+		reliableServer.wakeup();
+
+		System.out.println( "Handed Client; " + client.sessionID + " to node " + links[side].node );
+
+	} // end handOffShip
+
+
+	/**
+	 * Hands a torpedo to the server beyond a side. The caller removes it
+	 * from this server.
+	 *
+	 * @param room room of the torpedo
+	 * @param side side the torpedo reached
+	 * @param id session ID of the torpedo
+	 * @param x x position
+	 * @param y y position
+	 * @param heading heading
+	 * @param life life the torpedo has used
+	 */
+	void handOffTorpedo( Room room, int side, int id, int x, int y, int heading, int life )
+	{
+		links[side].send( handoffFrame( room, Constants.UPDATE_TORPEDO, id,
+				enterX( side, x ), enterY( side, y ), heading, life, 0 ) );
+
+	} // end handOffTorpedo
+
+
+	/**
+	 * Reports that a ship has left the game, so that the server that 
+	 * handed out its session ID can hand it out again. A RELEASE frame for
+	 * another server is passed from neighbour to neighbour until it gets
+	 * there. Only called by the selector thread.
+	 *
+	 * @param id session ID of the ship
+	 */
+	void release( int id )
+	{
+		if ( id <= 0 || id > Protocol.MAX_SESSION_ID ) {
+			return;
+		}
+
+		int origin = ( id - 1 ) % ( columns * rows );
+
+		if ( origin == node ) {
+
+			spaceGameServer.clients.releaseHandedOff( id );
+			return;
+		}
+
+		ByteBuffer frame = ByteBuffer.allocate( 12 );
+		frame.putInt( 8 );
+		frame.putInt( Constants.RELEASE );
+		frame.putInt( id );
+		frame.flip();
+
+		// Queued while the link is down and written once it is back
+		links[ sideTowards( columns, node, origin ) ].send( frame );
+
+	} // end release
+
+
+	/**
+	 * Finds the side of a sector beyond which the neighbour is one step
+	 * closer to another node. The columns are crossed before the rows.
+	 *
+	 * @param columns number of servers across the map
+	 * @param from node of the sector
+	 * @param to node to get to. Must not be from.
+	 * @return side
+	 */
+	protected static int sideTowards( int columns, int from, int to )
+	{
+		if ( to % columns != from % columns ) {
+			return ( to % columns < from % columns ) ? WEST : EAST;
+		}
+
+		return ( to < from ) ? NORTH : SOUTH;
+
+	} // end sideTowards
+
+
+	/**
+	 * Stops the links to the neighbours.
+	 */
+	void close()
+	{
+		for ( int i = 0; i < links.length; i++ ) {
+
+			if ( links[i] != null ) {
+				links[i].close();
+			}
+		}
+
+	} // end close
+
+
+	/**
+	 * Builds a frame handing a ship or torpedo to a neighbour.
+	 */
+	protected ByteBuffer handoffFrame( Room room, int kind, int id, int x, int y, int heading, 
+			int life, int ticket )
+	{
+		ByteBuffer frame = ByteBuffer.allocate( 40 );
+		frame.putInt( 36 );
+		frame.putInt( Constants.HANDOFF );
+		frame.putInt( room.number );
+		frame.putInt( kind );
+		frame.putInt( id );
+		frame.putInt( x );
+		frame.putInt( y );
+		frame.putInt( heading );
+		frame.putInt( life );
+		frame.putInt( ticket );
+		frame.flip();
+
+		return frame;
+
+	} // end handoffFrame
+
+
+	/**
+	 * Horizontal position at which something crossing a side enters the
+	 * neighbour's sector, one move in from the opposite edge.
+	 */
+	protected static int enterX( int side, int x )
+	{
+		switch ( side ) {
+
+		case WEST:
+			return Constants.MAX_SECTOR_X - Constants.INCREMENT;
+
+		case EAST:
+			return Constants.INCREMENT;
+
+		default:
+			return Math.min( Math.max( x, 1 ), Constants.MAX_SECTOR_X - 1 );
+		}
+
+	} // end enterX
+
+
+	/**
+	 * Vertical position at which something crossing a side enters the
+	 * neighbour's sector, one move in from the opposite edge.
+	 */
+	protected static int enterY( int side, int y )
+	{
+		switch ( side ) {
+
+		case NORTH:
+			return Constants.MAX_SECTOR_Y - Constants.INCREMENT;
+
+		case SOUTH:
+			return Constants.INCREMENT;
+
+		default:
+			return Math.min( Math.max( y, 1 ), Constants.MAX_SECTOR_Y - 1 );
+		}
+
+	} // end enterY
+
+} // end Cluster class
@@ -0,0 +1,340 @@
+import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import spaceWar.Constants;
+import spaceWar.EntityStore;
+import spaceWar.SectorCommand;
+import spaceWar.SectorModel;
+import spaceWar.Snapshot;
+import spaceWar.SpaceCraft;
+import spaceWar.Torpedo;
+
+/**
+ * Advances the game of one room in ticks of a fixed length. Each tick it
+ * applies the changes submitted to the sector since the previous tick, 
+ * updates the torpedoes, checks the moved ships for collisions once, sends
+ * each client a snapshot and sends all removals together. All changes to 
+ * the game happen in this order, so the result no longer depends on how 
+ * packets arrive. The loop is the only one that changes the sector.
+ * When the room has a display a RenderFrame is published every tick.
+ *
+ * When the server is part of a Cluster, ships and torpedoes that reach an
+ * edge shared with another server are handed to it during the tick.
+ *
+ * The RoomManager runs the loop once per tick on one of its workers, 
+ * against a fixed timeline. A late tick is followed by ticks run back to
+ * back until the loop has caught up. Ticks more than MAX_CATCH_UP ticks 
+ * behind are skipped. Ticks that take longer than their length and skipped
+ * ticks are reported at most once a second.
+ */
+class GameLoop implements Runnable
+{
+	/**
+	 * Largest number of ticks run back to back to catch up
+	 */
+	static final int MAX_CATCH_UP = 5;
+
+	// Time between reports of overruns
+	protected static final long REPORT_NANOS = 1000000000L;
+
+	/**
+	 * Socket through which all snapshots will be sent. Shared by the rooms.
+	 */
+	DatagramSocket dgsock;
+
+	// Room whose game is advanced
+	protected Room room;
+
+	// Sends each client the changes to what it can see
+	protected SnapshotBroadcaster broadcaster;
+
+	// Length of a tick
+	protected long tickNanos;
+
+	// Time the next tick is due. Zero before the first tick.
+	protected long due = 0;
+
+	// Session IDs of the ships moved during the current tick
+	protected int moved[] = new int[64];
+	protected int movedCount = 0;
+
+	// Overruns and skipped ticks since the last report
+	protected int overruns = 0, skipped = 0;
+	protected long longestNanos = 0, lastReport;
+
+
+	/**
+	 * Creates the loop of a room. It is run by the RoomManager.
+	 *
+	 * @param room room whose game is advanced
+	 * @param dgsock socket used to send snapshots
+	 * @param tickMillis length of a tick in milliseconds
+	 */
+	public GameLoop( Room room, DatagramSocket dgsock, int tickMillis )
+	{
+		this.room = room;
+		this.dgsock = dgsock;
+		this.broadcaster = new SnapshotBroadcaster( room );
+		this.tickNanos = tickMillis * 1000000L;
+
+	} // end GameLoop constructor
+
+
+	/**
+	 * Runs the tick that is due, unless the loop has fallen too far 
+	 * behind, in which case it is skipped. Errors are reported rather
+	 * than thrown so that the room keeps running.
+	 */
+	public void run()
+	{
+		long start = System.nanoTime();
+
+		// The first tick starts the timeline
+		if ( due == 0 ) {
+
+			due = start;
+			lastReport = start;
+		}
+
+		long late = start - due;
+		due += tickNanos;
+
+		if ( late > MAX_CATCH_UP * tickNanos ) {
+
+			// Too far behind to catch up
+			skipped++;
+		}
+		else {
+
+			try {
+				tick();
+
+			} catch (RuntimeException e) {
+
+				System.err.println( "Error in tick of room " + room.number + "." );
+				e.printStackTrace();
+			}
+
+			long took = System.nanoTime() - start;
+
+			if ( took > tickNanos ) {
+
+				overruns++;
+				longestNanos = Math.max( longestNanos, took );
+			}
+		}
+
+		report( System.nanoTime() );
+
+	} // end run
+
+
+	/**
+	 * Advances the game by one tick. Submitted changes are applied, torpedoes are
+	 * updated, ships that moved are checked for collisions, each client is
+	 * sent a snapshot and all removals are sent. Torpedoes are removed when
+	 * they reach the end of their life or hit a ship. Ships are removed if
+	 * they are hit by torpedoes or rammed.
+	 */
+	protected void tick()
+	{
+		SectorModel sector = room.sector;
+
+		applyCommands( sector );
+
+		// Move all torpedoes and determine if they hit anything. Those
+		// that reached another server's sector go on there.
+		ArrayList<SpaceCraft> destroyed = sector.updateTorpedoes();
+
+		handOffTorpedoes( destroyed );
+		sendRemoves( destroyed );
+
+		// Check each ship that moved and is still in the game against
+		// the ships near it
+		for ( int i = 0; i < movedCount; i++ ) {
+
+			if ( sector.hasSpaceCraft( moved[i] ) ) {
+				sendRemoves( sector.collisionCheck( moved[i] ) );
+			}
+		}
+
+		movedCount = 0;
+
+		// Give the display the state at the end of the tick
+		if ( room.displayed ) {
+			sector.publishFrame();
+		}
+
+		// Send each client the changes to the ships and torpedoes
+		// it can see
+		broadcaster.broadcast( dgsock );
+
+		// Send every removal gathered during this tick as one message
+		room.flushRemovals();
+
+	} // end tick
+
+
+	/**
+	 * Applies the changes submitted to the sector since the previous tick
+	 * in the order they were submitted. Ships that moved are remembered 
+	 * for the collision check and the views they are in are brought up 
+	 * to date.
+	 */
+	protected void applyCommands( SectorModel sector )
+	{
+		InterestManager interest = room.interest;
+		EntityStore ships = sector.heldSpaceCraft();
+		SectorCommand command;
+
+		while ( ( command = sector.pollCommand() ) != null ) {
+
+			int changed = command.apply( sector );
+
+			// A move queued just before its client left or was handed to
+			// another server must not bring the ship back
+			if ( command.code == Constants.UPDATE_SHIP
+					&& room.spaceGameServer.clients.get( command.id ) == null ) {
+
+				sector.removeSpaceCraft( command.id );
+				continue;
+			}
+
+			if ( command.code == Constants.UPDATE_SHIP && handOffShip( command ) ) {
+				continue;
+			}
+
+			if ( command.code == Constants.JOIN || command.code == Constants.UPDATE_SHIP ) {
+
+				if ( movedCount == moved.length ) {
+					moved = Arrays.copyOf( moved, movedCount * 2 );
+				}
+
+				moved[ movedCount++ ] = command.id;
+
+				if ( interest != null ) {
+					interest.update( command.id, ships.x[changed],
+							ships.y[changed], ships.heading[changed] );
+				}
+			}
+		}
+
+	} // end applyCommands
+
+
+	/**
+	 * Hands a ship that has reached an edge shared with another server of
+	 * the cluster to that server. Its position is the one the client sent,
+	 * since the sector does not keep positions on the edge.
+	 *
+	 * @param command move of the ship just applied
+	 * @return true if the ship has left the sector
+	 */
+	protected boolean handOffShip( SectorCommand command )
+	{
+		Cluster cluster = room.spaceGameServer.cluster;
+
+		if ( cluster == null ) {
+			return false;
+		}
+
+		int state = command.getState();
+		int x = Snapshot.x( state ), y = Snapshot.y( state );
+		int side = cluster.sideReached( x, y, Snapshot.heading( state ) );
+
+		ClientSocketConnection client = room.spaceGameServer.clients.get( command.id );
+
+		if ( side < 0 || client == null ) {
+			return false;
+		}
+
+		cluster.handOffShip( room, client, side, x, y, Snapshot.heading( state ) );
+
+		room.sector.removeSpaceCraft( command.id );
+		room.sendRemove( new SpaceCraft( command.id ) );
+
+		return true;
+
+	} // end handOffShip
+
+
+	/**
+	 * Hands torpedoes stopped by an edge shared with another server of the
+	 * cluster to that server. The sector marks the torpedoes the edge 
+	 * stopped while they still had range, so torpedoes that hit a ship or 
+	 * an obstacle there stay destroyed. They are removed here like any 
+	 * other torpedo that has stopped.
+	 *
+	 * @param destroyed ships and torpedoes destroyed. May be null.
+	 */
+	protected void handOffTorpedoes( ArrayList<SpaceCraft> destroyed )
+	{
+		Cluster cluster = room.spaceGameServer.cluster;
+
+		if ( cluster == null || destroyed == null ) {
+			return;
+		}
+
+		for ( int i = 0; i < destroyed.size(); i++ ) {
+
+			if ( destroyed.get( i ) instanceof Torpedo && ( (Torpedo) destroyed.get( i ) ).isStoppedAtEdge() ) {
+
+				Torpedo torpedo = (Torpedo) destroyed.get( i );
+				int side = cluster.sideReached( torpedo.getXPosition(), torpedo.getYPosition(),
+						torpedo.getHeading() );
+
+				if ( side >= 0 ) {
+
+					cluster.handOffTorpedo( room, side, torpedo.ID, torpedo.getXPosition(),
+							torpedo.getYPosition(), torpedo.getHeading(), torpedo.getLifeCounter() );
+				}
+			}
+		}
+
+	} // end handOffTorpedoes
+
+
+	/**
+	 * Send remove messages for any ships or torpedoes that are no longer
+	 * in the game.
+	 *
+	 * @param destroyed ships and torpedoes destroyed. May be null.
+	 */
+	protected void sendRemoves( ArrayList<SpaceCraft> destroyed )
+	{
+		if ( destroyed != null ) {
+
+			for ( int i = 0; i < destroyed.size(); i++ ) {
+
+				room.sendRemove( destroyed.get( i ) );
+			}
+		}
+
+	} // end sendRemoves
+
+
+	/**
+	 * Reports overruns and skipped ticks if there were any and a report
+	 * has not been made in the last second.
+	 */
+	protected void report( long now )
+	{
+		if ( now - lastReport < REPORT_NANOS ) {
+			return;
+		}
+
+		if ( overruns > 0 || skipped > 0 ) {
+
+			System.err.println( "Game loop of room " + room.number + ": " + overruns + " ticks overran, longest "
+					+ ( longestNanos / 1000000L ) + " ms, " + skipped + " ticks skipped." );
+		}
+
+		overruns = 0;
+		skipped = 0;
+		longestNanos = 0;
+		lastReport = now;
+
+	} // end report
+
+} // end GameLoop class
@@ -0,0 +1,459 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+import spaceWar.Constants;
+import spaceWar.Snapshot;
+
+/**
+ * Decides which ships and torpedoes each client is sent. A client with a
+ * ship in play is only sent the ships near its own. A ship comes into 
+ * view when it is within the view radius and goes out of view when it is
+ * further than the view radius plus the hysteresis, so ships moving along
+ * the edge of the view are not repeatedly added and culled. Torpedoes are
+ * sent while they are within the view radius plus the hysteresis. Clients
+ * without a ship are sent everything. Entities that leave a client's view
+ * drop out of its snapshots, which makes the client cull them.
+ *
+ * Ship positions are kept in a grid whose cells are as wide as the view
+ * radius. Updating the views after a ship moves only looks at the few 
+ * cells around the ship, so its cost grows with the number of nearby
+ * ships rather than with the number of clients.
+ *
+ * Positions are indexed by session ID. The grid is linked through arrays
+ * so nothing is allocated once the arrays have grown to fit the IDs in use.
+ */
+class InterestManager
+{
+	// Distances at which ships come into and go out of view, and their squares
+	protected int viewRadius, leaveDistance;
+	protected long enterDistanceSq, leaveDistanceSq;
+
+	// Grid dimensions
+	protected int cellSize, columns, rows;
+
+	// First session ID in each cell. -1 for an empty cell.
+	protected int cellHead[];
+
+	// Per session ID. Neighbours in the list of a cell, the cell of the
+	// ship or -1 when it is not in play, and the last known state.
+	protected int nextInCell[] = new int[0], prevInCell[] = new int[0], cellOf[] = new int[0];
+	protected int xs[] = new int[0], ys[] = new int[0], headings[] = new int[0];
+
+	// Registered clients by session ID
+	protected ClientSocketConnection clientsByID[] = new ClientSocketConnection[0];
+
+	// Torpedoes of the latest world filed by cell. The first index into
+	// the world in each cell and the index of the next in the same cell.
+	protected int torpedoHead[] = null;
+	protected int torpedoNext[] = new int[0];
+
+
+	/**
+	 * Creates an interest manager with no ships and no clients.
+	 *
+	 * @param viewRadius distance at which ships come into view
+	 * @param hysteresis extra distance before ships go out of view
+	 */
+	InterestManager( int viewRadius, int hysteresis )
+	{
+		this.viewRadius = viewRadius;
+		this.leaveDistance = viewRadius + hysteresis;
+		this.enterDistanceSq = (long) viewRadius * viewRadius;
+		this.leaveDistanceSq = (long) leaveDistance * leaveDistance;
+
+		cellSize = Math.max( viewRadius, Constants.OBJECT_WIDTH );
+		columns = Constants.MAX_SECTOR_X / cellSize + 1;
+		rows = Constants.MAX_SECTOR_Y / cellSize + 1;
+		cellHead = new int[ columns * rows ];
+
+		for ( int i = 0; i < cellHead.length; i++ ) {
+			cellHead[i] = -1;
+		}
+
+	} // end InterestManager constructor
+
+
+	/**
+	 * Starts tracking a registered client. It has no ship in play.
+	 *
+	 * @param client connection of the client
+	 */
+	synchronized void addClient( ClientSocketConnection client )
+	{
+		ensureCapacity( client.sessionID );
+		clientsByID[ client.sessionID ] = client;
+
+	} // end addClient
+
+
+	/**
+	 * Stops tracking a departing client and its ship.
+	 *
+	 * @param client connection of the client
+	 */
+	synchronized void removeClient( ClientSocketConnection client )
+	{
+		if ( client.sessionID >= clientsByID.length
+				|| clientsByID[ client.sessionID ] != client ) {
+			return;
+		}
+
+		removeShip( client.sessionID );
+		clientsByID[ client.sessionID ] = null;
+
+	} // end removeClient
+
+
+	/**
+	 * Takes a ship out of play. It is removed from the view of every client
+	 * and the client that owned it is sent everything from now on.
+	 *
+	 * @param id session ID of the ship
+	 */
+	synchronized void removeShip( int id )
+	{
+		if ( id >= cellOf.length || cellOf[id] < 0 ) {
+			return;
+		}
+
+		// Only clients within the leave distance can have the ship in view
+		int minColumn = column( xs[id] - leaveDistance ), maxColumn = column( xs[id] + leaveDistance );
+		int minRow = row( ys[id] - leaveDistance ), maxRow = row( ys[id] + leaveDistance );
+
+		for ( int r = minRow; r <= maxRow; r++ ) {
+			for ( int c = minColumn; c <= maxColumn; c++ ) {
+				for ( int other = cellHead[ r * columns + c ]; other >= 0; other = nextInCell[other] ) {
+
+					if ( clientsByID[other] != null ) {
+						clientsByID[other].visible.clear( id );
+					}
+				}
+			}
+		}
+
+		unlink( id );
+
+		if ( clientsByID[id] != null ) {
+			clientsByID[id].visible.clear();
+		}
+
+	} // end removeShip
+
+
+	/**
+	 * Records the new state of a ship and brings the views that it affects
+	 * up to date. The ship comes into view of clients it is now near, and 
+	 * goes out of view of clients it is now far from. If the ship belongs 
+	 * to a client, the view of that client is brought up to date as well.
+	 *
+	 * @param id session ID of the ship
+	 * @param x x position
+	 * @param y y position
+	 * @param heading heading
+	 */
+	synchronized void update( int id, int x, int y, int heading )
+	{
+		ensureCapacity( id );
+
+		// How far the ship has moved bounds how far away a client that
+		// had it in view can now be
+		boolean joining = cellOf[id] < 0;
+		int step = joining ? 0 : Math.abs( x - xs[id] ) + Math.abs( y - ys[id] );
+
+		move( id, x, y, heading );
+
+		if ( clientsByID[id] != null ) {
+			refreshView( clientsByID[id] );
+		}
+
+		// Update the views of the clients near the ship
+		int reach = ( joining ? viewRadius : leaveDistance ) + step;
+		int minColumn = column( x - reach ), maxColumn = column( x + reach );
+		int minRow = row( y - reach ), maxRow = row( y + reach );
+
+		for ( int r = minRow; r <= maxRow; r++ ) {
+			for ( int c = minColumn; c <= maxColumn; c++ ) {
+				for ( int other = cellHead[ r * columns + c ]; other >= 0; other = nextInCell[other] ) {
+
+					ClientSocketConnection client = clientsByID[other];
+
+					if ( other == id || client == null ) {
+						continue;
+					}
+
+					long distanceSq = distanceSq( other, x, y );
+
+					if ( client.visible.get( id ) ) {
+
+						if ( distanceSq > leaveDistanceSq ) {
+							client.visible.clear( id );
+						}
+					}
+					else if ( distanceSq <= enterDistanceSq ) {
+
+						client.visible.set( id );
+					}
+				}
+			}
+		}
+
+	} // end update
+
+
+	/**
+	 * Brings the view of a client up to date after its ship has moved. Ships
+	 * now within the view radius come into view. Ships further than the
+	 * leave distance go out of view.
+	 *
+	 * @param client client whose ship moved
+	 */
+	protected void refreshView( ClientSocketConnection client )
+	{
+		int id = client.sessionID;
+		int x = xs[id], y = ys[id];
+
+		// Drop ships that are now too far away
+		BitSet visible = client.visible;
+
+		for ( int other = visible.nextSetBit( 0 ); other >= 0; other = visible.nextSetBit( other + 1 ) ) {
+
+			if ( other >= cellOf.length || cellOf[other] < 0
+					|| distanceSq( other, x, y ) > leaveDistanceSq ) {
+
+				visible.clear( other );
+			}
+		}
+
+		// Add ships that have come into view
+		int minColumn = column( x - viewRadius ), maxColumn = column( x + viewRadius );
+		int minRow = row( y - viewRadius ), maxRow = row( y + viewRadius );
+
+		for ( int r = minRow; r <= maxRow; r++ ) {
+			for ( int c = minColumn; c <= maxColumn; c++ ) {
+				for ( int other = cellHead[ r * columns + c ]; other >= 0; other = nextInCell[other] ) {
+
+					if ( other != id && distanceSq( other, x, y ) <= enterDistanceSq ) {
+						visible.set( other );
+					}
+				}
+			}
+		}
+
+	} // end refreshView
+
+
+	/**
+	 * Files the torpedoes of the game under the cells of the grid holding
+	 * them. Must be called with the same world before select is called 
+	 * for each client.
+	 *
+	 * @param world every ship and torpedo in the game, sorted by key
+	 */
+	synchronized void indexTorpedoes( Snapshot world )
+	{
+		if ( torpedoHead == null ) {
+			torpedoHead = new int[ cellHead.length ];
+		}
+
+		if ( torpedoNext.length < world.count ) {
+			torpedoNext = new int[ world.keys.length ];
+		}
+
+		for ( int i = 0; i < torpedoHead.length; i++ ) {
+			torpedoHead[i] = -1;
+		}
+
+		// Go backwards so each cell lists its torpedoes in order of key
+		for ( int i = world.count - 1; i >= 0 && Snapshot.isTorpedo( world.keys[i] ); i-- ) {
+
+			int state = world.states[i];
+			int cell = row( Snapshot.y( state ) ) * columns + column( Snapshot.x( state ) );
+
+			torpedoNext[i] = torpedoHead[cell];
+			torpedoHead[cell] = i;
+		}
+
+	} // end indexTorpedoes
+
+
+	/**
+	 * Copies the entities of the game that a client is to be sent. The
+	 * client's own ship is left out. A client with a ship in play is given
+	 * the ships in its view and the torpedoes from the grid cells near it,
+	 * so the work done grows with what it is sent rather than with the 
+	 * size of the game.
+	 *
+	 * @param world every ship and torpedo in the game, sorted by key
+	 * @param client client the entities are for
+	 * @param out snapshot the entities are added to in order of key
+	 */
+	synchronized void select( Snapshot world, ClientSocketConnection client, Snapshot out )
+	{
+		int id = client.sessionID;
+
+		// Clients without a ship are sent everything
+		if ( id >= cellOf.length || cellOf[id] < 0 ) {
+
+			for ( int i = 0; i < world.count; i++ ) {
+
+				if ( world.keys[i] != id ) {
+					out.add( world.keys[i], world.states[i] );
+				}
+			}
+			return;
+		}
+
+		// Ships in view. Set bits are visited in order of session ID.
+		BitSet visible = client.visible;
+
+		for ( int other = visible.nextSetBit( 0 ); other >= 0; other = visible.nextSetBit( other + 1 ) ) {
+
+			out.add( other, Snapshot.state( xs[other], ys[other], headings[other] ) );
+		}
+
+		// Torpedoes near the ship
+		int ships = out.count;
+		int x = xs[id], y = ys[id];
+		int minColumn = column( x - leaveDistance ), maxColumn = column( x + leaveDistance );
+		int minRow = row( y - leaveDistance ), maxRow = row( y + leaveDistance );
+
+		for ( int r = minRow; r <= maxRow; r++ ) {
+			for ( int c = minColumn; c <= maxColumn; c++ ) {
+				for ( int i = torpedoHead[ r * columns + c ]; i >= 0; i = torpedoNext[i] ) {
+
+					int state = world.states[i];
+
+					if ( distanceSq( id, Snapshot.x( state ), Snapshot.y( state ) ) <= leaveDistanceSq ) {
+						out.add( world.keys[i], state );
+					}
+				}
+			}
+		}
+
+		// Torpedoes were gathered cell by cell
+		if ( out.count - ships > 1 ) {
+			out.sort();
+		}
+
+	} // end select
+
+
+	/**
+	 * Stores the state of a ship and files it under the cell holding its
+	 * position.
+	 */
+	protected void move( int id, int x, int y, int heading )
+	{
+		int cell = row( y ) * columns + column( x );
+
+		if ( cellOf[id] != cell ) {
+
+			unlink( id );
+
+			nextInCell[id] = cellHead[cell];
+			prevInCell[id] = -1;
+
+			if ( cellHead[cell] >= 0 ) {
+				prevInCell[ cellHead[cell] ] = id;
+			}
+
+			cellHead[cell] = id;
+			cellOf[id] = cell;
+		}
+
+		xs[id] = x;
+		ys[id] = y;
+		headings[id] = heading;
+
+	} // end move
+
+
+	/**
+	 * Removes a ship from the list of its cell.
+	 */
+	protected void unlink( int id )
+	{
+		int cell = cellOf[id];
+
+		if ( cell < 0 ) {
+			return;
+		}
+
+		if ( prevInCell[id] >= 0 ) {
+			nextInCell[ prevInCell[id] ] = nextInCell[id];
+		}
+		else {
+			cellHead[cell] = nextInCell[id];
+		}
+
+		if ( nextInCell[id] >= 0 ) {
+			prevInCell[ nextInCell[id] ] = prevInCell[id];
+		}
+
+		cellOf[id] = -1;
+
+	} // end unlink
+
+
+	/**
+	 * Squared distance between a ship and a position.
+	 */
+	protected long distanceSq( int id, int x, int y )
+	{
+		long dx = xs[id] - x;
+		long dy = ys[id] - y;
+
+		return dx * dx + dy * dy;
+
+	} // end distanceSq
+
+
+	/**
+	 * Column of the grid holding an x position. Positions outside the
+	 * sector are clamped to the edge columns.
+	 */
+	protected int column( int x )
+	{
+		return Math.min( Math.max( x / cellSize, 0 ), columns - 1 );
+
+	} // end column
+
+
+	/**
+	 * Row of the grid holding a y position. Positions outside the
+	 * sector are clamped to the edge rows.
+	 */
+	protected int row( int y )
+	{
+		return Math.min( Math.max( y / cellSize, 0 ), rows - 1 );
+
+	} // end row
+
+
+	/**
+	 * Grows the per session arrays to hold an ID.
+	 */
+	protected void ensureCapacity( int id )
+	{
+		if ( id < cellOf.length ) {
+			return;
+		}
+
+		int oldLength = cellOf.length;
+		int length = Math.max( 64, Integer.highestOneBit( id ) << 1 );
+
+		nextInCell = Arrays.copyOf( nextInCell, length );
+		prevInCell = Arrays.copyOf( prevInCell, length );
+		cellOf = Arrays.copyOf( cellOf, length );
+		xs = Arrays.copyOf( xs, length );
+		ys = Arrays.copyOf( ys, length );
+		headings = Arrays.copyOf( headings, length );
+		clientsByID = Arrays.copyOf( clientsByID, length );
+
+		for ( int i = oldLength; i < length; i++ ) {
+			cellOf[i] = -1;
+		}
+
+	} // end ensureCapacity
+
+} // end InterestManager class
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import spaceWar.Constants;
+
+/**
+ * Connection from a server of a cluster to one of its neighbours, over
+ * which ships and torpedoes crossing into the neighbour's sector are
+ * handed to it. The link has its own thread, which connects, reconnects
+ * after a failure and writes the queued frames, so the GameLoop handing
+ * something over never waits on the network.
+ *
+ * The neighbour reads the link with its ReliableServer like any other
+ * connection. The first frame says which node the link comes from.
+ */
+class PeerLink extends Thread
+{
+	// Time to wait before trying to connect again
+	protected static final long RETRY_MILLIS = 1000;
+
+	// Node the link connects to and the node it comes from
+	protected final int node, from;
+
+	// Frames waiting to be written
+	protected LinkedBlockingQueue<ByteBuffer> frames = new LinkedBlockingQueue<ByteBuffer>();
+
+	// Connection to the neighbour. Null while it is down.
+	protected SocketChannel channel;
+
+	// True while the neighbour is connected and can take handoffs
+	protected volatile boolean connected = false;
+
+	// Setting to false stops the link
+	protected volatile boolean running = true;
+
+
+	/**
+	 * Creates a link to a neighbour and starts connecting.
+	 *
+	 * @param from node of the server owning the link
+	 * @param node node of the neighbour
+	 */
+	PeerLink( int from, int node )
+	{
+		super( "PeerLink-" + node );
+
+		this.from = from;
+		this.node = node;
+
+		setDaemon( true );
+		start();
+
+	} // end PeerLink constructor
+
+
+	/**
+	 * Checks whether the neighbour can take handoffs.
+	 *
+	 * @return true if the link is connected
+	 */
+	boolean isConnected()
+	{
+		return connected;
+
+	} // end isConnected
+
+
+	/**
+	 * Queues a frame for the neighbour. Never blocks.
+	 *
+	 * @param frame frame ready to be written
+	 */
+	void send( ByteBuffer frame )
+	{
+		frames.offer( frame );
+
+	} // end send
+
+
+	/**
+	 * Stops the link and closes the connection.
+	 */
+	void close()
+	{
+		running = false;
+		interrupt();
+
+	} // end close
+
+
+	/**
+	 * Keeps the link connected and writes the frames queued for it. Frames
+	 * being written when the connection fails are lost.
+	 */
+	public void run()
+	{
+		while ( running ) {
+
+			try {
+
+				if ( channel == null ) {
+
+					connect();
+				}
+
+				ByteBuffer frame = frames.poll( RETRY_MILLIS, TimeUnit.MILLISECONDS );
+
+				if ( frame != null ) {
+
+					while ( frame.hasRemaining() ) {
+
+						channel.write( frame );
+					}
+				}
+
+			} catch ( IOException e ) {
+
+				if ( connected ) {
+					System.err.println( "Lost connection to node " + node + "." );
+				}
+
+				disconnect();
+				pause();
+
+			} catch ( InterruptedException e ) {
+
+				// Closed. The loop ends.
+			}
+		}
+
+		disconnect();
+
+	} // end run
+
+
+	/**
+	 * Connects to the neighbour and says which node the link comes from.
+	 * The link is only connected once the neighbour has accepted it. The
+	 * neighbour only accepts links over the loopback interface, so that
+	 * is where it is reached.
+	 *
+	 * @throws IOException if the neighbour cannot be reached or refuses
+	 */
+	protected void connect() throws IOException
+	{
+		channel = SocketChannel.open( new InetSocketAddress( InetAddress.getLoopbackAddress(), Cluster.port( node ) ) );
+		channel.socket().setTcpNoDelay( true );
+
+		ByteBuffer hello = ByteBuffer.allocate( 12 );
+		hello.putInt( 8 );
+		hello.putInt( Constants.PEER );
+		hello.putInt( from );
+		hello.flip();
+
+		while ( hello.hasRemaining() ) {
+
+			channel.write( hello );
+		}
+
+		// The neighbour answers with a PEER frame or closes the connection
+		ByteBuffer answer = ByteBuffer.allocate( 8 );
+
+		while ( answer.hasRemaining() ) {
+
+			if ( channel.read( answer ) < 0 ) {
+				throw new IOException( "Refused by node " + node );
+			}
+		}
+		answer.flip();
+
+		if ( answer.getInt() != 4 || answer.getInt() != Constants.PEER ) {
+			throw new IOException( "Unexpected answer from node " + node );
+		}
+
+		connected = true;
+		System.out.println( "Connected to node " + node + "." );
+
+	} // end connect
+
+
+	/**
+	 * Closes the connection if it is open.
+	 */
+	protected void disconnect()
+	{
+		connected = false;
+
+		if ( channel != null ) {
+
+			try {
+				channel.close();
+			} catch ( IOException e ) {
+				// Already unusable
+			}
+
+			channel = null;
+		}
+
+	} // end disconnect
+
+
+	/**
+	 * Waits before trying to connect again.
+	 */
+	protected void pause()
+	{
+		try {
+			Thread.sleep( RETRY_MILLIS );
+		} catch ( InterruptedException e ) {
+			// Closed. The loop ends.
+		}
+
+	} // end pause
+
+} // end PeerLink class
@@ -1,40 +1,74 @@
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import spaceWar.Constants;
 import spaceWar.Obstacle;
+import spaceWar.Protocol;
+import spaceWar.SectorCommand;
 import spaceWar.SpaceCraft;
-import spaceWar.Torpedo;
 
 /**
  * @author bachmaer
  * 
- * Multi-threaded TCP server to listen for new clients sending information reliably 
+ * TCP server to listen for new clients sending information reliably. 
+ * A single thread uses a Selector to accept connections and to read 
+ * requests from all of them, so a burst of requests does not create 
+ * a burst of threads.
+ * 
+ * Each client keeps one connection open for the whole game. Messages in
+ * both directions are framed as an int holding the number of bytes that 
+ * follow, an int code and then the fields for that code.
  * 
  * It takes care of the following events:
  * 1. Clients coming into the game
  * 2. Clients firing torpedoes
  * 3. Clients leaving the game
+ * 4. Ships and torpedoes handed over by the other servers of a cluster,
+ *    whose PeerLinks connect here like clients, and the session IDs they
+ *    release
  */
 class ReliableServer extends Thread {
 
-	ServerSocket gameServerSocket = null;
+	ServerSocketChannel gameServerChannel = null;
+	
+	// Selector used to wait for connections and requests
+	Selector selector = null;
 
 	// Reference to the SpaceGameServer object that instantiated an object 
 	// of this class. Methods of that class are called through this reference.
 	SpaceGameServer spaceGameServer = null;
 	
-	int port = -1;
-	int code = -1;
+	// Client connections with frames waiting to be written. Filled by any
+	// thread sending to clients and drained by the selector thread.
+	protected ConcurrentLinkedQueue<ClientSocketConnection> pendingWrites 
+		= new ConcurrentLinkedQueue<ClientSocketConnection>();
 	
 	// Setting to false cases all message forwarding
 	// and game state updating to end.
-	protected boolean playing = true;
+	protected volatile boolean playing = true;
+	
+	// Time a ship handed over by another server waits for its client
+	// before it is removed
+	protected static final long ARRIVAL_MILLIS = 5000;
+	
+	// Ships handed over by other servers whose clients have not registered
+	// yet by session ID, and clients that registered before their ship 
+	// arrived by the ticket they hold. Only used by the selector thread.
+	protected HashMap<Integer, Arrival> arrivals = new HashMap<Integer, Arrival>();
+	protected HashMap<Integer, HandleClientEvent> waitingClients = new HashMap<Integer, HandleClientEvent>();
+	
+	// Clients redirected to another server of the cluster whose 
+	// connection is still open. Only used by the selector thread.
+	protected ArrayList<HandleClientEvent> departingClients = new ArrayList<HandleClientEvent>();
 	
 	
 	public ReliableServer( SpaceGameServer spaceGameServer ){
@@ -45,7 +79,11 @@ class ReliableServer extends Thread {
 
 			// Uses the same port number as the UDP socket that is used
 			// to best effort send game information
-			gameServerSocket = new ServerSocket(Constants.SERVER_PORT);
+			selector = Selector.open();
+			gameServerChannel = ServerSocketChannel.open();
+			gameServerChannel.socket().bind( new InetSocketAddress( spaceGameServer.options.port() ) );
+			gameServerChannel.configureBlocking( false );
+			gameServerChannel.register( selector, SelectionKey.OP_ACCEPT );
 			
 		} catch (IOException e) {
 			System.err.println("Error creating server socket used to listing for joining clients.");
@@ -64,22 +102,99 @@ class ReliableServer extends Thread {
 	public void close ()
 	{		
 		playing = false;
+		selector.wakeup();
 
 	} // end close 
 	
+	/**
+	 * Hands a client connection with queued frames to the selector thread,
+	 * which writes them. wakeup must be called for the frames to be sent 
+	 * without waiting for other activity.
+	 * 
+	 * @param connection connection with frames to write
+	 */
+	public void schedule( ClientSocketConnection connection )
+	{
+		pendingWrites.add( connection );
+		
+	} // end schedule
+	
+	
+	/**
+	 * Wakes the selector thread so that scheduled connections are written.
+	 */
+	public void wakeup()
+	{
+		selector.wakeup();
+		
+	} // end wakeup
+	
+	
 	/**
 	 * Listens for join and exiting clients using TCP. Joining clients are sent
-	 * the x and y coordinates of all obstacles followed by a negative number.
+	 * the x and y coordinates of all obstacles.
 	 */
 	public void run(){
 		
 		while( playing ){ // loop till playing is set to false
 			
 			try {
-				new HandleClientEvent( gameServerSocket.accept() );
-
-				// Be nice to the other threads
-				yield();
+				// Wake in time to expire handed over ships that wait
+				if ( arrivals.isEmpty() && waitingClients.isEmpty() && departingClients.isEmpty() ) {
+					selector.select();
+				}
+				else {
+					selector.select( ARRIVAL_MILLIS );
+					expireArrivals();
+				}
+				
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				
+				while ( keys.hasNext() ) {
+					
+					SelectionKey key = keys.next();
+					keys.remove();
+					
+					if ( !key.isValid() ) {
+						continue;
+					}
+					
+					if ( key.isAcceptable() ) {
+						
+						acceptClient();
+						continue;
+					}
+					
+					HandleClientEvent event = (HandleClientEvent) key.attachment();
+					
+					// A malformed request drops its client, never the
+					// thread serving all of them
+					try {
+						
+						if ( key.isReadable() ) {
+							
+							event.read();
+						}
+						
+						if ( key.isValid() && key.isWritable() ) {
+							
+							event.write();
+						}
+						
+					} catch (RuntimeException e) {
+						
+						System.err.println("Error handling client: " + e);
+						event.drop();
+					}
+				}
+				
+				// Write to connections that have been sent frames
+				ClientSocketConnection connection;
+				
+				while ( ( connection = pendingWrites.poll() ) != null ) {
+					
+					( (HandleClientEvent) connection.key.attachment() ).write();
+				}
 				
 			} catch (IOException e) {
 
@@ -90,7 +205,8 @@ class ReliableServer extends Thread {
 		} // end while
 		
 		try {
-			this.gameServerSocket.close();
+			this.selector.close();
+			this.gameServerChannel.close();
 		} catch (IOException e) {
 			
 			
@@ -99,163 +215,709 @@ class ReliableServer extends Thread {
 	} // end run
 	
 	
+	/**
+	 * Removes ships whose clients have not come for them in time and
+	 * turns away clients whose ships have not arrived in time. Clients
+	 * redirected elsewhere that have not closed their connection by the
+	 * time their ticket runs out are disconnected. Only called by the 
+	 * selector thread.
+	 */
+	protected void expireArrivals()
+	{
+		long expired = System.currentTimeMillis() - ARRIVAL_MILLIS;
+		
+		Iterator<HashMap.Entry<Integer, Arrival>> ships = arrivals.entrySet().iterator();
+		
+		while ( ships.hasNext() ) {
+			
+			HashMap.Entry<Integer, Arrival> entry = ships.next();
+			
+			if ( entry.getValue().time < expired ) {
+				
+				Room arrivalRoom = entry.getValue().room;
+				
+				arrivalRoom.sector.submit( new SectorCommand( Constants.REMOVE_SHIP, entry.getKey() ) );
+				arrivalRoom.sendRemove( new SpaceCraft( entry.getKey() ) );
+				ships.remove();
+				
+				if ( spaceGameServer.cluster != null ) {
+					spaceGameServer.cluster.release( entry.getKey() );
+				}
+			}
+		}
+		
+		Iterator<HandleClientEvent> clients = waitingClients.values().iterator();
+		
+		while ( clients.hasNext() ) {
+			
+			HandleClientEvent waiting = clients.next();
+			
+			if ( waiting.waitingSince < expired ) {
+				
+				waiting.closeConnection();
+				clients.remove();
+			}
+		}
+		
+		// Dropping a client takes it off the list
+		for ( int i = departingClients.size() - 1; i >= 0; i-- ) {
+			
+			HandleClientEvent departing = departingClients.get( i );
+			
+			if ( departing.departingSince < expired ) {
+				
+				departing.drop();
+			}
+		}
+		
+	} // end expireArrivals
+	
+	
+	/**
+	 * Accepts a waiting connection and registers it with the selector so
+	 * that its requests can be read.
+	 * 
+	 * @throws IOException
+	 */
+	protected void acceptClient() throws IOException
+	{
+		SocketChannel clientChannel = gameServerChannel.accept();
+		
+		if ( clientChannel != null ) {
+			
+			clientChannel.configureBlocking( false );
+			
+			// Frames are complete when written. Do not hold them back.
+			clientChannel.socket().setTcpNoDelay( true );
+			
+			SelectionKey key = clientChannel.register( selector, SelectionKey.OP_READ );
+			key.attach( new HandleClientEvent( clientChannel ) );
+		}
+		
+	} // end acceptClient
+	
+	
 	// Inner class to handle client generated events. An object of this
-	// class is instantiated each time a client generates an event that
-	// must be reliable communicated to the other clients.
-	class HandleClientEvent extends Thread
+	// class is attached to the connection of each client and reads the 
+	// events that must be reliable communicated to the other clients.
+	// Bytes are collected until a whole frame has arrived.
+	class HandleClientEvent
 	{	
 		// Reliable connection with the client
-		Socket clientConnection = null;
+		SocketChannel clientConnection = null;
 		
-		// Streams used to communicate with the client
-		DataInputStream dis = null;
-		DataOutputStream dos = null;
+		// Holds the bytes of frames that have not been handled yet
+		ByteBuffer request = ByteBuffer.allocate( 64 );
 		
-		// Identification information for the particular client
+		// Connection used to send messages to the client once it has registered
+		ClientSocketConnection connection = null;
+		
+		// Address of the DatagramSocket of the particular client
 		InetSocketAddress clientID;
 		
-		HandleClientEvent(Socket clientConnection )
+		// Session ID assigned to the client when it registered
+		int sessionID;
+		
+		// Room the client chose when it registered
+		Room room;
+		
+		// Port of the client's DatagramSocket
+		int port;
+		
+		// True if the connection comes from another server of the cluster
+		boolean peer = false;
+		
+		// Time the client began waiting for its ship to arrive and the 
+		// ticket it holds for the ship
+		long waitingSince;
+		int ticket;
+		
+		// Time the client was redirected to another server of the cluster
+		long departingSince;
+		
+		HandleClientEvent( SocketChannel clientConnection )
 		{
 			this.clientConnection = clientConnection;
 			
-			start();
-			
 		} // end handleEventClient constructor
 		
 
-		// Handles a client requests and then ends
-		public void run(){
+		/**
+		 * Reads whatever bytes are available and handles every frame
+		 * that is complete.
+		 */
+		public void read(){
 		
 			try {
 			
-				// Make streams to communicate with the client
-				dis = new DataInputStream( clientConnection.getInputStream() );
-				dos = new DataOutputStream( clientConnection.getOutputStream() );
+				if ( clientConnection.read( request ) < 0 ) {
+					
+					// Client went away without saying so
+					drop();
+					return;
+				}
 				
-				// Determine if a client is registering, firing, or exiting
-				code = dis.readInt();
+				request.flip();
 				
-				// Read Port number
-				port =  dis.readInt();
+				while ( request.remaining() >= 4 ) {
+					
+					int start = request.position();
+					int length = request.getInt( start );
+					
+					// Frames must hold a code and fit in the buffer
+					if ( length < 4 || length > request.capacity() - 4 ) {
+						
+						System.out.println("Frame of length " + length + " out of range. Client dropped.");
+						drop();
+						return;
+					}
+					
+					// Wait for the rest of the frame
+					if ( request.remaining() < 4 + length ) {
+						break;
+					}
+					
+					// Frames too short for their fields are not handled
+					int code = request.getInt( start + 4 );
+					
+					if ( length < minimumLength( code ) ) {
+						
+						System.out.println("Frame with code " + code + " too short. Client dropped.");
+						drop();
+						return;
+					}
+					
+					// Handlers cannot read past the end of the frame
+					int limit = request.limit();
+					request.limit( start + 4 + length );
+					request.position( start + 8 );
+					
+					handleFrame( code, length );
+					
+					request.limit( limit );
+					request.position( start + 4 + length );
+					
+					// The frame may have ended the connection
+					if ( !clientConnection.isOpen() ) {
+						return;
+					}
+				}
 				
-				// Get the clients IP address
-				clientID = new InetSocketAddress( clientConnection.getInetAddress(), port);
+				request.compact();
+
+			} catch (IOException e) {
 				
-				// Handle the client's request
-				if (code ==  Constants.REGISTER){
+				// Such as the connection being reset
+				System.err.println("Error communicating with client. Client dropped.");
+				drop();
+			}
+
+		} // end read
+		
+		
+		/**
+		 * Writes frames queued for the client. Interest in the socket
+		 * becoming writable is kept only while frames remain. A client
+		 * that has stalled for too long is disconnected.
+		 */
+		public void write(){
+			
+			if ( connection == null ) {
+				return;
+			}
+			
+			try {
 				
-					handleNewClient();
+				if ( connection.isDisconnectRequested() ) {
+					
+					System.out.println("Client stopped reading; " + clientID );
+					handleExitingClient();
+					closeConnection();
+					return;
 				}
-				else if ( code == Constants.FIRED_TORPEDO) {
-	
-					handleTorpedoLaunch();
+				
+				boolean empty = connection.flush();
+				
+				// The redirect is on its way. The client has as long as 
+				// its ticket lasts to leave.
+				if ( connection.handedOff && departingSince == 0 ) {
+					
+					departingSince = System.currentTimeMillis();
+					departingClients.add( this );
 				}
-				else if ( code ==  Constants.EXIT ) {
+				
+				if ( connection.key.isValid() ) {
 					
-					handleExitingClient();
+					connection.key.interestOps( empty ? SelectionKey.OP_READ 
+							: SelectionKey.OP_READ | SelectionKey.OP_WRITE );
 				}
-
+				
 			} catch (IOException e) {
 				
-				System.err.println("Error communicating with client.");
+				System.err.println("Error writing to client.");
+				handleExitingClient();
+				closeConnection();
+			}
+			
+		} // end write
+		
+		
+		/**
+		 * Number of bytes following the length that a frame must have to
+		 * hold the fields of its code.
+		 * 
+		 * @param code code of the frame
+		 * @return minimum length
+		 */
+		protected int minimumLength( int code )
+		{
+			switch ( code ) {
+			
+			case Constants.REGISTER:
+				return 12;
+				
+			case Constants.FIRED_TORPEDO:
+				return 16;
+				
+			case Constants.PEER:
+				return 8;
+				
+			case Constants.HANDOFF:
+				return 36;
 				
+			case Constants.RELEASE:
+				return 8;
+				
+			default:
+				return 4;
+			}
+			
+		} // end minimumLength
+		
+		
+		/**
+		 * Handles a complete frame. The request buffer is positioned at the
+		 * fields following the code and limited to the end of the frame.
+		 * 
+		 * @param code code of the frame
+		 * @param length number of bytes in the frame following its length
+		 * @throws IOException
+		 */
+		protected void handleFrame( int code, int length ) throws IOException
+		{
+			// Handle the client's request. Only registered clients may 
+			// fire or exit. Only other servers of the cluster hand over
+			// ships and torpedoes and release session IDs.
+			if (code ==  Constants.REGISTER && connection == null && !peer){
+			
+				handleNewClient( length );
 			}
+			else if ( code == Constants.FIRED_TORPEDO && connection != null ) {
 
-		} // end run
+				handleTorpedoLaunch();
+			}
+			else if ( code ==  Constants.EXIT && connection != null ) {
+				
+				handleExitingClient();
+				closeConnection();
+			}
+			else if ( code == Constants.PEER && connection == null ) {
+				
+				handlePeer();
+			}
+			else if ( code == Constants.HANDOFF && peer ) {
+				
+				handleArrival();
+			}
+			else if ( code == Constants.RELEASE && peer && spaceGameServer.cluster != null ) {
+				
+				spaceGameServer.cluster.release( request.getInt() );
+			}
+			
+		} // end handleFrame
+		
+		
+		/**
+		 * Takes care of another server of the cluster connecting. The 
+		 * servers of a cluster run on one machine, so connections from
+		 * anywhere else are turned away. An accepted server is answered
+		 * with a PEER frame, so it only hands over once it is accepted.
+		 * 
+		 * @throws IOException
+		 */
+		protected void handlePeer() throws IOException
+		{
+			int node = request.getInt();
+			
+			if ( !clientConnection.socket().getInetAddress().isLoopbackAddress() ) {
+				
+				System.out.println("Node " + node + " connecting from " + 
+						clientConnection.socket().getInetAddress() + " refused.");
+				closeConnection();
+				return;
+			}
+			
+			peer = true;
+			System.out.println("Node " + node + " connected.");
+			
+			// Fits the empty send buffer of a new connection
+			ByteBuffer accepted = ByteBuffer.allocate( 8 );
+			accepted.putInt( 4 );
+			accepted.putInt( Constants.PEER );
+			accepted.flip();
+			clientConnection.write( accepted );
+			
+		} // end handlePeer
 		
 		
 		/**
 		 * Takes care of clients that are first coming into the game.
-		 * It sends all the obstacles to the client. Saves the UDP 
-		 * socket address for the clients and save a TCP socket 
-		 * connection to the client.
+		 * Clients using another version of the protocol are turned away.
+		 * The client chooses its room with an optional field following the
+		 * port. Clients that do not send one join room 0. A client whose 
+		 * ship was handed over by another server of the cluster follows 
+		 * the room with the session ID it already has and the ticket it was
+		 * given with its redirect. Otherwise it assigns the client a 
+		 * session ID. 
+		 * 
+		 * @param length number of bytes in the frame following its length
+		 * @throws IOException
+		 */
+		protected void handleNewClient( int length ) throws IOException
+		{
+			// Read protocol version, port number, room and session ID
+			int version = request.getInt();
+			port = request.getInt();
+			int number = ( length >= 16 ) ? request.getInt() : 0;
+			int claimed = ( length >= 20 ) ? request.getInt() : 0;
+			int ticket = ( length >= 24 ) ? request.getInt() : 0;
+			
+			if ( version != Protocol.VERSION ) {
+				
+				System.out.println("Client using protocol version " + version + " refused.");
+				closeConnection();
+				return;
+			}
+			
+			if ( claimed != 0 ) {
+				
+				sessionID = claimed;
+				handleMovingClient( ticket );
+				return;
+			}
+			
+			room = spaceGameServer.rooms.get( number );
+			
+			if ( room == null ) {
+				
+				System.out.println("Client asked for room " + number + ", which does not exist. Refused.");
+				closeConnection();
+				return;
+			}
+			
+			sessionID = spaceGameServer.clients.allocateSessionID();
+			
+			if ( sessionID < 0 ) {
+				
+				System.out.println("No session IDs left. Client refused.");
+				closeConnection();
+				return;
+			}
+			
+			System.out.println("New Client; " + sessionID + " " + 
+					clientConnection.socket().getInetAddress() + ":" + port + " room " + room.number );
+			
+			register();
+			
+		} // end handleNewClient
+		
+		
+		/**
+		 * Takes care of a client whose ship has been handed over by another
+		 * server of the cluster. The client must hold the ticket the ship
+		 * was handed over with, which only the client was sent. If the 
+		 * ship has not arrived yet the client waits for it.
+		 * 
+		 * @param ticket ticket given to the client with its redirect
+		 * @throws IOException
+		 */
+		protected void handleMovingClient( int ticket ) throws IOException
+		{
+			if ( spaceGameServer.cluster == null || ticket == 0 ) {
+				
+				System.out.println("Client claimed session ID " + sessionID + " without a handoff. Refused.");
+				closeConnection();
+				return;
+			}
+			
+			this.ticket = ticket;
+			Arrival arrival = arrivals.get( sessionID );
+			
+			if ( arrival == null ) {
+				
+				// Only one client can hold a ticket
+				if ( waitingClients.containsKey( ticket ) ) {
+					
+					closeConnection();
+					return;
+				}
+				
+				waitingSince = System.currentTimeMillis();
+				waitingClients.put( ticket, this );
+				return;
+			}
+			
+			if ( arrival.ticket != ticket ) {
+				
+				System.out.println("Client claimed session ID " + sessionID + " with the wrong ticket. Refused.");
+				closeConnection();
+				return;
+			}
+			
+			arrivals.remove( sessionID );
+			admit( arrival.room );
+			
+		} // end handleMovingClient
+		
+		
+		/**
+		 * Registers a client whose ship has arrived from another server.
+		 * 
+		 * @param arrivalRoom room the ship arrived in
 		 * @throws IOException
 		 */
-		protected void handleNewClient() throws IOException
+		protected void admit( Room arrivalRoom ) throws IOException
 		{
-			// Add the player to the database
-			System.out.println("New Client; " + clientID );
-			spaceGameServer.clientDatagramSocketAddresses.add( clientID  );
+			room = arrivalRoom;
+			
+			if ( !spaceGameServer.clients.claimSessionID( sessionID ) ) {
+				
+				System.out.println("Session ID " + sessionID + " is already in use. Client refused.");
+				closeConnection();
+				return;
+			}
+			
+			System.out.println("Arriving Client; " + sessionID + " " + 
+					clientConnection.socket().getInetAddress() + ":" + port + " room " + room.number );
 			
-			// Retrieve a list of the obstacles in the sector
-			ArrayList<Obstacle> obstacles =  spaceGameServer.sector.getObstacles();
+			register();
+			
+		} // end admit
+		
+		
+		/**
+		 * Sends the client its session ID along with all the obstacles of
+		 * its room. Saves the UDP socket address for the client and saves 
+		 * a TCP socket connection to the client.
+		 * 
+		 * @throws IOException
+		 */
+		protected void register() throws IOException
+		{
+			// Get the clients IP address. Any address family can be used.
+			clientID = new InetSocketAddress( clientConnection.socket().getInetAddress(), port);
+			
+			// Retrieve a list of the obstacles in the sector of the room
+			ArrayList<Obstacle> obstacles =  room.sector.getObstacles();
+			
+			// Send the session ID and the coordinates of the obstacles in 
+			// one frame
+			ByteBuffer frame = ByteBuffer.allocate( 16 + 8 * obstacles.size() );
+			frame.putInt( 12 + 8 * obstacles.size() );
+			frame.putInt( Constants.OBSTACLES );
+			frame.putInt( sessionID );
+			frame.putInt( obstacles.size() );
 			
-			// Send to coordinates of the obstacles
 			for ( Obstacle obs : obstacles) {
 				
-				dos.writeInt( obs.getXPosition() );
-				dos.writeInt( obs.getYPosition() ); 
+				frame.putInt( obs.getXPosition() );
+				frame.putInt( obs.getYPosition() ); 
 			}
+			frame.flip();
+			
+			ServerOptions options = spaceGameServer.options;
+			connection = new ClientSocketConnection( clientConnection, clientID, sessionID,
+					clientConnection.keyFor( selector ), options.outboundQueueCapacity, 
+					options.overflowPolicy, options.stallMillis );
+			connection.room = room;
 
-			// Signal that their are no more obstacle coordinates to send
-			dos.writeInt( -1);		
-
-			// Leave the connection open and save it for sending removal messages
-			spaceGameServer.playerTCPConncetions.add(new ClientSocketConnection(clientConnection, dos));
+			// Add the player to the database and the room before it hears
+			// back, so that its first UDP message is not dropped. Leave the 
+			// connection open and save it for sending removal messages.
+			spaceGameServer.clients.add( connection );
+			room.addClient( connection );
 			
-		} // end handleNewClient
+			connection.send( frame );
+			write();
+			
+		} // end register
+		
+		
+		/**
+		 * Receives a ship or torpedo handed over by another server of the
+		 * cluster and adds it to the sector of its room. A ship whose 
+		 * client is already waiting lets the client in. Otherwise the ship
+		 * waits for its client.
+		 * 
+		 * @throws IOException
+		 */
+		protected void handleArrival() throws IOException
+		{
+			Room arrivalRoom = spaceGameServer.rooms.get( request.getInt() );
+			int kind = request.getInt();
+			int id = request.getInt();
+			int x = request.getInt();
+			int y = request.getInt();
+			int heading = request.getInt();
+			int life = request.getInt();
+			int ticket = request.getInt();
+			
+			if ( arrivalRoom == null ) {
+				return;
+			}
+			
+			if ( kind == Constants.UPDATE_TORPEDO ) {
+				
+				arrivalRoom.sector.submit( 
+						new SectorCommand( Constants.UPDATE_TORPEDO, id, x, y, heading, life ) );
+				return;
+			}
+			
+			// Joins rather than moves, since the client is not registered yet
+			arrivalRoom.sector.submit( new SectorCommand( Constants.JOIN, id, x, y, heading ) );
+			
+			HandleClientEvent waiting = waitingClients.remove( ticket );
+			
+			if ( waiting != null && waiting.sessionID == id ) {
+				
+				waiting.admit( arrivalRoom );
+			}
+			else {
+				
+				// A client holding the ticket for another ship is not let in
+				if ( waiting != null ) {
+					waiting.closeConnection();
+				}
+				
+				arrivals.put( id, new Arrival( arrivalRoom, ticket ) );
+			}
+			
+		} // end handleArrival
+
 		
 		
 		/**
 		 * Receives information from a client about a torpedo that
 		 * has been launched and sets up the torpedo for automatic 
 		 * updating.
-		 * @throws IOException
 		 */
-		protected void handleTorpedoLaunch() throws IOException
+		protected void handleTorpedoLaunch()
 		{
-			System.out.println("client is firing torpedo");
 			// Get the torpedo position and heading
-			int x = dis.readInt();
-			int y = dis.readInt();
-			int heading = dis.readInt();
-			
-			// The torpedo to the sector so that it can be automatically
-			// updated by the timer task.
-			Torpedo torpedo = new Torpedo( clientID, x, y, heading );
-			spaceGameServer.sector.updateOrAddTorpedo(torpedo);
+			int x = request.getInt();
+			int y = request.getInt();
+			int heading = request.getInt();
 			
-			// Close off the connection. The request has been completed
-			dis.close();
-			dos.close();
-			clientConnection.close();	
+			// Add the torpedo to the sector so that it can be automatically
+			// updated by the game loop.
+			room.sector.submit( 
+					new SectorCommand( Constants.UPDATE_TORPEDO, sessionID, x, y, heading ) );
 				
 		} // end handleTorpedoLaunch
 		
 		
 		/**
 		 * Takes care of a client that is leaving the game. It 
-		 * removes the UDP socket address from the list of
-		 * client socket address. Note: In order to simplify 
-		 * things, it does not attempt to remove TCP 
-		 * information about the client from the server 
-		 * database. 
-		 * @throws IOException
+		 * removes the client from the server database.
 		 */
-		protected void handleExitingClient() throws IOException
+		protected void handleExitingClient()
 		{
-			System.out.println("Departing Client; " + clientID );
+			// The ship has gone on to another server. The client leaving 
+			// this one is not leaving the game, and its session ID stays
+			// reserved until the ship does.
+			if ( connection.handedOff ) {
+				
+				connection = null;
+				return;
+			}
 			
-			// Remove the player from the database
-			spaceGameServer.clientDatagramSocketAddresses.remove( clientID );
+			System.out.println("Departing Client; " + sessionID + " " + clientID );
 			
-			// Temp spacecraft object for updating the sector display
-			SpaceCraft sc = new SpaceCraft(clientID);
+			// Remove the player from the database and the room
+			spaceGameServer.clients.remove( connection );
+			room.removeClient( connection );
+
+			connection = null;
 			
-			// Remove the client from the server sector display
-			spaceGameServer.sector.removeSpaceCraft( sc );
+			// Remove the client from the sector of the room
+			room.sector.submit( new SectorCommand( Constants.REMOVE_SHIP, sessionID ) );
 			
-			// Tell all the other clients to remove the ship
-			spaceGameServer.sendRemove( sc ); 
+			// Tell all the other clients in the room to remove the ship
+			room.sendRemove( new SpaceCraft( sessionID ) ); 
 			
-			// Close off the connection. The request has been completed
-			dis.close();
-			dos.close();
-			clientConnection.close();
+			// A ship that came from another server frees its session ID there
+			if ( spaceGameServer.cluster != null ) {
+				spaceGameServer.cluster.release( sessionID );
+			}
 			
 		} // end handleExitingClient
 		
+		
+		/**
+		 * Removes the client if it has registered and closes the 
+		 * connection. Used when handling the client has failed.
+		 */
+		protected void drop()
+		{
+			if ( connection != null ) {
+				handleExitingClient();
+			}
+			closeConnection();
+			
+		} // end drop
+		
+		
+		/**
+		 * Closes the connection with the client. The key is cancelled
+		 * when the channel is closed. A client waiting for its ship to 
+		 * arrive stops waiting.
+		 */
+		protected void closeConnection()
+		{
+			waitingClients.remove( ticket, this );
+			departingClients.remove( this );
+			
+			try {
+				clientConnection.close();
+			} catch (IOException e) {
+				System.err.println("Error closing client connection.");
+			}
+			
+		} // end closeConnection
+		
 	} // end HandleClientEvent class
 	
 		
-} // end ReliableServer class
\ No newline at end of file
+	// A ship handed over by another server waiting for its client
+	static class Arrival
+	{
+		// Room the ship arrived in
+		Room room;
+		
+		// Time the ship arrived
+		long time = System.currentTimeMillis();
+		
+		// Ticket its client must hold
+		int ticket;
+		
+		Arrival( Room room, int ticket )
+		{
+			this.room = room;
+			this.ticket = ticket;
+			
+		} // end Arrival constructor
+		
+	} // end Arrival class
+	
+	
+} // end ReliableServer class
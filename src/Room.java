@@ -0,0 +1,196 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import spaceWar.Constants;
+import spaceWar.Obstacle;
+import spaceWar.Protocol;
+import spaceWar.SectorModel;
+import spaceWar.SpaceCraft;
+import spaceWar.Torpedo;
+
+/**
+ * One match hosted by a SpaceGameServer. Each room has its own sector,
+ * obstacles, players, removals and GameLoop, and shares nothing with the
+ * other rooms but the network servers and the worker threads of the
+ * RoomManager that tick it. Clients choose a room when they register.
+ */
+class Room
+{
+	/**
+	 * Number identifying the room to clients
+	 */
+	final int number;
+
+	// Random number generator for obstacle positions
+	Random rand = new Random();
+
+	// Reference to the SpaceGameServer object hosting the room. Its
+	// ReliableServer writes the removals.
+	protected SpaceGameServer spaceGameServer;
+
+	// Sector containing all information about the game state. Only
+	// changed by the GameLoop. Other threads submit commands to it.
+	protected SectorModel sector = new SectorModel();
+
+	// Clients playing in the room. Iterated without locking. Session IDs
+	// are handed out by the registry of the server so that they are
+	// unique across rooms.
+	protected ClientRegistry clients = new ClientRegistry();
+
+	// Decides which ships and torpedoes each client is sent. Null when
+	// every client is sent everything.
+	protected InterestManager interest;
+
+	// Ships and torpedoes removed since removals were last sent
+	protected ArrayList<SpaceCraft> pendingRemovals = new ArrayList<SpaceCraft>();
+
+	// True if the GameLoop should publish frames for a display
+	protected boolean displayed = false;
+
+
+	/**
+	 * Creates a room with its own obstacles.
+	 *
+	 * @param spaceGameServer server hosting the room
+	 * @param number number identifying the room
+	 */
+	Room( SpaceGameServer spaceGameServer, int number )
+	{
+		this.spaceGameServer = spaceGameServer;
+		this.number = number;
+
+		ServerOptions options = spaceGameServer.options;
+
+		if ( options.viewRadius > 0 ) {
+			interest = new InterestManager( options.viewRadius, options.hysteresis );
+		}
+
+		createObstacles();
+
+	} // end Room constructor
+
+
+	/**
+	 * Create a number of obstacles as determined by a value held in
+	 * Constants.NUMBER_OF_OBSTACLES. Obstacles are in random positions
+	 * and are shared by all clients in the room.
+	 */
+	protected void createObstacles()
+	{
+		for(int i = 0 ; i < Constants.NUMBER_OF_OBSTACLES ; i++){
+
+			sector.addObstacle( new Obstacle( rand.nextInt(Constants.MAX_SECTOR_X),
+											  rand.nextInt(Constants.MAX_SECTOR_Y) ) );
+		}
+
+	} // end createObstacles
+
+
+	/**
+	 * Adds a registered client to the room.
+	 *
+	 * @param client connection of the client
+	 */
+	void addClient( ClientSocketConnection client )
+	{
+		clients.add( client );
+
+		if ( interest != null ) {
+			interest.addClient( client );
+		}
+
+	} // end addClient
+
+
+	/**
+	 * Removes a departing client from the room.
+	 *
+	 * @param client connection of the client
+	 */
+	void removeClient( ClientSocketConnection client )
+	{
+		clients.remove( client );
+
+		if ( interest != null ) {
+			interest.removeClient( client );
+		}
+
+	} // end removeClient
+
+
+	/**
+	 * Records that a particular SpaceCraft or Torpedo must be removed by all
+	 * clients in the room. Removals are gathered and sent once per tick of
+	 * the game by flushRemovals.
+	 *
+	 * @param sc ship or torpedo to be removed
+	 */
+	protected void sendRemove( SpaceCraft sc ) {
+
+		synchronized ( pendingRemovals ) {
+
+			pendingRemovals.add( sc );
+		}
+
+		// A destroyed ship is no longer in view of anyone
+		if ( interest != null && !( sc instanceof Torpedo ) ) {
+			interest.removeShip( sc.ID );
+		}
+
+	} // end sendRemove
+
+
+	/**
+	 * Sends all removals gathered since the last call to every client in
+	 * the room as a single frame. The frame is put in the outbound queue of
+	 * each client's TCP connection and written later by the ReliableServer,
+	 * so a slow client cannot hold up the calling thread.
+	 */
+	protected void flushRemovals() {
+
+		ArrayList<SpaceCraft> removed;
+
+		synchronized ( pendingRemovals ) {
+
+			if ( pendingRemovals.isEmpty() ) {
+				return;
+			}
+
+			removed = new ArrayList<SpaceCraft>( pendingRemovals );
+			pendingRemovals.clear();
+		}
+
+		// Build the frame once for all players. For each entity indicate
+		// whether it is a torpedo or a spacecraft followed by its
+		// session ID.
+		int size = 8 + Protocol.REMOVAL_SIZE * removed.size();
+		ByteBuffer removeFrame = ByteBuffer.allocate( 4 + size );
+		removeFrame.putInt( size );
+		removeFrame.putInt( Constants.REMOVE_BATCH );
+		removeFrame.putInt( removed.size() );
+
+		for ( SpaceCraft sc : removed ) {
+
+			Protocol.putRemoval( removeFrame,
+					( sc instanceof Torpedo ) ? Constants.REMOVE_TORPEDO : Constants.REMOVE_SHIP, sc.ID );
+		}
+		removeFrame.flip();
+
+		ReliableServer reliableServer = spaceGameServer.reliableServer;
+
+		// Go through all the players in the room
+		for( ClientSocketConnection isa : clients.snapshot() ) {
+
+			// Queue the frame for a particular player
+			if ( isa.send( removeFrame ) ) {
+				reliableServer.schedule( isa );
+			}
+		}
+
+		// Let the writer know there is something to send
+		reliableServer.wakeup();
+
+	} // end flushRemovals
+
+} // end Room class
@@ -0,0 +1,138 @@
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts the rooms of a server and ticks them on a fixed pool of worker
+ * threads, one per core by default. Each room's GameLoop is scheduled at
+ * a fixed rate. A GameLoop never runs on two workers at once, so the
+ * worker running a tick is the only thread changing that room's sector,
+ * while different rooms tick on different workers at the same time.
+ * Rooms are started at staggered offsets so their ticks do not all
+ * fall due together.
+ *
+ * When rooms are split into regions, a fork-join pool with a thread per
+ * worker steps the regions of a room while the worker ticking it waits.
+ */
+class RoomManager
+{
+	// Rooms indexed by number
+	protected Room rooms[];
+
+	// Loops of the rooms indexed by room number
+	protected GameLoop loops[];
+
+	// Workers that run the ticks of every room
+	protected ScheduledThreadPoolExecutor workers;
+
+	// Pool stepping the regions of the rooms. Null when rooms are not
+	// split into regions.
+	protected ForkJoinPool regionPool;
+
+	// Socket through which the snapshots of every room are sent
+	protected DatagramSocket dgsock;
+
+
+	/**
+	 * Creates the rooms of a server and starts ticking them.
+	 *
+	 * @param spaceGameServer server hosting the rooms
+	 * @param count number of rooms
+	 * @param threads number of worker threads
+	 * @param tickMillis length of a tick in milliseconds
+	 */
+	RoomManager( SpaceGameServer spaceGameServer, int count, int threads, int tickMillis )
+	{
+		try {
+			dgsock = new DatagramSocket();
+		} catch (SocketException e) {
+			System.err.println("Could not create Datagram Socket for rooms.");
+			System.exit(0);
+		}
+
+		int regions = spaceGameServer.options.regions;
+
+		if ( regions > 1 ) {
+			regionPool = new ForkJoinPool( threads );
+		}
+
+		rooms = new Room[ count ];
+		loops = new GameLoop[ count ];
+
+		for ( int i = 0; i < count; i++ ) {
+
+			rooms[i] = new Room( spaceGameServer, i );
+			rooms[i].sector.stepInRegions( regionPool, regions );
+			loops[i] = new GameLoop( rooms[i], dgsock, tickMillis );
+		}
+
+		final AtomicInteger workerNumber = new AtomicInteger();
+
+		workers = new ScheduledThreadPoolExecutor( threads, new ThreadFactory() {
+
+			public Thread newThread( Runnable task ) {
+
+				return new Thread( task, "GameLoop-" + workerNumber.incrementAndGet() );
+			}
+		});
+
+	} // end RoomManager constructor
+
+
+	/**
+	 * Starts ticking every room.
+	 */
+	void start()
+	{
+		long tickNanos = loops.length > 0 ? loops[0].tickNanos : 0;
+
+		for ( int i = 0; i < loops.length; i++ ) {
+
+			workers.scheduleAtFixedRate( loops[i], tickNanos * i / loops.length,
+					tickNanos, TimeUnit.NANOSECONDS );
+		}
+
+	} // end start
+
+
+	/**
+	 * Looks up a room.
+	 *
+	 * @param number number of the room
+	 * @return the room or null if there is no room with the number
+	 */
+	Room get( int number )
+	{
+		return ( number >= 0 && number < rooms.length ) ? rooms[number] : null;
+
+	} // end get
+
+
+	/**
+	 * Stops ticking the rooms and closes the socket once the ticks
+	 * running have finished.
+	 */
+	void close()
+	{
+		workers.shutdown();
+
+		try {
+			workers.awaitTermination( 1, TimeUnit.SECONDS );
+
+		} catch (InterruptedException e) {
+			// Closes the socket anyway
+		}
+
+		if ( regionPool != null ) {
+			regionPool.shutdown();
+		}
+
+		dgsock.close();
+
+	} // end close
+
+} // end RoomManager class
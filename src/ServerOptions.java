@@ -0,0 +1,174 @@
+/**
+ * Settings for a SpaceGameServer taken from the command line.
+ * 
+ * Recognized options:
+ * --headless                        run without a display
+ * --overflow=drop|coalesce|disconnect  what to do when a client's outbound queue is full
+ * --queue=N                         number of frames each client's outbound queue holds
+ * --stall-ms=N                      how long a full queue is tolerated before disconnecting
+ * --view-radius=N                   distance within which a client is sent other ships. 0 sends all
+ * --hysteresis=N                    extra distance before a ship in view is culled
+ * --tick-ms=N                       length of a tick of the game in milliseconds
+ * --rooms=N                         number of independent matches hosted
+ * --workers=N                       number of threads ticking the rooms. Defaults to one per core
+ * --regions=N                       number of strips each room's torpedoes are stepped in, in parallel
+ * --cluster=CxR                     run as one of C columns by R rows of servers, each with its own sector
+ * --node=K                          which server of the cluster this is, counted along the rows from 0
+ */
+class ServerOptions 
+{
+	// True if the server should run without a display
+	boolean headless = false;
+	
+	// Backpressure settings for the outbound queue of each client
+	ClientSocketConnection.OverflowPolicy overflowPolicy 
+		= ClientSocketConnection.OverflowPolicy.DISCONNECT;
+	int outboundQueueCapacity = 256;
+	long stallMillis = 2000;
+	
+	// Area of interest settings. A view radius of zero forwards every
+	// update to every client.
+	int viewRadius = 0;
+	int hysteresis = 20;
+	
+	// Length of a tick of the game
+	int tickMillis = 50;
+	
+	// Number of matches and the threads that tick them
+	int rooms = 1;
+	int workers = Runtime.getRuntime().availableProcessors();
+	
+	// Number of regions stepped in parallel in each room. One steps the
+	// whole room on the thread ticking it.
+	int regions = 1;
+	
+	// Layout of the cluster of servers and which one this is. A single
+	// server is a cluster of one.
+	int columns = 1;
+	int rows = 1;
+	int node = 0;
+	
+	
+	/**
+	 * Creates options from command line arguments. Unknown arguments
+	 * are reported and ignored.
+	 * 
+	 * @param args command line arguments
+	 * @return options holding defaults for anything not given
+	 */
+	static ServerOptions parse( String[] args )
+	{
+		ServerOptions options = new ServerOptions();
+		
+		for ( String arg : args ) {
+			
+			try {
+				if ( arg.equals( "--headless" ) ) {
+					
+					options.headless = true;
+				}
+				else if ( arg.startsWith( "--overflow=" ) ) {
+					
+					options.overflowPolicy = ClientSocketConnection.OverflowPolicy.valueOf( 
+							value( arg ).toUpperCase() );
+				}
+				else if ( arg.startsWith( "--queue=" ) ) {
+					
+					options.outboundQueueCapacity = Math.max( 1, Integer.parseInt( value( arg ) ) );
+				}
+				else if ( arg.startsWith( "--stall-ms=" ) ) {
+					
+					options.stallMillis = Math.max( 0L, Long.parseLong( value( arg ) ) );
+				}
+				else if ( arg.startsWith( "--view-radius=" ) ) {
+					
+					options.viewRadius = Integer.parseInt( value( arg ) );
+				}
+				else if ( arg.startsWith( "--hysteresis=" ) ) {
+					
+					options.hysteresis = Math.max( 0, Integer.parseInt( value( arg ) ) );
+				}
+				else if ( arg.startsWith( "--tick-ms=" ) ) {
+					
+					options.tickMillis = Math.max( 1, Integer.parseInt( value( arg ) ) );
+				}
+				else if ( arg.startsWith( "--rooms=" ) ) {
+					
+					options.rooms = Math.max( 1, Integer.parseInt( value( arg ) ) );
+				}
+				else if ( arg.startsWith( "--workers=" ) ) {
+					
+					options.workers = Math.max( 1, Integer.parseInt( value( arg ) ) );
+				}
+				else if ( arg.startsWith( "--regions=" ) ) {
+					
+					options.regions = Math.max( 1, Integer.parseInt( value( arg ) ) );
+				}
+				else if ( arg.startsWith( "--cluster=" ) ) {
+					
+					String layout[] = value( arg ).split( "x" );
+					
+					options.columns = Math.max( 1, Integer.parseInt( layout[0] ) );
+					options.rows = Math.max( 1, Integer.parseInt( layout[1] ) );
+				}
+				else if ( arg.startsWith( "--node=" ) ) {
+					
+					options.node = Math.max( 0, Integer.parseInt( value( arg ) ) );
+				}
+				else {
+					
+					System.err.println( "Unknown option: " + arg );
+				}
+				
+			} catch ( IllegalArgumentException e ) {
+				
+				System.err.println( "Bad value for option: " + arg );
+				
+			} catch ( ArrayIndexOutOfBoundsException e ) {
+				
+				System.err.println( "Bad value for option: " + arg );
+			}
+		}
+		
+		if ( options.node >= options.nodes() ) {
+			
+			System.err.println( "Node " + options.node + " is not in the cluster. Using node 0." );
+			options.node = 0;
+		}
+		
+		return options;
+		
+	} // end parse
+	
+	
+	/**
+	 * Number of servers in the cluster.
+	 */
+	int nodes()
+	{
+		return columns * rows;
+		
+	} // end nodes
+	
+	
+	/**
+	 * Port the server listens on for clients and the other servers of the
+	 * cluster. Each server of a cluster on one machine has its own.
+	 */
+	int port()
+	{
+		return Cluster.port( node );
+		
+	} // end port
+	
+	
+	/**
+	 * Returns the part of an option following the equals sign.
+	 */
+	protected static String value( String arg )
+	{
+		return arg.substring( arg.indexOf( '=' ) + 1 );
+		
+	} // end value
+	
+} // end ServerOptions class
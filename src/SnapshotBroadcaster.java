@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
+
+import spaceWar.Constants;
+import spaceWar.EntityStore;
+import spaceWar.SectorModel;
+import spaceWar.Snapshot;
+import spaceWar.SnapshotCodec;
+import spaceWar.SnapshotReceiver;
+
+/**
+ * Sends each client a snapshot of the ships and torpedoes it can see once
+ * per update of the game. A snapshot only holds what changed since the
+ * newest snapshot the client has acknowledged, so entities that have not
+ * changed cost nothing. Nothing at all is sent to a client that already
+ * holds everything. A lost snapshot needs no resend: the next one is
+ * made against the same acknowledged baseline and carries its changes
+ * too. Snapshots too large for one datagram are split into fragments.
+ *
+ * Used by the GameLoop of the room, which owns the sector.
+ */
+class SnapshotBroadcaster
+{
+	/**
+	 * Number of snapshots kept for each client. Changes are only made
+	 * against an acknowledged snapshot this recent. Must match the number
+	 * kept by clients.
+	 */
+	static final int HISTORY = SnapshotReceiver.HISTORY;
+
+	// Room whose clients are sent snapshots
+	protected Room room;
+
+	// Every ship and torpedo in the game, sorted by key
+	protected Snapshot world = new Snapshot();
+
+	// Changes of the snapshot being sent
+	protected ByteBuffer changes = ByteBuffer.allocate( SnapshotCodec.FRAGMENT_SIZE * 4 );
+
+	// Buffer and packet reused for every fragment sent
+	protected ByteBuffer fragmentBuffer = ByteBuffer.allocate( Constants.MAX_DATAGRAM_SIZE );
+	protected DatagramPacket packet
+		= new DatagramPacket( fragmentBuffer.array(), Constants.MAX_DATAGRAM_SIZE );
+
+
+	/**
+	 * Creates a broadcaster for the clients of a room.
+	 *
+	 * @param room room whose sector and clients are used. Null for a relay.
+	 */
+	SnapshotBroadcaster( Room room )
+	{
+		this.room = room;
+
+	} // end SnapshotBroadcaster constructor
+
+
+	/**
+	 * Sends every client the changes to what it can see.
+	 *
+	 * @param socket socket to use to send the snapshots
+	 */
+	void broadcast( DatagramSocket socket )
+	{
+		buildWorld();
+
+		InterestManager interest = room.interest;
+
+		if ( interest != null ) {
+			interest.indexTorpedoes( world );
+		}
+
+		ClientSocketConnection current[] = room.clients.snapshot();
+
+		for ( int i = 0; i < current.length; i++ ) {
+
+			sendTo( current[i], interest, socket );
+		}
+
+	} // end broadcast
+
+
+	/**
+	 * Sends every client the changes to what it can see of a world rebuilt
+	 * from snapshots received from elsewhere. Used by a relay, which has
+	 * no room and sends its clients everything.
+	 *
+	 * @param source snapshot of the world
+	 * @param clients clients to send to
+	 * @param socket socket to use to send the snapshots
+	 */
+	void relay( Snapshot source, ClientSocketConnection clients[], DatagramSocket socket )
+	{
+		world.copy( source );
+
+		for ( int i = 0; i < clients.length; i++ ) {
+
+			sendTo( clients[i], null, socket );
+		}
+
+	} // end relay
+
+
+	/**
+	 * Copies every ship and torpedo of the sector into the world snapshot.
+	 */
+	protected void buildWorld()
+	{
+		SectorModel sector = room.sector;
+
+		world.reset( 0 );
+
+		EntityStore ships = sector.heldSpaceCraft();
+
+		for ( int i = 0; i < ships.count; i++ ) {
+			world.add( ships.id[i], Snapshot.state( ships.x[i], ships.y[i], ships.heading[i] ) );
+		}
+
+		EntityStore torpedoes = sector.heldTorpedoes();
+
+		for ( int i = 0; i < torpedoes.count; i++ ) {
+			world.add( torpedoes.id[i] | Snapshot.TORPEDO,
+					Snapshot.state( torpedoes.x[i], torpedoes.y[i], torpedoes.heading[i] ) );
+		}
+
+		world.sort();
+
+	} // end buildWorld
+
+
+	/**
+	 * Sends one client the changes between its acknowledged snapshot and
+	 * what it can see now.
+	 */
+	protected void sendTo( ClientSocketConnection client, InterestManager interest, DatagramSocket socket )
+	{
+		if ( client.sentSnapshots == null ) {
+
+			client.sentSnapshots = new Snapshot[ HISTORY ];
+
+			for ( int i = 0; i < HISTORY; i++ ) {
+				client.sentSnapshots[i] = new Snapshot();
+			}
+		}
+
+		int seq = client.lastSentSeq + 1;
+		int ackedSeq = client.ackedSeq;
+
+		// Use the acknowledged snapshot as the baseline if it is still held
+		Snapshot base = null;
+
+		if ( ackedSeq > 0 && seq - ackedSeq < HISTORY
+				&& client.sentSnapshots[ ackedSeq % HISTORY ].seq == ackedSeq ) {
+
+			base = client.sentSnapshots[ ackedSeq % HISTORY ];
+		}
+
+		// Choose what the client can see
+		Snapshot current = client.sentSnapshots[ seq % HISTORY ];
+		current.reset( seq );
+
+		if ( interest != null ) {
+
+			interest.select( world, client, current );
+		}
+		else {
+
+			for ( int i = 0; i < world.count; i++ ) {
+
+				if ( world.keys[i] != client.sessionID ) {
+					current.add( world.keys[i], world.states[i] );
+				}
+			}
+		}
+
+		// Encode the changes
+		int room = ( current.count + ( base == null ? 0 : base.count ) ) * SnapshotCodec.MAX_CHANGE_SIZE;
+
+		if ( changes.capacity() < room ) {
+			changes = ByteBuffer.allocate( room );
+		}
+
+		changes.clear();
+		int changed = SnapshotCodec.encode( base, current, changes );
+
+		// Nothing to send if the client already holds this snapshot
+		int baseSeq = ( base == null ) ? 0 : base.seq;
+
+		if ( changed == 0 && baseSeq == client.lastSentSeq ) {
+
+			current.reset( 0 );
+			return;
+		}
+
+		changes.flip();
+
+		int fragments = Math.max( 1,
+				( changes.remaining() + SnapshotCodec.FRAGMENT_SIZE - 1 ) / SnapshotCodec.FRAGMENT_SIZE );
+
+		if ( fragments > SnapshotCodec.MAX_FRAGMENTS ) {
+
+			System.err.println("Snapshot too large to send.");
+			current.reset( 0 );
+			return;
+		}
+
+		// Send each fragment
+		for ( int fragment = 0; fragment < fragments; fragment++ ) {
+
+			int size = Math.min( changes.remaining(), SnapshotCodec.FRAGMENT_SIZE );
+
+			fragmentBuffer.clear();
+			SnapshotCodec.putHeader( fragmentBuffer, seq, baseSeq, fragment, fragments );
+			fragmentBuffer.put( changes.array(), changes.position(), size );
+			changes.position( changes.position() + size );
+
+			packet.setData( fragmentBuffer.array(), 0, fragmentBuffer.position() );
+			packet.setSocketAddress( client.clientDatagramAddress );
+
+			try {
+				socket.send( packet );
+
+			} catch (IOException e) {
+				System.err.println("Error sending snapshot.");
+			}
+		}
+
+		client.lastSentSeq = seq;
+
+	} // end sendTo
+
+} // end SnapshotBroadcaster class
@@ -1,18 +1,21 @@
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 
 import spaceWar.Constants;
+import spaceWar.Protocol;
 import spaceWar.Sector;
+import spaceWar.SnapshotReceiver;
 import spaceWar.SpaceCraft;
 import spaceWar.SpaceGUIInterface;
 import spaceWar.SpaceGameGUI;
@@ -34,9 +37,23 @@ public class SpaceGameClient implements SpaceGUIInterface
 	// User interface
 	SpaceGameGUI gui;
 	
-	// IP address and port to identify ownship and the 
-	// DatagramSocket being used for game play messages.
-	InetSocketAddress ownShipID;
+	// Session ID assigned by the server to identify ownship
+	int ownShipID;
+	
+	// Room of the server the client plays in
+	int room;
+	
+	// Port of the server the client plays on. Changes when ownShip is
+	// handed to another server of a cluster.
+	int serverPort;
+	
+	// Set when the client has moved to another server, so that snapshots
+	// are rebuilt from scratch
+	volatile boolean redirected = false;
+	
+	// True while the client registers with the server ownShip has been
+	// handed to. Only read and written while the client is locked.
+	boolean moving = false;
 	
 	// Socket for sending and receiving
 	// game play messages.
@@ -47,7 +64,12 @@ public class SpaceGameClient implements SpaceGUIInterface
 	Socket reliableSocket;
 	
 	// Set to false to stops all receiving loops
-	boolean playing = true;
+	volatile boolean playing = true;
+	
+	// Buffer and packet reused for every update message sent
+	ByteBuffer updateBuffer = ByteBuffer.allocate( Protocol.SHIP_UPDATE_SIZE );
+	DatagramPacket updatePacket = new DatagramPacket( updateBuffer.array(), 
+			Protocol.SHIP_UPDATE_SIZE );
 	
 	DataOutputStream dos;
 	DataInputStream dis;
@@ -62,6 +84,24 @@ public class SpaceGameClient implements SpaceGUIInterface
 	 */
 	public SpaceGameClient()
 	{
+		this( 0, Constants.SERVER_PORT );
+		
+	} // end SpaceGame constructor
+	
+	
+	/**
+	 * Creates all components needed to start a space game in a room of
+	 * the server.
+	 * 
+	 * @param room number of the room to join
+	 * @param serverPort port of the server to join
+	 */
+	public SpaceGameClient( int room, int serverPort )
+	{
+		this.room = room;
+		this.serverPort = serverPort;
+		updatePacket.setSocketAddress( new InetSocketAddress( Constants.SERVER_IP, serverPort ) );
+		
 		// Create UDP Datagram Socket for sending and receiving
 		// game play messages.
 		try {
@@ -73,29 +113,16 @@ public class SpaceGameClient implements SpaceGUIInterface
 			System.exit(0);
 		} 
 		
-		// Instantiate ownShipID using the DatagramSocket port
-		// and the local IP address.
-		try {
-			
-			ownShipID = new InetSocketAddress(
-							InetAddress.getLocalHost(),
-							gamePlaySocket.getLocalPort());
-		} catch (UnknownHostException e) {
-			// Auto-generated catch block
-			System.err.println("Error creating ownship ID. Exiting.");
-			System.exit(0);
-		}
-		
-		// Create display, ownPort is used to uniquely identify the 
-		// controlled entity.
-		sector = new Sector( ownShipID );
+		// Create display. The session ID that uniquely identifies the 
+		// controlled entity is set when the client registers.
+		sector = new Sector();
 		
 		//	gui will call SpaceGame methods to handle user events
 		gui = new SpaceGameGUI( this, sector ); 
 		
 		// Call a method that uses TCP/IP to register with the server 
-		// and receive obstacles from the server. 
-		register();
+		// and receive a session ID and obstacles from the server. 
+		register( 0, 0 );
 		
 		
 		// Infinite loop or separate thread to receive update and join
@@ -124,28 +151,12 @@ public class SpaceGameClient implements SpaceGUIInterface
 	 * @param param
 	 * 			The code being sent in the message.
 	 */
-	private void sendUpdatedShip(int param){
-		int x = sector.ownShip.getXPosition();
-		int y = sector.ownShip.getYPosition();
-		int heading = sector.ownShip.getHeading();
-		
+	private synchronized void sendUpdatedShip(int param){
 		try{
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			DataOutputStream dp_dos = new DataOutputStream(baos);
-
-			dp_dos.write(sector.ownShip.ID.getAddress().getAddress());
-			dp_dos.writeInt(sector.ownShip.ID.getPort());
-			dp_dos.writeInt(param);
-			dp_dos.writeInt(x);
-			dp_dos.writeInt(y);
-			dp_dos.writeInt(heading);
-
-			byte[] baosArray = baos.toByteArray();
-			DatagramPacket dp = new DatagramPacket(baosArray, baosArray.length);
-			dp_dos.close();
-
-			dp.setSocketAddress(new InetSocketAddress(Constants.SERVER_IP, Constants.SERVER_PORT));
-			gamePlaySocket.send(dp);
+			updateBuffer.clear();
+			Protocol.putShipUpdate(updateBuffer, param, sector.ownShip);
+			
+			gamePlaySocket.send(updatePacket);
 		}
 		catch(IOException e){
 			System.out.println("Error Updating Ship");
@@ -203,19 +214,24 @@ public class SpaceGameClient implements SpaceGUIInterface
 			
 			if ( DEBUG ) System.out.println( "Informing server of new torpedo" );
 			
-			// Make a TCP connection to the server and send torpedo information
+			// Send torpedo information over the registered connection as a
+			// single frame. The client is locked, since redirect replaces
+			// the connection while holding the same lock. A torpedo fired
+			// while the client moves to another server is dropped, since
+			// neither server has ownShip in play.
 			try{
-				Socket s = new Socket(Constants.SERVER_IP, Constants.SERVER_PORT);
-				DataOutputStream ft = new DataOutputStream(s.getOutputStream());
-				
-				ft.writeInt(Constants.FIRED_TORPEDO);
-				ft.writeInt(ownShipID.getPort());
-				ft.writeInt(sector.ownShip.getXPosition());
-				ft.writeInt(sector.ownShip.getYPosition());
-				ft.writeInt(sector.ownShip.getHeading());
-				
-				ft.close();
-				s.close();
+				synchronized(this){
+					if(moving){
+						return;
+					}
+					
+					dos.writeInt(16);
+					dos.writeInt(Constants.FIRED_TORPEDO);
+					dos.writeInt(sector.ownShip.getXPosition());
+					dos.writeInt(sector.ownShip.getYPosition());
+					dos.writeInt(sector.ownShip.getHeading());
+					dos.flush();
+				}
 			}
 			catch(IOException e){
 				System.out.println("Error firing torpedo");
@@ -272,29 +288,160 @@ public class SpaceGameClient implements SpaceGUIInterface
 	 * register
 	 * @author Daniel J Bray
 	 * 
-	 * Establishes a TCP connection with the server and receives all the obstacles
-	 * present in the game. Connection is left open to allow for remove messages to
-	 * be sent using a reliable connection.
+	 * Establishes a TCP connection with the server and receives the session ID
+	 * that identifies this client's ship and all the obstacles present in the 
+	 * game. Connection is left open for the rest of the game. 
+	 * Torpedo launches and leaving the game are sent over it and remove messages
+	 * are received from it. Every message on the connection is framed by its
+	 * length and a code. A client whose ship was handed over by another
+	 * server claims the session ID it already has with the ticket it was
+	 * given.
+	 * 
+	 * @param claimed session ID of the ship handed over, or 0 for a new one
+	 * @param ticket ticket of the ship handed over, or 0 for a new one
+	 */
+	public void register(int claimed, int ticket){
+		try{
+			use(connect(serverPort, claimed, ticket));
+		}
+		catch(IOException e){
+			System.out.println("Error registering with server. Exiting");
+			System.exit(0);
+		}
+	}
+	
+	/**
+	 * connect
+	 * 
+	 * Connects to a server and registers with it, reading its whole 
+	 * answer. Nothing the other threads use is changed, so the client 
+	 * need not be locked while the server answers.
+	 * 
+	 * @param port port of the server
+	 * @param claimed session ID of the ship handed over, or 0 for a new one
+	 * @param ticket ticket of the ship handed over, or 0 for a new one
+	 * @return the connection, registered
+	 * @throws IOException if the server cannot be reached or refuses
 	 */
-	public void register(){
-		try{			
-			reliableSocket = new Socket(Constants.SERVER_IP, Constants.SERVER_PORT);
-			dos = new DataOutputStream(reliableSocket.getOutputStream());
-			dis = new DataInputStream(reliableSocket.getInputStream());
+	private Registration connect(int port, int claimed, int ticket) throws IOException{
+		Registration registration = new Registration();
+		registration.socket = new Socket(Constants.SERVER_IP, port);
+		
+		try{
+			registration.socket.setTcpNoDelay(true);
+			registration.dos = new DataOutputStream(
+					new BufferedOutputStream(registration.socket.getOutputStream()));
+			registration.dis = new DataInputStream(
+					new BufferedInputStream(registration.socket.getInputStream()));
 			
-			dos.writeInt(Constants.REGISTER);
-			dos.writeInt(ownShipID.getPort());
+			ByteBuffer frame = ByteBuffer.allocate(Protocol.REGISTER_SIZE);
+			Protocol.putRegister(frame, gamePlaySocket.getLocalPort(), room, claimed, ticket);
+			registration.dos.write(frame.array());
+			registration.dos.flush();
+			
+			//The server answers with the session ID and the obstacles.
+			//It closes the connection if it does not speak this version
+			//or does not have the room.
+			registration.dis.readInt();
+			if(registration.dis.readInt() != Constants.OBSTACLES){
+				throw new IOException("Expected obstacles");
+			}
 			
-			int x = dis.readInt();
+			registration.sessionID = registration.dis.readInt();
+			registration.obstacles = new int[2 * registration.dis.readInt()];
 			
-			while(x != -1){
-				sector.addObstacle(x, dis.readInt());
-				x = dis.readInt();
+			for(int i = 0; i < registration.obstacles.length; i++){
+				registration.obstacles[i] = registration.dis.readInt();
 			}
+			
+			return registration;
 		}
 		catch(IOException e){
-			System.out.println("Error registering with server. Exiting");
-			System.exit(0);
+			registration.socket.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * use
+	 * 
+	 * Switches the client to a connection it has registered over and adds
+	 * the obstacles of the server's sector. The client is locked, so a 
+	 * torpedo is sent whole over one connection or the other. A client 
+	 * stopped meanwhile closes the connection instead.
+	 * 
+	 * @param registration connection registered by connect
+	 */
+	private synchronized void use(Registration registration) throws IOException{
+		if(!playing){
+			registration.socket.close();
+			return;
+		}
+		
+		reliableSocket = registration.socket;
+		dos = registration.dos;
+		dis = registration.dis;
+		
+		ownShipID = registration.sessionID;
+		sector.setOwnShipID(ownShipID);
+		
+		for(int i = 0; i < registration.obstacles.length; i += 2){
+			sector.addObstacle(registration.obstacles[i], registration.obstacles[i + 1]);
+		}
+		
+		moving = false;
+	}
+	
+	/**
+	 * redirect
+	 * 
+	 * Moves the client to another server of a cluster, which ownShip has
+	 * been handed to. Everything else in the sector belongs to the old 
+	 * server and is removed. The client registers with the other server
+	 * without being locked, so moving ownShip and firing never wait on 
+	 * the network. Torpedoes fired meanwhile are dropped. The connection
+	 * to the old server is then closed without an exit message, since the
+	 * ship is still in the game. A client that cannot register with the
+	 * other server has lost its ship and stops playing.
+	 * 
+	 * @param port port of the other server
+	 * @param x position of ownShip in the sector of the other server
+	 * @param y position of ownShip in the sector of the other server
+	 * @param ticket ticket to claim ownShip with
+	 */
+	private void redirect(int port, int x, int y, int ticket){
+		Socket old;
+		
+		synchronized(this){
+			old = reliableSocket;
+			moving = true;
+			
+			serverPort = port;
+			updatePacket.setSocketAddress(new InetSocketAddress(Constants.SERVER_IP, port));
+			
+			sector.clear();
+			
+			if(sector.ownShip != null){
+				sector.ownShip.setX(x);
+				sector.ownShip.setY(y);
+			}
+			
+			redirected = true;
+		}
+		
+		try{
+			use(connect(port, ownShipID, ticket));
+		}
+		catch(IOException e){
+			System.out.println("Error moving to the server on port " + port);
+			lostConnection();
+		}
+		
+		try{
+			old.close();
+		}
+		catch(IOException e){
+			//Already unusable
 		}
 	}
 	
@@ -318,7 +465,7 @@ public class SpaceGameClient implements SpaceGUIInterface
 		}
 		
 	} // end join
-
+	
 	
 	/**
 	 *  Perform clean-up for application shut down
@@ -332,14 +479,11 @@ public class SpaceGameClient implements SpaceGUIInterface
 
 		// Inform the server that the client is leaving the game
 		try{
-			Socket s = new Socket(Constants.SERVER_IP, Constants.SERVER_PORT);
-			DataOutputStream stopStream = new DataOutputStream(s.getOutputStream());
-			
-			stopStream.writeInt(Constants.EXIT);
-			stopStream.writeInt(ownShipID.getPort());
-			
-			stopStream.close();
-			s.close();
+			synchronized(this){
+				dos.writeInt(4);
+				dos.writeInt(Constants.EXIT);
+				dos.flush();
+			}
 			
 			dis.close();
 			dos.close();
@@ -352,14 +496,59 @@ public class SpaceGameClient implements SpaceGUIInterface
 		
 	} // end stop
 	
+	/**
+	 * lostConnection
+	 * 
+	 * Stops the receiving loops once a connection to the server has 
+	 * failed, and closes both connections so the other loop stops too. 
+	 * Nothing is reported if the client was stopping anyway.
+	 */
+	private synchronized void lostConnection(){
+		if(!playing){
+			return;
+		}
+		
+		playing = false;
+		System.out.println("Lost connection to server");
+		
+		gamePlaySocket.close();
+		
+		try{
+			reliableSocket.close();
+		}
+		catch(IOException e){
+			//Already unusable
+		}
+	}
+	
+	/**
+	 * Registration
+	 * 
+	 * A connection to a server the client has registered over, with the
+	 * server's answer, before the client switches to it.
+	 */
+	static class Registration{
+		Socket socket;
+		DataOutputStream dos;
+		DataInputStream dis;
+		
+		//Session ID of ownShip on the server
+		int sessionID;
+		
+		//Coordinates of the obstacles of the server's sector, x then y
+		int obstacles[];
+	}
+	
 	/**
 	 * UpdateJoinThread
 	 * @author Daniel J Bray
 	 *
 	 * UpdateJointhread is a thread used in conjunction with the space
-	 * game client to receive update or join messages from the server
-	 * originally sent by other players which are then used to update
-	 * the display. Closes when client application is closed.
+	 * game client to receive the snapshots of the ships and torpedoes 
+	 * in view sent by the server, which are then used to update
+	 * the display. Every snapshot rebuilt is acknowledged so the server
+	 * can send the next one as changes from it. Closes when client 
+	 * application is closed.
 	 */
 	class UpdateJoinThread extends Thread{
 		public UpdateJoinThread(){
@@ -368,39 +557,60 @@ public class SpaceGameClient implements SpaceGUIInterface
 		
 		@Override
 		public void run(){
+			//Reused for every datagram. Snapshots may fill a whole datagram
+			ByteBuffer buffer = ByteBuffer.allocate(Constants.MAX_DATAGRAM_SIZE);
+			DatagramPacket dp = new DatagramPacket(buffer.array(), Constants.MAX_DATAGRAM_SIZE);
+			
+			//Reused for every acknowledgement sent
+			ByteBuffer ackBuffer = ByteBuffer.allocate(Protocol.ACK_SIZE);
+			DatagramPacket ackPacket = new DatagramPacket(ackBuffer.array(), Protocol.ACK_SIZE,
+					new InetSocketAddress(Constants.SERVER_IP, serverPort));
+			
+			SnapshotReceiver receiver = new SnapshotReceiver();
+			
+			//Where the snapshots come from. Late snapshots from a server
+			//the client has left are ignored.
+			SocketAddress source = null, staleSource = null;
+			
 			while(playing){
 				try{
 					//Reads in datagram packet
-					DatagramPacket dp = new DatagramPacket(new byte[24], 24);
+					dp.setLength(Constants.MAX_DATAGRAM_SIZE);
 					gamePlaySocket.receive(dp);
+					int length = dp.getLength();
 					
-					//Creates necessary streams
-					ByteArrayInputStream bais = new ByteArrayInputStream(dp.getData());
-					DataInputStream dp_dis = new DataInputStream(bais);
+					//Starts over with the snapshots of a new server
+					if(redirected){
+						redirected = false;
+						receiver = new SnapshotReceiver();
+						staleSource = source;
+						ackPacket.setSocketAddress(new InetSocketAddress(Constants.SERVER_IP, serverPort));
+					}
+					
+					if(dp.getSocketAddress().equals(staleSource))
+						continue;
 					
-					//Reads in message data
-					byte[] ip = new byte[4];
-					dp_dis.read(ip);
-					int port = dp_dis.readInt();
-					int code = dp_dis.readInt();
-					int x = dp_dis.readInt();
-					int y = dp_dis.readInt();
-					int heading = dp_dis.readInt();
+					//Ignores messages of other protocol versions
+					if(!Protocol.isCurrentVersion(buffer, length))
+						continue;
 					
-					InetSocketAddress addr = new InetSocketAddress(InetAddress.getByAddress(ip), port);
+					//Shows the changes to the ships and torpedoes in view
+					if(Protocol.getCode(buffer) != Constants.SNAPSHOT)
+						continue;
 					
-					//If the code was a ship update it updates that ship's position on the display
-					if(code == Constants.UPDATE_SHIP || code == Constants.JOIN)
-						sector.updateOrAddSpaceCraft(new SpaceCraft(addr, x, y, heading));
-					//Likewise, if the code was a torpedo then it updates that torpedo's position
-					else if(code == Constants.UPDATE_TORPEDO)
-						sector.updateOrAddTorpedo(new Torpedo(addr, x, y, heading));
+					int seq = receiver.receive(buffer, length, sector);
 					
-					//Close data streams
-					bais.close();
-					dp_dis.close();
+					//Acknowledges a rebuilt snapshot
+					if(seq > 0){
+						ackBuffer.clear();
+						Protocol.putAck(ackBuffer, ownShipID, seq);
+						source = dp.getSocketAddress();
+						gamePlaySocket.send(ackPacket);
+					}
+				}
+				catch(IOException e){
+					lostConnection();
 				}
-				catch(IOException e){}
 			}
 		}
 	}
@@ -412,7 +622,8 @@ public class SpaceGameClient implements SpaceGUIInterface
 	 * RemoveThread is used to listen for remove messages sent by the
 	 * server. If a remove message is received then that indicates either
 	 * a player left, a player's ship was destroyed, or a torpedo needs to 
-	 * be removed from the display. Closed when client application is closed.
+	 * be removed from the display. A redirect message moves the client to
+	 * another server. Closed when client application is closed.
 	 */
 	class RemoveThread extends Thread{
 		public RemoveThread(){
@@ -423,33 +634,72 @@ public class SpaceGameClient implements SpaceGUIInterface
 		public void run(){
 			while(playing){
 				try{
-					//Reads in message info
-					byte[] ip = new byte[4];
-					dis.read(ip);
-					int port = dis.readInt();
+					//Reads in message frame
+					int length = dis.readInt();
 					int code = dis.readInt();
-					InetSocketAddress addr = new InetSocketAddress(InetAddress.getByAddress(ip), port);	
 					
-					//Removes spacecraft if it's a ship
-					if(code == Constants.REMOVE_SHIP || code == Constants.EXIT){
-						sector.removeSpaceCraft(new SpaceCraft(addr));
+					//Follows ownShip to another server
+					if(code == Constants.REDIRECT){
+						redirect(dis.readInt(), dis.readInt(), dis.readInt(), dis.readInt());
+						continue;
 					}
-					//Removes torpedo if it's a torpedo
-					else if(code == Constants.REMOVE_TORPEDO){
-						sector.removeTorpedo(new Torpedo(addr));
+					
+					//Skips messages this thread does not handle
+					if(code != Constants.REMOVE_BATCH){
+						dis.skipBytes(length - 4);
+						continue;
+					}
+					
+					//Reads every removal in the batch
+					int count = dis.readInt();
+					
+					for(int i = 0; i < count; i++){
+						int kind = dis.readByte();
+						int id = dis.readUnsignedShort();
+						
+						//Removes spacecraft if it's a ship
+						if(kind == Constants.REMOVE_SHIP){
+							sector.removeSpaceCraft(new SpaceCraft(id));
+						}
+						//Removes torpedo if it's a torpedo
+						else if(kind == Constants.REMOVE_TORPEDO){
+							sector.removeTorpedo(new Torpedo(id));
+						}
 					}
 				}
-				catch(IOException e){}
+				catch(IOException e){
+					//Includes the server closing the connection
+					lostConnection();
+				}
 			}
 		}
 	}
 	
 	/*
-	 * Starts the space game. Driver for the application.
+	 * Starts the space game. Driver for the application. Passing 
+	 * --room=N joins room N of the server instead of room 0. Passing 
+	 * --port=N joins the server on port N, such as another node of a 
+	 * cluster.
 	 */
 	public static void main(String[] args) 
 	{	
-		new SpaceGameClient();
+		int room = 0;
+		int port = Constants.SERVER_PORT;
+		
+		for ( String arg : args ) {
+			
+			if ( arg.startsWith( "--room=" ) ) {
+				room = Integer.parseInt( arg.substring( arg.indexOf( '=' ) + 1 ) );
+			}
+			else if ( arg.startsWith( "--port=" ) ) {
+				port = Integer.parseInt( arg.substring( arg.indexOf( '=' ) + 1 ) );
+			}
+			else {
+				System.err.println( "Unknown option: " + arg );
+			}
+		}
+		
+		new SpaceGameClient( room, port );
 				
 	} // end main
 	
@@ -0,0 +1,773 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import spaceWar.Constants;
+import spaceWar.Protocol;
+import spaceWar.SnapshotReceiver;
+
+/**
+ * Relay that lets spectators watch a room of a server without adding to
+ * what the server sends. The relay registers with the server like a
+ * client that never joins, which the server sends everything in the
+ * room. It rebuilds the snapshots it is sent and sends each of its own
+ * viewers the changes to them, the same way the server sends its
+ * clients, so however many watch the server sends one stream.
+ *
+ * Viewers are ordinary clients started with the port of the relay. A
+ * relay can itself be the viewer of another relay, so relays can be
+ * chained into a tree.
+ *
+ * Viewers only watch. Their ships and torpedoes are not passed on. Every
+ * viewer is given the session ID the relay has, which has no ship, so no
+ * ship of the room is taken for a viewer's own. Acknowledgements of
+ * viewers are told apart by the address they come from.
+ */
+public class SpaceGameRelay
+{
+	/**
+	 * Port a relay listens on unless it is given another one
+	 */
+	static final int DEFAULT_PORT = Constants.SERVER_PORT + 1000;
+
+	/**
+	 * Time between resends of snapshots that viewers have not
+	 * acknowledged while nothing new arrives
+	 */
+	static final int RESEND_MILLIS = 50;
+
+	/**
+	 * Frames held for a viewer and how long its queue may stay full 
+	 * before the viewer is disconnected
+	 */
+	static final int VIEWER_QUEUE = 16;
+	static final long STALL_MILLIS = 2000;
+
+	// Server or relay the snapshots are taken from
+	protected InetSocketAddress upstream;
+
+	// Room watched
+	protected int room;
+
+	// Session ID of the relay upstream, which is also given to every viewer
+	protected int sessionID;
+
+	// Frame holding the session ID and the obstacles of the room, sent to
+	// every viewer that registers
+	protected ByteBuffer obstaclesFrame;
+
+	// Connection used to register upstream. Kept open for the life of the
+	// relay and read so the upstream never finds it stalled.
+	protected Socket upstreamSocket;
+	protected DataInputStream upstreamInput;
+
+	// Socket the snapshots of upstream arrive on and are acknowledged from
+	protected DatagramSocket upstreamDatagrams;
+
+	// Socket the snapshots are sent to viewers from and their
+	// acknowledgements arrive on
+	protected DatagramSocket viewerDatagrams;
+
+	// Accepts viewers and reads their requests
+	protected ServerSocketChannel viewerChannel;
+	protected Selector selector;
+
+	// Registered viewers. Never modified once published.
+	protected volatile ClientSocketConnection viewers[] = new ClientSocketConnection[0];
+
+	// Registered viewers by the address of their DatagramSocket
+	protected HashMap<InetSocketAddress, ClientSocketConnection> byAddress
+		= new HashMap<InetSocketAddress, ClientSocketConnection>();
+
+	// Makes the snapshots sent to viewers. Only used by the thread
+	// receiving snapshots from upstream.
+	protected SnapshotBroadcaster broadcaster = new SnapshotBroadcaster( null );
+
+	// Setting to false stops every thread of the relay
+	protected volatile boolean playing = true;
+
+
+	/**
+	 * Registers with the upstream server or relay and starts taking
+	 * viewers.
+	 *
+	 * @param upstream address of the server or relay to watch
+	 * @param room room to watch
+	 * @param port port to take viewers on
+	 * @throws IOException if upstream cannot be registered with or the
+	 * port cannot be listened on
+	 */
+	public SpaceGameRelay( InetSocketAddress upstream, int room, int port ) throws IOException
+	{
+		this.upstream = upstream;
+		this.room = room;
+
+		upstreamDatagrams = new DatagramSocket();
+		upstreamDatagrams.setSoTimeout( RESEND_MILLIS );
+
+		viewerDatagrams = new DatagramSocket( port );
+
+		selector = Selector.open();
+		viewerChannel = ServerSocketChannel.open();
+		viewerChannel.socket().bind( new InetSocketAddress( port ) );
+		viewerChannel.configureBlocking( false );
+		viewerChannel.register( selector, SelectionKey.OP_ACCEPT );
+
+		register();
+
+		System.out.println("Relaying room " + room + " of " + upstream + " on port " + port +
+				" as session " + sessionID + ".");
+
+		new SnapshotThread().start();
+		new UpstreamThread().start();
+		new ViewerThread().start();
+		new AckThread().start();
+
+	} // end SpaceGameRelay constructor
+
+
+	/**
+	 * Registers upstream as a client that never joins and keeps the
+	 * session ID and obstacles it is sent.
+	 *
+	 * @throws IOException if upstream refuses the relay
+	 */
+	protected void register() throws IOException
+	{
+		upstreamSocket = new Socket( upstream.getAddress(), upstream.getPort() );
+		upstreamSocket.setTcpNoDelay( true );
+		upstreamInput = new DataInputStream( new BufferedInputStream( upstreamSocket.getInputStream() ) );
+
+		// Registers like a new player, claiming no ship
+		ByteBuffer frame = ByteBuffer.allocate( Protocol.REGISTER_SIZE );
+		Protocol.putRegister( frame, upstreamDatagrams.getLocalPort(), room, 0, 0 );
+		upstreamSocket.getOutputStream().write( frame.array() );
+
+		// Upstream closes the connection if it does not speak this version
+		// or does not have the room
+		upstreamInput.readInt();
+
+		if ( upstreamInput.readInt() != Constants.OBSTACLES ) {
+			throw new IOException( "Expected obstacles" );
+		}
+
+		sessionID = upstreamInput.readInt();
+		int count = upstreamInput.readInt();
+
+		// Pass the obstacles on unchanged
+		obstaclesFrame = ByteBuffer.allocate( 16 + 8 * count );
+		obstaclesFrame.putInt( 12 + 8 * count );
+		obstaclesFrame.putInt( Constants.OBSTACLES );
+		obstaclesFrame.putInt( sessionID );
+		obstaclesFrame.putInt( count );
+
+		for ( int i = 0; i < 2 * count; i++ ) {
+
+			obstaclesFrame.putInt( upstreamInput.readInt() );
+		}
+		obstaclesFrame.flip();
+
+	} // end register
+
+
+	/**
+	 * Adds a viewer and publishes the new array.
+	 *
+	 * @param viewer connection of the registering viewer
+	 */
+	protected synchronized void addViewer( ClientSocketConnection viewer )
+	{
+		ClientSocketConnection current[] = viewers;
+		ClientSocketConnection updated[] = new ClientSocketConnection[ current.length + 1 ];
+
+		System.arraycopy( current, 0, updated, 0, current.length );
+		updated[ current.length ] = viewer;
+
+		viewers = updated;
+		byAddress.put( viewer.clientDatagramAddress, viewer );
+
+	} // end addViewer
+
+
+	/**
+	 * Removes a viewer and publishes the new array. Nothing is done if
+	 * the viewer is not registered.
+	 *
+	 * @param viewer connection of the departing viewer
+	 */
+	protected synchronized void removeViewer( ClientSocketConnection viewer )
+	{
+		ClientSocketConnection current[] = viewers;
+
+		for ( int i = 0; i < current.length; i++ ) {
+
+			if ( current[i] == viewer ) {
+
+				ClientSocketConnection updated[] = new ClientSocketConnection[ current.length - 1 ];
+
+				System.arraycopy( current, 0, updated, 0, i );
+				System.arraycopy( current, i + 1, updated, i, current.length - i - 1 );
+
+				viewers = updated;
+				byAddress.remove( viewer.clientDatagramAddress );
+				return;
+			}
+		}
+
+	} // end removeViewer
+
+
+	/**
+	 * Finds a viewer by the address of its DatagramSocket.
+	 *
+	 * @param address address an acknowledgement came from
+	 * @return viewer or null if none has the address
+	 */
+	protected synchronized ClientSocketConnection getViewer( InetSocketAddress address )
+	{
+		return byAddress.get( address );
+
+	} // end getViewer
+
+
+	/**
+	 * Stops the relay and closes all sockets. Viewers find their
+	 * connections closed.
+	 */
+	public void close()
+	{
+		playing = false;
+
+		upstreamDatagrams.close();
+		viewerDatagrams.close();
+
+		try {
+			upstreamSocket.close();
+		} catch (IOException e) {
+			// Already unusable
+		}
+
+		selector.wakeup();
+
+	} // end close
+
+
+	/**
+	 * SnapshotThread
+	 *
+	 * Receives the snapshots sent from upstream, acknowledges them and
+	 * sends every viewer the changes to the newest. While nothing new
+	 * arrives viewers are sent their unacknowledged changes again, the
+	 * same as the server does each tick.
+	 */
+	class SnapshotThread extends Thread
+	{
+		public void run()
+		{
+			ByteBuffer buffer = ByteBuffer.allocate( Constants.MAX_DATAGRAM_SIZE );
+			DatagramPacket packet = new DatagramPacket( buffer.array(), Constants.MAX_DATAGRAM_SIZE );
+
+			ByteBuffer ackBuffer = ByteBuffer.allocate( Protocol.ACK_SIZE );
+			DatagramPacket ackPacket = new DatagramPacket( ackBuffer.array(), Protocol.ACK_SIZE, upstream );
+
+			SnapshotReceiver receiver = new SnapshotReceiver();
+
+			while ( playing ) {
+
+				try {
+
+					int relayedSeq = receiver.shown().seq;
+
+					try {
+
+						packet.setLength( Constants.MAX_DATAGRAM_SIZE );
+						upstreamDatagrams.receive( packet );
+						int length = packet.getLength();
+
+						if ( Protocol.isCurrentVersion( buffer, length )
+								&& Protocol.getCode( buffer ) == Constants.SNAPSHOT ) {
+
+							int seq = receiver.receive( buffer, length, null );
+
+							if ( seq > 0 ) {
+
+								ackBuffer.clear();
+								Protocol.putAck( ackBuffer, sessionID, seq );
+								upstreamDatagrams.send( ackPacket );
+							}
+						}
+
+						// Wait for the rest of the fragments
+						if ( receiver.shown().seq == relayedSeq ) {
+							continue;
+						}
+
+					} catch (SocketTimeoutException e) {
+
+						// Nothing new. Resend.
+					}
+
+					broadcaster.relay( receiver.shown(), viewers, viewerDatagrams );
+
+				} catch (IOException e) {
+
+					if ( playing ) {
+						System.err.println("Error receiving snapshot.");
+					}
+				}
+			}
+
+		} // end run
+
+	} // end SnapshotThread class
+
+
+	/**
+	 * UpstreamThread
+	 *
+	 * Reads and discards the frames sent to the relay over its connection
+	 * upstream. Removals are also carried by the snapshots. Stops the
+	 * relay when upstream goes away.
+	 */
+	class UpstreamThread extends Thread
+	{
+		public void run()
+		{
+			try {
+
+				while ( playing ) {
+
+					int length = upstreamInput.readInt();
+					upstreamInput.skipBytes( length );
+				}
+
+			} catch (IOException e) {
+
+				if ( playing ) {
+					System.out.println("Lost connection to " + upstream + ". Stopping.");
+				}
+			}
+
+			close();
+
+		} // end run
+
+	} // end UpstreamThread class
+
+
+	/**
+	 * ViewerThread
+	 *
+	 * Accepts viewers and reads their requests with a selector. A viewer
+	 * registers with the frame a client sends a server and is answered
+	 * with the session ID of the relay and the obstacles of the room,
+	 * which are written when the connection can take them. The viewer 
+	 * leaves when it exits or closes its connection. Other requests are
+	 * ignored.
+	 */
+	class ViewerThread extends Thread
+	{
+		public void run()
+		{
+			while ( playing ) {
+
+				try {
+
+					selector.select();
+
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+					while ( keys.hasNext() ) {
+
+						SelectionKey key = keys.next();
+						keys.remove();
+
+						if ( !key.isValid() ) {
+							continue;
+						}
+
+						if ( key.isAcceptable() ) {
+
+							accept();
+							continue;
+						}
+
+						HandleViewerEvent event = (HandleViewerEvent) key.attachment();
+
+						// A malformed request drops its viewer, never the
+						// thread serving all of them
+						try {
+
+							if ( key.isReadable() ) {
+
+								event.read();
+							}
+
+							if ( key.isValid() && key.isWritable() ) {
+
+								event.write();
+							}
+
+						} catch (RuntimeException e) {
+
+							System.err.println("Error handling viewer: " + e);
+							event.leave();
+						}
+					}
+
+				} catch (IOException e) {
+
+					System.err.println("Error communicating with a viewer.");
+				}
+			}
+
+			// Closing the selector does not close the channels
+			for ( SelectionKey key : selector.keys() ) {
+
+				try {
+					key.channel().close();
+				} catch (IOException e) {
+					// Already unusable
+				}
+			}
+
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// Already unusable
+			}
+
+		} // end run
+
+
+		/**
+		 * Accepts a waiting viewer and registers it with the selector.
+		 */
+		protected void accept() throws IOException
+		{
+			SocketChannel channel = viewerChannel.accept();
+
+			if ( channel != null ) {
+
+				channel.configureBlocking( false );
+				channel.socket().setTcpNoDelay( true );
+
+				SelectionKey key = channel.register( selector, SelectionKey.OP_READ );
+				key.attach( new HandleViewerEvent( channel, key ) );
+			}
+
+		} // end accept
+
+	} // end ViewerThread class
+
+
+	/**
+	 * Requests of one viewer, read by the ViewerThread.
+	 */
+	class HandleViewerEvent
+	{
+		// Largest frame a viewer sends
+		static final int MAX_FRAME = 32;
+
+		// Connection to the viewer
+		SocketChannel channel;
+		SelectionKey key;
+
+		// Bytes of frames read so far
+		ByteBuffer request = ByteBuffer.allocate( MAX_FRAME );
+
+		// Viewer once it has registered. Null before.
+		ClientSocketConnection viewer;
+
+		HandleViewerEvent( SocketChannel channel, SelectionKey key )
+		{
+			this.channel = channel;
+			this.key = key;
+
+		} // end HandleViewerEvent constructor
+
+
+		/**
+		 * Reads what the viewer has sent and handles each complete frame.
+		 */
+		void read() throws IOException
+		{
+			int read;
+
+			try {
+				read = channel.read( request );
+			} catch (IOException e) {
+				read = -1;
+			}
+
+			if ( read < 0 ) {
+
+				leave();
+				return;
+			}
+
+			request.flip();
+
+			while ( request.remaining() >= 4 ) {
+
+				int length = request.getInt( request.position() );
+
+				if ( length < 4 || length > MAX_FRAME - 4 ) {
+
+					leave();
+					return;
+				}
+
+				if ( request.remaining() < 4 + length ) {
+					break;
+				}
+
+				// Fields cannot be read past the end of the frame
+				int end = request.position() + 4 + length;
+				int limit = request.limit();
+				request.limit( end );
+				request.getInt();
+				int code = request.getInt();
+
+				if ( code == Constants.REGISTER && viewer == null ) {
+
+					// Version and port must follow the code
+					if ( length < 12 ) {
+
+						leave();
+						return;
+					}
+
+					if ( !register( length ) ) {
+						return;
+					}
+				}
+				else if ( code == Constants.EXIT ) {
+
+					leave();
+					return;
+				}
+
+				request.limit( limit );
+				request.position( end );
+			}
+
+			request.compact();
+
+		} // end read
+
+
+		/**
+		 * Registers a viewer watching the room of the relay and sends it the
+		 * session ID and obstacles. Viewers asking for another room or using
+		 * another version of the protocol are turned away.
+		 *
+		 * @param length number of bytes in the frame following its length
+		 * @return false if the viewer was turned away
+		 */
+		boolean register( int length ) throws IOException
+		{
+			int version = request.getInt();
+			int port = request.getInt();
+			int number = ( length >= 16 ) ? request.getInt() : 0;
+
+			if ( version != Protocol.VERSION || number != room ) {
+
+				System.out.println("Viewer asking for room " + number + " using protocol version " +
+						version + " refused.");
+				leave();
+				return false;
+			}
+
+			InetSocketAddress address = new InetSocketAddress( channel.socket().getInetAddress(), port );
+
+			viewer = new ClientSocketConnection( channel, address, sessionID, key, VIEWER_QUEUE,
+					ClientSocketConnection.OverflowPolicy.DISCONNECT, STALL_MILLIS );
+			addViewer( viewer );
+
+			System.out.println("New Viewer; " + address );
+
+			// Whatever the connection does not take at once is written
+			// when it becomes writable
+			viewer.send( obstaclesFrame );
+			write();
+
+			return true;
+
+		} // end register
+
+
+		/**
+		 * Writes frames queued for the viewer. Interest in the connection
+		 * becoming writable is kept only while frames remain. A viewer 
+		 * that has stalled for too long is disconnected.
+		 */
+		void write()
+		{
+			if ( viewer == null ) {
+				return;
+			}
+
+			try {
+
+				if ( viewer.isDisconnectRequested() ) {
+
+					System.out.println("Viewer stopped reading; " + viewer.clientDatagramAddress );
+					leave();
+					return;
+				}
+
+				boolean empty = viewer.flush();
+
+				if ( key.isValid() ) {
+
+					key.interestOps( empty ? SelectionKey.OP_READ
+							: SelectionKey.OP_READ | SelectionKey.OP_WRITE );
+				}
+
+			} catch (IOException e) {
+
+				leave();
+			}
+
+		} // end write
+
+
+		/**
+		 * Removes the viewer and closes its connection.
+		 */
+		void leave()
+		{
+			if ( viewer != null ) {
+
+				removeViewer( viewer );
+				System.out.println("Departing Viewer; " + viewer.clientDatagramAddress );
+			}
+
+			key.cancel();
+
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Already unusable
+			}
+
+		} // end leave
+
+	} // end HandleViewerEvent class
+
+
+	/**
+	 * AckThread
+	 *
+	 * Receives the acknowledgements of the snapshots sent to viewers.
+	 * Ship updates of viewers are dropped.
+	 */
+	class AckThread extends Thread
+	{
+		public void run()
+		{
+			ByteBuffer buffer = ByteBuffer.allocate( Protocol.SHIP_UPDATE_SIZE );
+			DatagramPacket packet = new DatagramPacket( buffer.array(), Protocol.SHIP_UPDATE_SIZE );
+
+			while ( playing ) {
+
+				try {
+
+					packet.setLength( Protocol.SHIP_UPDATE_SIZE );
+					viewerDatagrams.receive( packet );
+
+					if ( packet.getLength() != Protocol.ACK_SIZE
+							|| !Protocol.isCurrentVersion( buffer, packet.getLength() )
+							|| Protocol.getCode( buffer ) != Constants.ACK ) {
+
+						continue;
+					}
+
+					ClientSocketConnection viewer = getViewer( (InetSocketAddress) packet.getSocketAddress() );
+
+					if ( viewer != null ) {
+						viewer.acknowledge( Protocol.getAckSeq( buffer ) );
+					}
+
+				} catch (IOException e) {
+
+					if ( playing ) {
+						System.err.println("Error receiving acknowledgement.");
+					}
+				}
+			}
+
+		} // end run
+
+	} // end AckThread class
+
+
+	/**
+	 * Starts a relay. Passing --upstream=HOST:PORT watches the server or
+	 * relay at that address instead of the server. Passing --room=N
+	 * watches room N instead of room 0. Passing --port=N takes viewers on
+	 * port N instead of DEFAULT_PORT.
+	 *
+	 * @param args
+	 */
+	public static void main( String[] args )
+	{
+		InetAddress host = Constants.SERVER_IP;
+		int upstreamPort = Constants.SERVER_PORT;
+		int room = 0;
+		int port = DEFAULT_PORT;
+
+		try {
+
+			for ( String arg : args ) {
+
+				String value = arg.substring( arg.indexOf( '=' ) + 1 );
+
+				if ( arg.startsWith( "--upstream=" ) ) {
+
+					int colon = value.lastIndexOf( ':' );
+					host = InetAddress.getByName( value.substring( 0, colon ) );
+					upstreamPort = Integer.parseInt( value.substring( colon + 1 ) );
+				}
+				else if ( arg.startsWith( "--room=" ) ) {
+					room = Integer.parseInt( value );
+				}
+				else if ( arg.startsWith( "--port=" ) ) {
+					port = Integer.parseInt( value );
+				}
+				else {
+					System.err.println( "Unknown option: " + arg );
+				}
+			}
+
+			new SpaceGameRelay( new InetSocketAddress( host, upstreamPort ), room, port );
+
+		} catch (IOException e) {
+
+			System.err.println( "Could not start relay: " + e.getMessage() );
+			System.exit( 1 );
+
+		} catch (RuntimeException e) {
+
+			System.err.println( "Bad option. Use --upstream=HOST:PORT --room=N --port=N" );
+			System.exit( 1 );
+		}
+
+	} // end main
+
+
+} // end SpaceGameRelay class
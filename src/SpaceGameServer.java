@@ -1,57 +1,5 @@
-import java.awt.Point;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
-import java.util.ArrayList;
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.Vector;
-
 import spaceWar.*;
 
-/**
- * Helper class to keep track of client TCP Socket connections and
- * an associate output stream. Maintaining a collection of these
- * objects removes the requirement to have a continuous running
- * thread for each client. After a client has registered only
- * remove information will be set using this Socket by the 
- * server. The server will not receive anything.  
- *  
- * @author bachmaer
- *
- */
-class ClientSocketConnection
-{	
-	/**
-	 * Connection to a client that is listing for remove information
-	 */
-	public Socket clientTCPConnection;
-	
-	/**
-	 * Output stream for a connected socket;
-	 */
-	public DataOutputStream dos;
-	
-	public ClientSocketConnection(Socket socket, DataOutputStream out)
-	{
-		// Save the connection and the output stream
-		this.clientTCPConnection = socket;
-		this.dos = out;
-	}
-	
-} // end ClientSocketConnection
-
-
 /**
  * @author bachmaer
  *
@@ -65,33 +13,35 @@ class ClientSocketConnection
  * The objects that the server instantiates are the arbiter of all events 
  * resulting in the destruction of a torpedo or a spacecraft. They generate 
  * messages for removal. Removal information is sent reliably via TCP. 
- * Best effort UDP update messages that are received from clients are 
- * forwarded to all other clients.
+ * Best effort UDP update messages that are received from clients update 
+ * the game, and every client is sent snapshots of the ships and torpedoes 
+ * it can see by UDP.
+ * 
+ * The server hosts a number of independent matches, each in its own Room.
+ * A client chooses its room when it registers.
+ * 
+ * Several servers can form a Cluster, each owning one sector of a larger
+ * map and handing ships and torpedoes to its neighbours as they cross.
  *   
  */
 public class SpaceGameServer 
 {
-	// Random number generator for obstacle positions
-	Random rand = new Random();
-
-	// Contains all IP addresses and port numbers of the DatagramSockets
-	// used by the clients. UDP segments are forwarded using the information
-	// in this data member.
-	protected ArrayList<InetSocketAddress> clientDatagramSocketAddresses 
- 		= new  ArrayList<InetSocketAddress>();
+	// Contains the TCP connection and the IP address and port number of 
+	// the DatagramSocket of every client in every room, and hands out the
+	// session IDs. Used to find the client and room of a UDP message. 
+	// Iterated without locking.
+	protected ClientRegistry clients;
 	
-	// Contains objects which holds a Socket connection and an associated
-	// DataOutputStream for each client. Data pertaining to the removal
-	// of torpedoes and ships are sent reliably to clients using this
-	// ArrayList.
-	protected ArrayList<ClientSocketConnection> playerTCPConncetions 
-		= new ArrayList<ClientSocketConnection>();
+	// Settings the server was started with
+	protected ServerOptions options;
 	
-	// Simple gui to display what the server is tracking
+	// Simple gui to display what the server is tracking. Null when the 
+	// server is running headless.
 	protected ServerGUI display;
 	
-	// Sector containing all information about the game state
-	protected Sector sector;
+	// Matches hosted by the server and the workers that advance them in
+	// fixed ticks
+	protected RoomManager rooms;
 	
 	// Server that reliably handles game information
 	ReliableServer reliableServer = null;
@@ -99,9 +49,8 @@ public class SpaceGameServer
 	// Best effort server for handling game information
 	BestEffortServer bestEffortServer = null;
 	
-	// Periodically updates torpedos within the sector and 
-	// sends the information to all clients
-	TorpdedoUpdater torpdedoUpdater = null;
+	// Place of the server in a cluster. Null when it is not in one.
+	protected Cluster cluster;
 		
 	/**
 	 * Server constructor. Create server objects that will
@@ -111,22 +60,50 @@ public class SpaceGameServer
 	 */
 	public SpaceGameServer() 
 	{
-		// Create sector to hold all game information
-		sector = new Sector();
+		this( new ServerOptions() );
+		
+	} // end SpaceGameServer constructor
+	
+	/**
+	 * Server constructor. Create server objects that will
+	 * track and update game information. Each of the server ojbects
+	 * will constitutes a separate thread of execution. Create the rooms,
+	 * each with its own obstacles. Create and start GUI showing the first
+	 * room unless the server is headless. A headless server does not load
+	 * any AWT classes.
+	 * 
+	 * @param options settings for the server
+	 */
+	public SpaceGameServer( ServerOptions options ) 
+	{
+		this.options = options;
+		
+		// The servers of a cluster each hand out their own share of the
+		// session IDs
+		clients = new ClientRegistry( options.node + 1, options.nodes() );
 		
-		// Create the GUI that will display the sector
-		display = new ServerGUI( sector );
+		// Create the rooms that hold all game information
+		rooms = new RoomManager( this, options.rooms, options.workers, options.tickMillis );
 		
-		// Create and position the obstacles that will be shared by all
-		// the clients in the game
-		createObstacles();
+		// Create the GUI that will display the first room
+		if ( !options.headless ) {
+			
+			rooms.get( 0 ).displayed = true;
+			display = new ServerGUI( rooms.get( 0 ).sector );
+		}
 	
 		// Start the TCP and UDP servers
 		reliableServer = new ReliableServer( this );
 		bestEffortServer = new BestEffortServer( this );
 		
-		// Start the server that sends out updates on torpedoes in the sector
-		torpdedoUpdater = new TorpdedoUpdater( this );
+		// Connect to the neighbouring servers
+		if ( options.nodes() > 1 ) {
+			
+			cluster = new Cluster( this, options.columns, options.rows, options.node );
+		}
+		
+		// Start advancing the game of every room
+		rooms.start();
 		
 	} // end SpaceGameServer constructor
 	
@@ -139,130 +116,24 @@ public class SpaceGameServer
 		// Stop each of the servers
 		reliableServer.close();
 		bestEffortServer.close();
-		torpdedoUpdater.close();
-
-	} // end close 
-	
-	
-	/**
-	 * Create a number of obstacles as determined by a value held in 
-	 * Constants.NUMBER_OF_OBSTACLES. Obstacles are in random positions
-	 * and are shared by all clients.
-	 */
-	protected void createObstacles() 
-	{
-		for(int i = 0 ; i < Constants.NUMBER_OF_OBSTACLES ; i++){
-			
-			sector.addObstacle( new Obstacle( rand.nextInt(Constants.MAX_SECTOR_X), 
-											  rand.nextInt(Constants.MAX_SECTOR_Y) ) );	
-		}
-
-	} // end createObstacles
-
-	
-	/**
-	 * Sends remove information for a particular SpaceCraft or Torpedo to all clients.
-	 * Each client maintains a TCP Socket with which it only listens for this 
-	 * remove information.
-	 * 
-	 * @param sc ship or torpedo to be removed
-	 */
-	synchronized protected void sendRemove( SpaceCraft sc ) {
+		rooms.close();
 		
-		// Go through all the players in the game
-		for(int i = 0; i < playerTCPConncetions.size(); i++ ) {
-
-			// Get the Socket and DataOutputStream for a particular
-			// player
-			ClientSocketConnection isa = playerTCPConncetions.get(i);
-			DataOutputStream dos = isa.dos;
-
-			try {
-				// Write out identifying information for the 
-				// entity to be removed.
-				dos.write( sc.ID.getAddress().getAddress());
-				dos.writeInt( sc.ID.getPort());
-				
-				// Indicate whether the entity to be removed
-				// is a torpedo or a spacecraft
-				if( sc instanceof Torpedo) {
-					
-					dos.writeInt( Constants.REMOVE_TORPEDO );
-				}
-				else {
-					
-					dos.writeInt( Constants.REMOVE_SHIP );
-				}
-	
-			} catch (IOException e) {
-				
-				// The Socket connection has been lost. Most likely the 
-				// client has left the game. Remove the socket from the
-				// list of connections. Yes, this is sloppy. :(
-				playerTCPConncetions.remove(isa);
-			}
+		if ( cluster != null ) {
+			cluster.close();
 		}
 
-	} // end sendRemove
-
-	
-	/**
-	 * Sends a datagram packet to all clients except one as 
-	 * specified by an input argument.
-	 * 
-	 * @param fwdPack packet to send
-	 * @param notSendTo address to skip
-	 * @param dgSock socket to use to send the message
-	 */
-	synchronized public void selectiveForward(DatagramPacket fwdPack, InetSocketAddress notSendTo, DatagramSocket dgSock )
-	{
-		for(InetSocketAddress isa : clientDatagramSocketAddresses ) {
-						
-			if( !isa.equals(notSendTo)) {
-				
-				fwdPack.setSocketAddress( isa );
-				try {
-					dgSock.send( fwdPack );
-
-				} catch (IOException e) {
-					System.err.println("Error performing selective forward.");
-				}
-			}
-		}
-	} // end selectiveForward
+	} // end close 
 	
 	
 	/**
-	 * Sends a datagram packet to all clients.
-	 * 
-	 * @param fwdPack packet to send
-	 * @param dgSock socket to use to send the message
-	 */
-	synchronized public void allForward(DatagramPacket fwdPack, DatagramSocket dgSock  )
-	{
-		for(InetSocketAddress isa : clientDatagramSocketAddresses ) {
-				
-			fwdPack.setSocketAddress( isa );
-			
-			try {
-				dgSock.send( fwdPack );
-			} catch (IOException e) {
-				System.err.println("Error forward message to all clients.");
-			}
-		}
-		
-	} // end allForward
-	
-
-
-	/**
-	 * Driver for starting the server.
+	 * Driver for starting the server. Passing --headless starts the 
+	 * server without a display. See ServerOptions for other settings.
 	 * 
 	 * @param args
 	 */
 	public static void main(String[] args) 
 	{
-		new SpaceGameServer();
+		new SpaceGameServer( ServerOptions.parse( args ) );
 		
 	} // end main
 	
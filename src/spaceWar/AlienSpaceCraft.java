@@ -3,7 +3,6 @@ package spaceWar;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 
 
@@ -18,12 +17,12 @@ public class AlienSpaceCraft extends SpaceCraft
 	/**
 	 * Creates an AlienSpaceCraft with the values of the input parameters
 	 * 
-	 * @param ID IP address and port associated with the ship
+	 * @param ID session ID associated with the ship
 	 * @param x position of the ship
 	 * @param y position of the ship
 	 * @param heading of the ship
 	 */
-	public AlienSpaceCraft( InetSocketAddress ID, int x, int y, int heading )
+	public AlienSpaceCraft( int ID, int x, int y, int heading )
 	{
 		super( ID, x, y, heading);
 		
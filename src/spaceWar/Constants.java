@@ -57,6 +57,38 @@ public class Constants
 	public static final int SOUTH_WEST = 6;
 	public static final int WEST = 7;
 	public static final int NORTH_WEST = 8;
+	
+	// Change in x and y for one pixel of movement along each heading, 
+	// indexed by heading. Index 0 is not a heading and does not move.
+	// Shared by all movement and obstacle probes through dx and dy.
+	private static final int DX[] = { 0, 0, 1, 1, 1, 0, -1, -1, -1 };
+	private static final int DY[] = { 0, -1, -1, 0, 1, 1, 1, 0, -1 };
+	
+	
+	/**
+	 * Change in x for one pixel of movement along a heading.
+	 * 
+	 * @param heading heading, or 0 for no movement
+	 * @return -1, 0 or 1
+	 */
+	public static int dx( int heading ) 
+	{
+		return DX[ heading ];
+		
+	} // end dx
+	
+	
+	/**
+	 * Change in y for one pixel of movement along a heading.
+	 * 
+	 * @param heading heading, or 0 for no movement
+	 * @return -1, 0 or 1
+	 */
+	public static int dy( int heading ) 
+	{
+		return DY[ heading ];
+		
+	} // end dy
 
 	/**
 	 * Maximum horizontal dimension to be used in the game. X value of
@@ -125,4 +157,62 @@ public class Constants
 	 */
 	public static final int EXIT = 6;
 	
+	/**
+	 * Code indicating the positions of the ships and torpedoes 
+	 * are being updated in a single message, as the changes 
+	 * since a snapshot acknowledged by the client.
+	 */
+	public static final int SNAPSHOT = 7;
+	
+	/**
+	 * Code sent by the server to a registering client with the
+	 * positions of all obstacles.
+	 */
+	public static final int OBSTACLES = 8;
+	
+	/**
+	 * Code sent by the server with every ship and torpedo 
+	 * removed during one update of the game.
+	 */
+	public static final int REMOVE_BATCH = 9;
+	
+	/**
+	 * Code sent by a client to acknowledge a snapshot.
+	 */
+	public static final int ACK = 10;
+	
+	/**
+	 * Code sent by a server of a cluster when it connects to a 
+	 * neighbouring server to hand ships and torpedoes over to it. The
+	 * neighbour sends it back alone to accept the connection.
+	 */
+	public static final int PEER = 11;
+	
+	/**
+	 * Code sent by a server of a cluster to a neighbouring server with a 
+	 * ship or torpedo that has crossed into the neighbour's sector.
+	 */
+	public static final int HANDOFF = 12;
+	
+	/**
+	 * Code sent by the server to a client whose ship has crossed into 
+	 * the sector of another server of the cluster. The client registers 
+	 * with that server and keeps its session ID, claiming it with the
+	 * ticket the redirect carries.
+	 */
+	public static final int REDIRECT = 13;
+	
+	/**
+	 * Code sent by a server of a cluster when a ship that came from 
+	 * another server has left the game, towards the server that handed 
+	 * out its session ID. That server keeps the ID reserved until then.
+	 */
+	public static final int RELEASE = 14;
+	
+	/**
+	 * Largest UDP payload the server will send. Keeps datagrams within
+	 * a typical Ethernet MTU so they are not fragmented.
+	 */
+	public static final int MAX_DATAGRAM_SIZE = 1400;
+	
 } // end Constants Class
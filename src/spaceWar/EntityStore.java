@@ -0,0 +1,205 @@
+package spaceWar;
+
+import java.util.Arrays;
+
+/**
+ * Ships or torpedoes of a sector held in parallel arrays of ints rather
+ * than as objects, so loops over every entity read contiguous memory.
+ * Entity i has session ID id[i], position x[i], y[i], heading heading[i],
+ * life life[i] and was fired or flown by the ship with session ID
+ * owner[i]. Only the first count entries are used.
+ *
+ * Entities are looked up by session ID, which stays the same for the
+ * whole life of an entity. Their index does not: removing an entity
+ * moves the last one into its place. Code that removes entities while
+ * looping over them should therefore go backwards.
+ *
+ * Not synchronized. Only used by the thread owning the SectorModel.
+ */
+public class EntityStore
+{
+	/**
+	 * Number of entities held
+	 */
+	public int count = 0;
+
+	/**
+	 * Session IDs, positions, headings, lives and owners of the entities
+	 */
+	public int id[], x[], y[], heading[], life[], owner[];
+
+	// Index of each entity by session ID plus one. Zero when the ID is
+	// not held. Grows to fit the largest ID seen.
+	protected int slots[] = new int[64];
+
+
+	/**
+	 * Creates an empty store.
+	 */
+	public EntityStore()
+	{
+		id = new int[16];
+		x = new int[16];
+		y = new int[16];
+		heading = new int[16];
+		life = new int[16];
+		owner = new int[16];
+
+	} // end EntityStore constructor
+
+
+	/**
+	 * Finds the index of an entity.
+	 *
+	 * @param sessionID session ID of the entity
+	 * @return index of the entity or -1 if it is not held
+	 */
+	public int indexOf( int sessionID )
+	{
+		return ( sessionID >= 0 && sessionID < slots.length ) ? slots[sessionID] - 1 : -1;
+
+	} // end indexOf
+
+
+	/**
+	 * Checks whether an entity is held.
+	 *
+	 * @param sessionID session ID of the entity
+	 * @return true if it is held
+	 */
+	public boolean contains( int sessionID )
+	{
+		return indexOf( sessionID ) >= 0;
+
+	} // end contains
+
+
+	/**
+	 * Adds an entity that is not already held. It starts with no life used
+	 * and is owned by the ship with its own session ID.
+	 *
+	 * @param sessionID session ID of the entity
+	 * @return index of the new entity
+	 */
+	public int add( int sessionID )
+	{
+		if ( count == id.length ) {
+
+			int size = count * 2;
+
+			id = Arrays.copyOf( id, size );
+			x = Arrays.copyOf( x, size );
+			y = Arrays.copyOf( y, size );
+			heading = Arrays.copyOf( heading, size );
+			life = Arrays.copyOf( life, size );
+			owner = Arrays.copyOf( owner, size );
+		}
+
+		if ( sessionID >= slots.length ) {
+			slots = Arrays.copyOf( slots, Integer.highestOneBit( sessionID ) << 1 );
+		}
+
+		int index = count++;
+
+		id[index] = sessionID;
+		x[index] = 0;
+		y[index] = 0;
+		heading[index] = 0;
+		life[index] = 0;
+		owner[index] = sessionID;
+
+		slots[sessionID] = index + 1;
+
+		return index;
+
+	} // end add
+
+
+	/**
+	 * Sets the position and heading of an entity. Illegal values leave
+	 * the old ones unchanged, the same as the mutators of SpaceCraft.
+	 *
+	 * @param index index of the entity
+	 * @param newX new x position
+	 * @param newY new y position
+	 * @param newHeading new heading
+	 */
+	public void set( int index, int newX, int newY, int newHeading )
+	{
+		if ( newHeading > 0 && newHeading <= Constants.NORTH_WEST ) {
+			heading[index] = newHeading;
+		}
+
+		if ( newX > 0 && newX < Constants.MAX_SECTOR_X ) {
+			x[index] = newX;
+		}
+
+		if ( newY > 0 && newY < Constants.MAX_SECTOR_Y ) {
+			y[index] = newY;
+		}
+
+	} // end set
+
+
+	/**
+	 * Removes an entity in constant time by moving the last entity into
+	 * its place.
+	 *
+	 * @param index index of the entity to remove
+	 */
+	public void remove( int index )
+	{
+		int last = --count;
+
+		slots[ id[index] ] = 0;
+
+		if ( index != last ) {
+
+			id[index] = id[last];
+			x[index] = x[last];
+			y[index] = y[last];
+			heading[index] = heading[last];
+			life[index] = life[last];
+			owner[index] = owner[last];
+
+			slots[ id[index] ] = index + 1;
+		}
+
+	} // end remove
+
+
+	/**
+	 * Makes a SpaceCraft holding the state of an entity. Used to report
+	 * entities that are destroyed.
+	 *
+	 * @param index index of the entity
+	 * @return a new SpaceCraft
+	 */
+	public SpaceCraft toSpaceCraft( int index )
+	{
+		return new SpaceCraft( id[index], x[index], y[index], heading[index] );
+
+	} // end toSpaceCraft
+
+
+	/**
+	 * Makes a Torpedo holding the state of an entity, including the life
+	 * it has used and a position on the edge of the sector, which the 
+	 * SpaceCraft mutators would refuse. Used to report entities that are
+	 * destroyed.
+	 *
+	 * @param index index of the entity
+	 * @return a new Torpedo
+	 */
+	public Torpedo toTorpedo( int index )
+	{
+		Torpedo torpedo = new Torpedo( id[index], x[index], y[index], heading[index] );
+		torpedo.xPosition = x[index];
+		torpedo.yPosition = y[index];
+		torpedo.lifeCounter = life[index];
+
+		return torpedo;
+
+	} // end toTorpedo
+
+} // end EntityStore class
@@ -105,6 +105,21 @@ public class Obstacle
 	 * 
 	 */
 	public void draw( Graphics g )
+	{
+		draw( g, xPosition, yPosition );
+
+	} // end draw
+	
+	
+	/**
+	 * Renders an obstacle at a position as a yellow square. Used to draw
+	 * from a RenderFrame without an Obstacle object.
+	 * 
+	 * @param g Graphical render context
+	 * @param xPosition x position
+	 * @param yPosition y position
+	 */
+	public static void draw( Graphics g, int xPosition, int yPosition )
 	{
 		// Draw the spacecraft with the appropriate heading	
 		g.setColor( Color.yellow );
@@ -0,0 +1,112 @@
+package spaceWar;
+
+/**
+ * Bitmap of the positions in and around the sector that are blocked by
+ * an obstacle. A position is blocked when it is closer than CLEARANCE to
+ * an obstacle along both axes. The bits are set once as each obstacle is
+ * added, so checking a position is a single bit test however many
+ * obstacles there are.
+ *
+ * The map reaches MARGIN past every edge of the sector, which covers
+ * every position a ship or torpedo can probe. It is not synchronized.
+ * It is used by the thread owning the SectorModel that holds it. Copies
+ * published with a RenderFrame are only read.
+ */
+public class OccupancyMap
+{
+	/**
+	 * Positions closer than this to an obstacle along both axes are blocked
+	 */
+	public static final int CLEARANCE = 10;
+
+	/**
+	 * Distance the map reaches past each edge of the sector
+	 */
+	public static final int MARGIN = Constants.INCREMENT;
+
+	// Number of positions across and down the map
+	protected final int width = Constants.MAX_SECTOR_X + 2 * MARGIN + 1;
+	protected final int height = Constants.MAX_SECTOR_Y + 2 * MARGIN + 1;
+
+	// Number of longs holding one row of the map
+	protected final int rowWords = ( width + 63 ) >> 6;
+
+	// One bit for each position. Row major order.
+	protected long bits[] = new long[ rowWords * height ];
+
+
+	/**
+	 * Copies the map. The copy is not changed by obstacles added to the
+	 * map afterwards, so it can be handed to other threads to read.
+	 *
+	 * @return copy of the map
+	 */
+	public OccupancyMap copy()
+	{
+		OccupancyMap copy = new OccupancyMap();
+		System.arraycopy( bits, 0, copy.bits, 0, bits.length );
+
+		return copy;
+
+	} // end copy
+
+
+	/**
+	 * Checks whether a position is covered by the map.
+	 *
+	 * @param x horizontal position
+	 * @param y vertical position
+	 * @return true if the map holds the position
+	 */
+	public boolean covers( int x, int y )
+	{
+		return x >= -MARGIN && x <= Constants.MAX_SECTOR_X + MARGIN
+			&& y >= -MARGIN && y <= Constants.MAX_SECTOR_Y + MARGIN;
+
+	} // end covers
+
+
+	/**
+	 * Checks whether a position is blocked by an obstacle. The position
+	 * must be covered by the map.
+	 *
+	 * @param x horizontal position
+	 * @param y vertical position
+	 * @return true if the position is blocked
+	 */
+	public boolean isBlocked( int x, int y )
+	{
+		int column = x + MARGIN;
+
+		return ( bits[ ( y + MARGIN ) * rowWords + ( column >> 6 ) ] & ( 1L << column ) ) != 0;
+
+	} // end isBlocked
+
+
+	/**
+	 * Marks the positions around an obstacle as blocked. Positions off
+	 * the map are ignored.
+	 *
+	 * @param x horizontal position of the obstacle
+	 * @param y vertical position of the obstacle
+	 */
+	public void addObstacle( int x, int y )
+	{
+		int firstColumn = Math.max( x - CLEARANCE + 1 + MARGIN, 0 );
+		int lastColumn = Math.min( x + CLEARANCE - 1 + MARGIN, width - 1 );
+		int firstRow = Math.max( y - CLEARANCE + 1 + MARGIN, 0 );
+		int lastRow = Math.min( y + CLEARANCE - 1 + MARGIN, height - 1 );
+
+		for ( int row = firstRow; row <= lastRow; row++ ) {
+
+			int start = row * rowWords;
+
+			for ( int column = firstColumn; column <= lastColumn; column++ ) {
+
+				bits[ start + ( column >> 6 ) ] |= 1L << column;
+			}
+		}
+
+	} // end addObstacle
+
+} // end OccupancyMap class
@@ -1,7 +1,6 @@
 package spaceWar;
 import java.awt.Color;
 import java.awt.Graphics;
-import java.net.InetSocketAddress;
 
 
 /**
@@ -16,10 +15,9 @@ public class OwnSpaceCraft extends SpaceCraft
 	/**
 	 * Creates OwnSpaceCraft with random position and heading.
 	 *
-	 * @param owner IP address and port number to be used to identify  
-	 * the ship.
+	 * @param owner session ID to be used to identify the ship.
 	 */
-	public OwnSpaceCraft( InetSocketAddress owner )
+	public OwnSpaceCraft( int owner )
 	{
 		super( owner );
 
@@ -0,0 +1,290 @@
+package spaceWar;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes the compact game play messages shared by the
+ * servers and the client. Every datagram starts with a one byte protocol
+ * version and a one byte code. Ships and torpedoes are sent as six byte
+ * records holding the 16 bit session ID of the entity, its x position in
+ * 16 bits and its y position in the upper 13 bits of a short whose lower
+ * 3 bits hold the heading. A ship update is the header followed by one
+ * record. An acknowledgement of a snapshot is the header followed by the
+ * 16 bit session ID of the client and the 32 bit sequence number of the
+ * snapshot. Snapshots are encoded by SnapshotCodec.
+ *
+ * Removals sent over the registered connection are three bytes each, the
+ * removal code followed by the 16 bit session ID. The register frame that
+ * opens the connection is written by putRegister for every kind of client.
+ *
+ * Positions must lie in the sector, so the limits below hold for any
+ * MAX_SECTOR_X and MAX_SECTOR_Y that fit in the record.
+ */
+public class Protocol
+{
+	/**
+	 * Version of the protocol. Sent first in every datagram and in the
+	 * register message so mismatched peers can be rejected.
+	 */
+	public static final int VERSION = 3;
+
+	/**
+	 * Size in bytes of the version and code that start every datagram
+	 */
+	public static final int HEADER_SIZE = 2;
+
+	/**
+	 * Size in bytes of the state of one ship or torpedo
+	 */
+	public static final int RECORD_SIZE = 6;
+
+	/**
+	 * Size in bytes of a join or update message for one ship
+	 */
+	public static final int SHIP_UPDATE_SIZE = HEADER_SIZE + RECORD_SIZE;
+
+	/**
+	 * Size in bytes of an acknowledgement of a snapshot
+	 */
+	public static final int ACK_SIZE = HEADER_SIZE + 6;
+
+	/**
+	 * Size in bytes of the register frame, counting its length
+	 */
+	public static final int REGISTER_SIZE = 28;
+
+	/**
+	 * Size in bytes of one removal
+	 */
+	public static final int REMOVAL_SIZE = 3;
+
+	/**
+	 * Largest session ID that fits in a record
+	 */
+	public static final int MAX_SESSION_ID = 0xFFFF;
+
+	/**
+	 * Largest x position that fits in a record
+	 */
+	public static final int MAX_X = 0xFFFF;
+
+	/**
+	 * Largest y position that fits in a record
+	 */
+	public static final int MAX_Y = 0x1FFF;
+
+
+	/**
+	 * Writes the version and a code at the position of a buffer.
+	 *
+	 * @param buffer buffer being encoded
+	 * @param code message code from Constants
+	 */
+	public static void putHeader( ByteBuffer buffer, int code )
+	{
+		buffer.put( (byte) VERSION );
+		buffer.put( (byte) code );
+
+	} // end putHeader
+
+
+	/**
+	 * Checks that a received datagram holds a header of this version of
+	 * the protocol.
+	 *
+	 * @param buffer received datagram starting at index 0
+	 * @param length number of bytes received
+	 * @return true if the datagram can be decoded
+	 */
+	public static boolean isCurrentVersion( ByteBuffer buffer, int length )
+	{
+		return length >= HEADER_SIZE && buffer.get( 0 ) == VERSION;
+
+	} // end isCurrentVersion
+
+
+	/**
+	 * Reads the code of a received datagram.
+	 *
+	 * @param buffer received datagram starting at index 0
+	 * @return message code
+	 */
+	public static int getCode( ByteBuffer buffer )
+	{
+		return buffer.get( 1 );
+
+	} // end getCode
+
+
+	/**
+	 * Writes the state of a ship or torpedo at the position of a buffer.
+	 *
+	 * @param buffer buffer being encoded
+	 * @param id session ID of the entity
+	 * @param x x position
+	 * @param y y position
+	 * @param heading heading from 1 to 8
+	 */
+	public static void putRecord( ByteBuffer buffer, int id, int x, int y, int heading )
+	{
+		buffer.putShort( (short) id );
+		buffer.putShort( (short) x );
+		buffer.putShort( (short) ( y << 3 | ( heading - 1 ) & 7 ) );
+
+	} // end putRecord
+
+
+	/**
+	 * Writes the state of a ship or torpedo at the position of a buffer.
+	 *
+	 * @param buffer buffer being encoded
+	 * @param craft entity to encode
+	 */
+	public static void putRecord( ByteBuffer buffer, SpaceCraft craft )
+	{
+		putRecord( buffer, craft.ID, craft.xPosition, craft.yPosition, craft.heading );
+
+	} // end putRecord
+
+
+	/**
+	 * Writes a join or update message for a ship at the position of a buffer.
+	 *
+	 * @param buffer buffer being encoded
+	 * @param code JOIN or UPDATE_SHIP
+	 * @param craft ship to encode
+	 */
+	public static void putShipUpdate( ByteBuffer buffer, int code, SpaceCraft craft )
+	{
+		putHeader( buffer, code );
+		putRecord( buffer, craft );
+
+	} // end putShipUpdate
+
+
+	/**
+	 * Reads the session ID of a record.
+	 *
+	 * @param buffer buffer holding the record
+	 * @param offset index of the first byte of the record
+	 * @return session ID
+	 */
+	public static int getId( ByteBuffer buffer, int offset )
+	{
+		return buffer.getShort( offset ) & 0xFFFF;
+
+	} // end getId
+
+
+	/**
+	 * Reads the x position of a record.
+	 *
+	 * @param buffer buffer holding the record
+	 * @param offset index of the first byte of the record
+	 * @return x position
+	 */
+	public static int getX( ByteBuffer buffer, int offset )
+	{
+		return buffer.getShort( offset + 2 ) & 0xFFFF;
+
+	} // end getX
+
+
+	/**
+	 * Reads the y position of a record.
+	 *
+	 * @param buffer buffer holding the record
+	 * @param offset index of the first byte of the record
+	 * @return y position
+	 */
+	public static int getY( ByteBuffer buffer, int offset )
+	{
+		return ( buffer.getShort( offset + 4 ) & 0xFFFF ) >>> 3;
+
+	} // end getY
+
+
+	/**
+	 * Reads the heading of a record.
+	 *
+	 * @param buffer buffer holding the record
+	 * @param offset index of the first byte of the record
+	 * @return heading from 1 to 8
+	 */
+	public static int getHeading( ByteBuffer buffer, int offset )
+	{
+		return ( buffer.getShort( offset + 4 ) & 7 ) + 1;
+
+	} // end getHeading
+
+
+	/**
+	 * Writes an acknowledgement of a snapshot at the position of a buffer.
+	 *
+	 * @param buffer buffer being encoded
+	 * @param id session ID of the client
+	 * @param seq sequence number of the snapshot
+	 */
+	public static void putAck( ByteBuffer buffer, int id, int seq )
+	{
+		putHeader( buffer, Constants.ACK );
+		buffer.putShort( (short) id );
+		buffer.putInt( seq );
+
+	} // end putAck
+
+
+	/**
+	 * Reads the sequence number of a received acknowledgement. The session
+	 * ID is read with getId at HEADER_SIZE.
+	 *
+	 * @param buffer received acknowledgement starting at index 0
+	 * @return sequence number of the acknowledged snapshot
+	 */
+	public static int getAckSeq( ByteBuffer buffer )
+	{
+		return buffer.getInt( HEADER_SIZE + 2 );
+
+	} // end getAckSeq
+
+
+	/**
+	 * Writes a removal at the position of a buffer.
+	 *
+	 * @param buffer buffer being encoded
+	 * @param code REMOVE_SHIP or REMOVE_TORPEDO
+	 * @param id session ID of the removed entity
+	 */
+	public static void putRemoval( ByteBuffer buffer, int code, int id )
+	{
+		buffer.put( (byte) code );
+		buffer.putShort( (short) id );
+
+	} // end putRemoval
+
+
+	/**
+	 * Writes the frame a client registers with at the position of a 
+	 * buffer. The frame is the length, the REGISTER code, the protocol
+	 * version, the port of the client's DatagramSocket, the room, the 
+	 * session ID claimed and the ticket claiming it, as ints.
+	 *
+	 * @param buffer buffer being encoded
+	 * @param port port of the client's DatagramSocket
+	 * @param room room to join
+	 * @param claimed session ID of a ship handed over, or 0 for a new one
+	 * @param ticket ticket of a ship handed over, or 0 for a new one
+	 */
+	public static void putRegister( ByteBuffer buffer, int port, int room, int claimed, int ticket )
+	{
+		buffer.putInt( REGISTER_SIZE - 4 );
+		buffer.putInt( Constants.REGISTER );
+		buffer.putInt( VERSION );
+		buffer.putInt( port );
+		buffer.putInt( room );
+		buffer.putInt( claimed );
+		buffer.putInt( ticket );
+
+	} // end putRegister
+
+} // end Protocol class
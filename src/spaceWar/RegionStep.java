@@ -0,0 +1,60 @@
+package spaceWar;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Steps the torpedoes of a range of regions of a SectorModel. A range of
+ * more than one region is split in half and both halves are stepped in
+ * parallel, so a pool steps every region of the sector at once.
+ *
+ * Each region only writes the entries of its own torpedoes and reads the
+ * ships, grid and obstacles, which are not changed while it runs. The
+ * thread owning the sector waits for every region before going on.
+ */
+class RegionStep extends RecursiveAction
+{
+	private static final long serialVersionUID = 1L;
+
+	// Sector whose torpedoes are stepped
+	protected final SectorModel sector;
+
+	// First region stepped and one past the last
+	protected final int first, last;
+
+
+	/**
+	 * Creates a step of a range of regions.
+	 *
+	 * @param sector sector holding the regions
+	 * @param first first region to step
+	 * @param last one past the last region to step
+	 */
+	RegionStep( SectorModel sector, int first, int last )
+	{
+		this.sector = sector;
+		this.first = first;
+		this.last = last;
+
+	} // end RegionStep constructor
+
+
+	/**
+	 * Steps the regions, splitting the range until each task has one.
+	 */
+	protected void compute()
+	{
+		if ( last - first > 1 ) {
+
+			int middle = ( first + last ) >>> 1;
+
+			invokeAll( new RegionStep( sector, first, middle ),
+					new RegionStep( sector, middle, last ) );
+		}
+		else {
+
+			sector.stepRegion( first );
+		}
+
+	} // end compute
+
+} // end RegionStep class
@@ -0,0 +1,128 @@
+package spaceWar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Positions of everything in a sector at one moment, copied into arrays
+ * so that it can be drawn without touching the SectorModel. A frame is
+ * never changed once made. The thread owning the model publishes a new
+ * frame after each update and the painter draws the newest one, so
+ * neither ever waits for the other.
+ */
+public class RenderFrame
+{
+	/**
+	 * Frame of an empty sector
+	 */
+	public static final RenderFrame EMPTY = new RenderFrame();
+
+	/**
+	 * Positions and headings of the ships
+	 */
+	public final int shipX[], shipY[], shipHeading[];
+
+	/**
+	 * Positions of the torpedoes
+	 */
+	public final int torpedoX[], torpedoY[];
+
+	/**
+	 * Positions of the obstacles
+	 */
+	public final int obstacleX[], obstacleY[];
+
+	// Positions blocked by the obstacles. Shared by the frames published
+	// until the obstacles change and never changed.
+	protected final OccupancyMap blocked;
+
+
+	/**
+	 * Creates an empty frame.
+	 */
+	protected RenderFrame()
+	{
+		shipX = shipY = shipHeading = new int[0];
+		torpedoX = torpedoY = new int[0];
+		obstacleX = obstacleY = new int[0];
+		blocked = new OccupancyMap();
+
+	} // end RenderFrame constructor
+
+
+	/**
+	 * Copies the positions of everything in a sector. Only called by the
+	 * thread owning the sector.
+	 *
+	 * @param ships ships of the sector
+	 * @param torpedoes torpedoes of the sector
+	 * @param obstacles obstacles of the sector
+	 * @param blocked copy of the positions blocked by the obstacles, which
+	 * is never changed
+	 */
+	RenderFrame( EntityStore ships, EntityStore torpedoes, ArrayList<Obstacle> obstacles,
+			OccupancyMap blocked )
+	{
+		this.blocked = blocked;
+
+		shipX = Arrays.copyOf( ships.x, ships.count );
+		shipY = Arrays.copyOf( ships.y, ships.count );
+		shipHeading = Arrays.copyOf( ships.heading, ships.count );
+
+		torpedoX = Arrays.copyOf( torpedoes.x, torpedoes.count );
+		torpedoY = Arrays.copyOf( torpedoes.y, torpedoes.count );
+
+		obstacleX = new int[ obstacles.size() ];
+		obstacleY = new int[ obstacles.size() ];
+
+		for ( int i = 0; i < obstacleX.length; i++ ) {
+
+			Obstacle obstacle = obstacles.get( i );
+
+			obstacleX[i] = obstacle.xPosition;
+			obstacleY[i] = obstacle.yPosition;
+		}
+
+	} // end RenderFrame constructor
+
+
+	/**
+	 * Check to see if an obstacle of the frame is in front of a position.
+	 * Answers the same as the SectorModel the frame was copied from, and
+	 * may be called by any thread.
+	 *
+	 * @param x x position
+	 * @param y y position
+	 * @param heading heading at the position
+	 * @param forward true if checking for obstacles in front of the position.
+	 * false if checking for obstacles behind.
+	 * @return true if the position is clear, false otherwise
+	 */
+	public boolean obstacleClear( int x, int y, int heading, boolean forward )
+	{
+		int direction = ( forward ) ? Constants.INCREMENT : -Constants.INCREMENT;
+
+		// Create hypothetical position
+		int xObs = x + Constants.dx( heading ) * direction;
+		int yObs = y + Constants.dy( heading ) * direction;
+
+		if ( blocked.covers( xObs, yObs ) ) {
+
+			return !blocked.isBlocked( xObs, yObs );
+		}
+
+		// Check a position off the map against all obstacles
+		for ( int i = 0; i < obstacleX.length; i++ ) {
+
+			if ( Math.abs( obstacleX[i] - xObs ) < OccupancyMap.CLEARANCE
+					&& Math.abs( obstacleY[i] - yObs ) < OccupancyMap.CLEARANCE ) {
+
+				return false;
+			}
+		}
+
+		return true;
+
+	} // end obstacleClear
+
+} // end RenderFrame class
@@ -2,19 +2,19 @@ package spaceWar;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
-import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.ConcurrentModificationException;
-import java.util.ListIterator;
 import java.util.Random;
-import java.util.Vector;
 
 /**
  *
- * Double buffered drawing canvas for displaying and storing space game state. Maintains
- * and renders all ships in the sector based on type. Maintains and renders all obstacles 
- * and all torpedoes. Provides method for updating all torpedos. Provides accessor and mutator
- * methods for adding and removing spacecraft and torpedoes. 
+ * Double buffered drawing canvas for displaying space game state. Renders all ships
+ * in the sector based on type, all obstacles and all torpedoes. The state itself 
+ * is held by a SectorModel. Provides accessor and mutator methods for adding and 
+ * removing spacecraft and torpedoes. Changes are submitted to the model as 
+ * SectorCommands, so callers never block. A sector that created its own model 
+ * owns it and applies the changes on its animation thread before each frame.
+ * Painting draws the newest RenderFrame published by the owner of the model
+ * and never touches the model itself.
  * 
  *  @author bachmaer
  */
@@ -33,18 +33,15 @@ public class Sector extends Canvas implements Runnable {
 	// delay between frames in milliseconds
 	protected int delay;
 
-	// Holds non own ship SpaceCraft in the sector
-	protected Vector<SpaceCraft> inSector = new Vector<SpaceCraft>();
-
-	// Holds torpedoes currently in the sector
-	protected Vector<Torpedo> torpedoes = new Vector<Torpedo>();	
+	// State of the game displayed by the sector
+	protected SectorModel model;
 	
-	// Holds obstacles in the sector
-	protected ArrayList<Obstacle> obstacles = new ArrayList<Obstacle>();
+	// True if the animation thread owns the model and applies its changes
+	protected boolean ownsModel;
 	
-	// IP address and port number that uniquely identifies 
+	// Session ID assigned by the server that uniquely identifies 
 	// a client to the server and other clients
-	protected  InetSocketAddress ownShipID;
+	protected int ownShipID;
 
 	// Back buffer for rendering
 	protected Image offImage = null;
@@ -65,15 +62,14 @@ public class Sector extends Canvas implements Runnable {
 	 * and background color. Creates event handlers and starts the
 	 * animation thread and torpedo update threads.
 	 * 
-	 * @param owner IP address and port number that identifies for "own ship"
+	 * @param owner session ID that identifies "own ship"
 	 */
-	public Sector( InetSocketAddress owner ) {
+	public Sector( int owner ) {
 		
 		this();
 		
-		this.ownShipID 
-			= new InetSocketAddress( owner.getAddress(),
-									 owner.getPort());
+		this.ownShipID = owner;
+		
 	} // end Sector constructor
 	
 	/**
@@ -84,6 +80,37 @@ public class Sector extends Canvas implements Runnable {
 	 */
 	public Sector() {
 		
+		this( new SectorModel(), true );
+		
+	} // end Sector constructor
+	
+	/**
+	 * Initializes the drawing canvas as a view of an existing model. 
+	 * Sets the size, frame rate, and background color. Creates event 
+	 * handlers and starts the animation thread. Display does not include 
+	 * an icon for ownship. Frame rate is set to default. The model is
+	 * owned by another thread.
+	 * 
+	 * @param model state of the game to be displayed
+	 */
+	public Sector( SectorModel model ) {
+		
+		this( model, false );
+		
+	} // end Sector constructor
+	
+	/**
+	 * Initializes the drawing canvas as a view of a model. 
+	 * 
+	 * @param model state of the game to be displayed
+	 * @param ownsModel true if the animation thread applies the changes
+	 * submitted to the model
+	 */
+	protected Sector( SectorModel model, boolean ownsModel ) {
+		
+		this.model = model;
+		this.ownsModel = ownsModel;
+		
 		this.setSize(Constants.MAX_SECTOR_X, Constants.MAX_SECTOR_Y);
 
 		this.addComponentListener(new sizeChangeListener());
@@ -105,169 +132,40 @@ public class Sector extends Canvas implements Runnable {
 	
 	
 	/**
-	 * Accessor method for the obstacles contained in the sector.
+	 * Accessor method for the model holding the state displayed by the sector.
 	 * 
-	 * @return list of the obstacles
+	 * @return model of the sector
 	 */
-	@SuppressWarnings("unchecked")
-	public ArrayList<Obstacle> getObstacles( ) {
+	public SectorModel getModel( ) {
 		
-		return  (ArrayList<Obstacle>)obstacles.clone();
+		return model;
 		
-	} // end getObstacles
+	} // end getModel
+	
 	
 	/**
-	 * Accessor method for the torpedoes contained in the sector.
+	 * Accessor method for the obstacles contained in the sector.
 	 * 
 	 * @return list of the obstacles
 	 */
-	@SuppressWarnings("unchecked")
-	public Vector<Torpedo> getTorpedoes( ) {
+	public ArrayList<Obstacle> getObstacles( ) {
 		
-		return  (Vector<Torpedo>) torpedoes.clone();
+		return model.getObstacles();
 		
-	} // end getTorpedoes
-	
-	/**
-	 * Checks for a collision between the mover spacecraft and 
-	 * all other ships in the sector. It returns a list of ships 
-	 * destroyed in a collision if one occurred. If the collision 
-	 * between two ships was head-on both the mover and 
-	 * the ship it hit are destroyed. Destroyed ships are 
-	 * removed from the display. 
-	 * 
-	 * @param mover ship to check against all other ships
-	 * 
-	 * @return ships destroyed if a collision occurred. 
-	 * null otherwise.
-	 */
-	public synchronized ArrayList<SpaceCraft> collisionCheck( SpaceCraft mover ) {
-		
-		// List of ships in collision
-		ArrayList<SpaceCraft>  destroyedShips = null;
-		
-		// Go through all the ships in the sector and compare
-		// each against mover
-		for( SpaceCraft target: inSector ) {
-
-			// Have mover and the target ship collided
-			if ( !target.equals(mover) && inCollision( target, mover)) {
-
-				// A collision has occurred. Create a list to hold the destroyed ships
-				destroyedShips = new ArrayList<SpaceCraft>();
-				
-				// Check for head-on collision.
-				if ( opposingHeading( mover , target) ) {
-
-					// Remove move and add to destroyed ship list
-					removeSpaceCraft( mover );
-					destroyedShips.add( mover );
-				}
-				
-				// Add the ship that was hit to the destroyed ship list
-				removeSpaceCraft( target );
-				destroyedShips.add( target );
-				
-				// Return the ship collided with 
-				return destroyedShips;	
-			}
-			
-		} // end for
-
-		// no  collision occurred
-		return null;
-
-	} // end collisionCheck
-
-	
-	/**
-	 * Updates the positions of all the torpedoes. If a torpedo
-	 * hits an obstacle, it is destroyed. If a torpedo hits a
-	 * spacecraft, both the ship and the torpedo are destroyed. 
-	 * Destroyed ships and torpedoes are removed from the display. 
-	 * 
-	 * @return destroyed ships and torpedoes. 
-	 * null otherwise.
-	 */
-	public synchronized ArrayList<SpaceCraft> updateTorpedoes(  ) {
-		
-		// List of ships and torpedoes in collision
-		ArrayList<SpaceCraft>  destroyedObjects = null;
-		
-		try {
-				
-			// Update each torpedo and check for collision with an obstacle
-			for ( Torpedo mover: this.torpedoes ){
-				
-				// Update torpedo position. Check for end of life
-				boolean endOfLife = mover.update();
-
-				// Remove torpedo if it hit an obstacle or its life is over
-				if ( !obstacleClear( mover, true ) || false ==  endOfLife) {
-					
-					// Create destroyed list if it has not been created yet
-					if ( destroyedObjects== null ) {
-						destroyedObjects = new ArrayList<SpaceCraft>();
-					}
-	
-					// Remove torpedo from display add to destroyed
-					removeTorpedo( mover );		
-					destroyedObjects.add( mover );
-				}
-			} // end for
-			
-			// Check each remaining torpedo against all ships in the sector.
-			for ( Torpedo mover: this.torpedoes ){
-			
-				// Go through all the ships in the sector
-				for( SpaceCraft target: inSector ) {
-		
-					// Topedoes cannot kill the shipd that fires them
-					if( !mover.ID.equals(target.ID)) {
-					
-						// Have mover and the target ship collided
-						if ( inCollision( target, mover) ) {
-							
-								if ( destroyedObjects== null ) {
-									destroyedObjects = new ArrayList<SpaceCraft>();
-								}
-		
-								// Remove torpedo and ship from display
-								removeTorpedo( mover );
-								removeSpaceCraft( target );
-								
-								// Add ship and torpedo  to destroyed
-								destroyedObjects.add( mover );
-								destroyedObjects.add( target );
-							}
-						}
-				} // end for
-			} // end for
-
-		} 
-		catch( ConcurrentModificationException e ){
-			//System.out.println("ConcurrentModificationException my");
-		}
-		
-		return destroyedObjects;
-
-	} // end updateTorpedoes
-	
-
-	
+	} // end getObstacles
 	
 	/**
 	 * Adds a new torpedo to the sector display. If the
 	 * torpedo is already in the display, it is updated
 	 * 
-	 * @param id Socket address of the torpedo
+	 * @param id session ID of the torpedo
 	 * @param x torpedo x position
 	 * @param y torpedo y position
 	 * @param heading torpedo heading
 	 */
-	public synchronized void updateOrAddTorpedo( InetSocketAddress id, int x, int y, int heading ) {
+	public void updateOrAddTorpedo( int id, int x, int y, int heading ) {
 		
-		updateOrAddTorpedo( new Torpedo( id, x, y, heading ) );
+		model.submit( new SectorCommand( Constants.UPDATE_TORPEDO, id, x, y, heading ) );
 	 
 	} // end updateOrAddTorpedo
 
@@ -278,32 +176,9 @@ public class Sector extends Canvas implements Runnable {
 	 * 
 	 * @param torp torpedo to be added or updated
 	 */
-	public synchronized void updateOrAddTorpedo(Torpedo torp) {
-		
-		Torpedo target;
+	public void updateOrAddTorpedo(Torpedo torp) {
 		
-		ListIterator<Torpedo> iter = torpedoes.listIterator();
-
-		// See if the torpedo is already in the display
-		while (iter.hasNext()) {
-
-			target = (Torpedo) iter.next();
-
-			if (torp.equals(target)) {
-
-				// Update an existing torpedo
-				target.setHeading(torp.heading);
-				target.setX(torp.xPosition);
-				target.setY(torp.yPosition);
-
-				return;
-			}
-		}
-
-		// Add the torpedo. It was not already in the sector
-		torpedoes.add( torp );
-
-		return;
+		updateOrAddTorpedo( torp.ID, torp.xPosition, torp.yPosition, torp.heading );
 
 	} // end updateOrAddTorpedo
 	
@@ -313,14 +188,14 @@ public class Sector extends Canvas implements Runnable {
 	 * its heading and/or position are updated. If the SpaceCraft 
 	 * is not found in the sector, it is added.
 	 * 
-	 * @param id Socket address of the spacecraft
+	 * @param id session ID of the spacecraft
 	 * @param x spacecraft x position
 	 * @param y spacecraft y position
 	 * @param heading spacecraft heading
 	 */
-	public synchronized void updateOrAddSpaceCraft( InetSocketAddress id, int x, int y, int heading ) {
+	public void updateOrAddSpaceCraft( int id, int x, int y, int heading ) {
 	
-		updateOrAddSpaceCraft( new SpaceCraft( id, x, y, heading ) );
+		model.submit( new SectorCommand( Constants.UPDATE_SHIP, id, x, y, heading ) );
 	
 	} // end updateOrAddSpaceCraft
 	
@@ -331,29 +206,9 @@ public class Sector extends Canvas implements Runnable {
 	 * 
 	 * @param craft to be updated or added
 	 */
-	public synchronized void updateOrAddSpaceCraft(SpaceCraft craft) {
-		SpaceCraft target;
-	
-		ListIterator<SpaceCraft> iter = inSector.listIterator();
-
-		while (iter.hasNext()) {
-
-			target = (SpaceCraft) iter.next();
-
-			if (craft.equals(target)) {
-
-				target.setHeading(craft.heading);
-				target.setX(craft.xPosition);
-				target.setY(craft.yPosition);
-
-				return;
-			}
-		}
-
-		// Add the ship. It was not already in the sector
-		inSector.add(craft);
-
-		return;
+	public void updateOrAddSpaceCraft(SpaceCraft craft) {
+		
+		updateOrAddSpaceCraft( craft.ID, craft.xPosition, craft.yPosition, craft.heading );
 
 	} // end updateOrAddSpaceCraft
 
@@ -362,12 +217,12 @@ public class Sector extends Canvas implements Runnable {
 	 * Remove a SpaceCraft from the sector. The SpaceCraft to 
 	 * be removed could be either alien or ownShip.
 	 * 
-	 * @param id Socket address of the spacecraft
+	 * @param id session ID of the spacecraft
 	 * @param x spacecraft x position
 	 * @param y spacecraft y position
 	 * @param heading spacecraft heading
 	 */
-	public synchronized void removeSpaceCraft( InetSocketAddress id, int x, int y, int heading ) {
+	public void removeSpaceCraft( int id, int x, int y, int heading ) {
 	
 		removeSpaceCraft( new SpaceCraft( id, x, y, heading ) );
 	
@@ -380,30 +235,15 @@ public class Sector extends Canvas implements Runnable {
 	 * 
 	 * @param craft SpaceCraft to be removed.
 	 */
-	public synchronized void removeSpaceCraft(SpaceCraft craft) {
+	public void removeSpaceCraft(SpaceCraft craft) {
 		
-		SpaceCraft target;
-		ListIterator<SpaceCraft> iter = inSector.listIterator();
-
 		// Check if ownship is being removed
 		if (ownShip != null && craft.equals(ownShip)) {
 
 			ownShip = null;
 		} else {
 
-			// Check for shipd in list of ships
-			while (iter.hasNext()) {
-
-				target = (SpaceCraft) iter.next();
-
-				if (craft.equals(target)) {
-					
-					// Remove the ship from the display
-					inSector.remove(iter.previousIndex());
-
-					return;
-				}
-			} // end while
+			model.submit( new SectorCommand( Constants.REMOVE_SHIP, craft.ID ) );
 		}
 
 	} // end removeSpaceCraft
@@ -412,14 +252,14 @@ public class Sector extends Canvas implements Runnable {
 	/**
 	 * Remove a torpedo from the sector.
 	 * 
-	 * @param id Socket address of the torpedo
+	 * @param id session ID of the torpedo
 	 * @param x torpedo x position
 	 * @param y torpedo y position
 	 * @param heading torpedo heading
 	 */
-	public synchronized void removeTorpedo( InetSocketAddress id, int x, int y, int heading ) {
+	public void removeTorpedo( int id, int x, int y, int heading ) {
 	
-		removeTorpedo( new Torpedo( id, x, y, heading ) );
+		model.submit( new SectorCommand( Constants.REMOVE_TORPEDO, id ) );
 	
 	} // end removeTorpedo
 	
@@ -429,25 +269,67 @@ public class Sector extends Canvas implements Runnable {
 	 * 
 	 * @param torp Torpedo to be removed.
 	 */
-	public synchronized void removeTorpedo(Torpedo torp) {
+	public void removeTorpedo(Torpedo torp) {
 		
-		Torpedo target;
-		ListIterator<Torpedo> iter = torpedoes.listIterator();
-
-		// Look for the torpedo
-		while (iter.hasNext()) {
+		removeTorpedo( torp.ID, 0, 0, Constants.NORTH );
 
-			target = (Torpedo) iter.next();
+	} // end remove
+	
+	
+	/**
+	 * Add a single obstacle to those in the sector. Assumes that is will only be
+	 * called once per obstacle. Does not check for duplicates.
+	 * 
+	 * @param obs obstacle to be added to the scene
+	 */
+	public void addObstacle(Obstacle obs) {
+		
+		addObstacle(obs.getXPosition(), obs.getYPosition());
 
-			if (torp.equals(target)) {
+	} // end addObstacle
+	
+	
+	/**
+	 * Add a single obstacle to those in the sector. Assumes that is will only be
+	 * called once per obstacle. Does not check for duplicates.
+	 * 
+	 * @param x x position of the obstacle
+	 * @param y y position of the obstacle
+	 */
+	public void addObstacle(int x, int y) {
+		
+		model.submit( new SectorCommand( Constants.OBSTACLES, 0, x, y, Constants.NORTH ) );
 
-				torpedoes.remove(iter.previousIndex());
+	} // end addObstacle
+	
+	
+	/**
+	 * Removes every ship, torpedo and obstacle other than ownShip from 
+	 * the sector. Used when ownShip moves to the sector of another server.
+	 */
+	public void clear() {
+		
+		model.submit( new SectorCommand( Constants.REDIRECT, 0 ) );
 
-				return;
-			}
-		}
+	} // end clear
+	
+	
+	/**
+	 * Check to see if an obstacle is in front of an object of the SpaceCraft class.
+	 * The obstacles are those of the newest frame, so any thread may check.
+	 * 
+	 * @param craft SpaceCraft or sub-class to check against the obstacles
+	 * @param forward true if checking for obstacles in front of craft. false if
+	 * checking for obstacles behind.
+	 * @return true if the position is clear, false otherwise
+	 */
+	public boolean obstacleClear(SpaceCraft craft, boolean forward) {
+		
+		return model.getFrame().obstacleClear( craft.getXPosition(), craft.getYPosition(), 
+				craft.getHeading(), forward );
+		
+	} // end obstacleClear
 
-	} // end remove
 	
 	/**
 	 * Creates a space craft for the user in a random position with a random 
@@ -465,6 +347,19 @@ public class Sector extends Canvas implements Runnable {
 	} // end createOwnSpaceCraft
 	
 	
+	/**
+	 * Sets the session ID used for the user's space craft. The server
+	 * assigns the ID when the client registers.
+	 * 
+	 * @param owner session ID that identifies "own ship"
+	 */
+	public void setOwnShipID( int owner ) {
+		
+		this.ownShipID = owner;
+		
+	} // end setOwnShipID
+	
+	
 	/**
 	 * Creates stars in random positions for the display.
 	 *
@@ -481,31 +376,6 @@ public class Sector extends Canvas implements Runnable {
 
 	} // end createStars
 
-	/**
-	 * Add a single obstacle to those in the sector. Assumes that is will only be
-	 * called once per obstacle. Does not check for duplicates.
-	 * 
-	 * @param obs obstacle to be added to the scene
-	 */
-	public void addObstacle(Obstacle obs) {
-		
-		obstacles.add(obs);
-
-	} // end addObstacle
-	
-	
-	/**
-	 * Add a single obstacle to those in the sector. Assumes that is will only be
-	 * called once per obstacle. Does not check for duplicates.
-	 * 
-	 * @param x x position of the obstacle
-	 * @param y y position of the obstacle
-	 */
-	public void addObstacle(int x, int y) {
-		
-		addObstacle( new Obstacle(x, y));
-
-	} // end addObstacle
 	
 	
 	/**
@@ -530,100 +400,7 @@ public class Sector extends Canvas implements Runnable {
 		
 	}
 	
-	/**
-	 * Check to see if an obstacle is in front of an object of the SpaceCraft class.
-	 * 
-	 * @param craft SpaceCraft or sub-class to check against the obstacles
-	 * @param forward true if checking for obstacles in front of craft. false if
-	 * checking for obstacles behind.
-	 * @return true if the position is clear, false otherwise
-	 */
-	public boolean obstacleClear(SpaceCraft craft, boolean forward) {
-		
-		// Temps to hold hypothetical position
-		int xObs = craft.getXPosition();
-		int yObs = craft.getYPosition();
-		
-		int direction = (forward)? OwnSpaceCraft.INCREMENT : -OwnSpaceCraft.INCREMENT;
-
-		// Create hypothetical position
-		switch (craft.getHeading()) {
 
-		case Constants.NORTH:
-
-			yObs -= direction;
-
-			break;
-
-		case Constants.NORTH_EAST:
-
-			xObs += direction;
-			yObs -= direction;
-
-			break;			
-			
-		case Constants.EAST:
-
-			xObs += direction;
-
-			break;
-	
-		case Constants.SOUTH_EAST:
-
-			xObs += direction;
-			yObs += direction;
-			break;			
-
-		case Constants.SOUTH:
-
-			yObs += direction;
-
-			break;
-		case Constants.SOUTH_WEST:
-
-			xObs -= direction;
-			yObs += direction;
-
-			break;
-
-		case Constants.WEST:
-
-			xObs -= direction;
-
-			break;
-
-		case Constants.NORTH_WEST:
-
-			xObs -= direction;
-			yObs -= direction;
-			
-			break;			
-			
-		default:
-
-			System.err.println("Case error in obstacleClear");
-
-		}
-
-		// Check hypothetical position against all obstacles
-		ListIterator<Obstacle> iter = obstacles.listIterator();
-
-		while (iter.hasNext()) {
-
-			Obstacle obs = (Obstacle) iter.next();
-
-			if (Math.abs(obs.getXPosition() - xObs) < 10
-					&& Math.abs(obs.getYPosition() - yObs) < 10) {
-
-				// "Obstacle in path";
-				return false;
-			}
-		}
-
-		// "Path clear of obstacles"
-		return true;
-
-	} // end obstacleClear
 
 	
 	/** 
@@ -645,6 +422,12 @@ public class Sector extends Canvas implements Runnable {
 		//This is the animation loop.
 		while (currentThread == animatorThread) {
 
+			// Make the changes submitted since the last frame
+			if (ownsModel) {
+				model.applyCommands();
+				model.publishFrame();
+			}
+			
 			// Indirectly call paint
 			repaint();
 
@@ -689,74 +472,32 @@ public class Sector extends Canvas implements Runnable {
 		
 		offGraphics.fillRect(0, 0, offDimension.width, offDimension.height);
 
-		// Call the draw methods for all objects in the sector
+		// Call the draw methods for all objects in the sector. Everything
+		// but the stars and own ship is drawn from the newest frame.
+		RenderFrame frame = model.getFrame();
+		
 		drawStars(offGraphics);
-		drawObstacles(offGraphics);
-		drawTorpedoes(offGraphics);
-		drawAllSpaceCraft(offGraphics);
+		drawObstacles(offGraphics, frame);
+		drawTorpedoes(offGraphics, frame);
+		drawAllSpaceCraft(offGraphics, frame);
 
 		// Swap buffers
 		g.drawImage(offImage, 0, 0, this);
 
 	} // end update
 	
-	
-	/*
-	 * Checks for collision between two SpaceCraft or sub-types.
-	 * 
-	 * @param first ship for collision check
-	 * @param seconds ship for collision check
-	 * @return true if the ships are in collision
-	 */
-	protected boolean inCollision(SpaceCraft sp1, SpaceCraft sp2)
-	{
-		double diffX = sp1.getXPosition() - sp2.getXPosition();
-		double diffY = sp1.getYPosition() - sp2.getYPosition();
-		
-		if (Math.sqrt( diffX * diffX + diffY * diffY) <= Constants.OBJECT_WIDTH) {
-
-			return true;
-		}
-		else {
-			return false;
-		}
-		
-	} // end inCollision
-	
-	
-	/*
-	 * Checks if two SpaceCraft or sub-types have opposing headings
-	 * 
-	 * @param first ship 
-	 * @param seconds ship 
-	 * @returns true if the ships face each other
-	 */
-	protected boolean opposingHeading( SpaceCraft sp1, SpaceCraft sp2)
-	{	
-		if (Math.abs(sp1.getHeading() - sp2.getHeading()) == 4) {
-
-
-			return true;
-		}
-		else {
-			return false;
-		}
-		
-	} // end opposingHeading
 
 	/**
 	 * Draws all alien space craft in the sector. Draws own ship if it is present.
 	 * 
 	 * @param g Graphics context for rendering
+	 * @param frame positions to draw
 	 */
-	protected synchronized void drawAllSpaceCraft(Graphics g) {
+	protected void drawAllSpaceCraft(Graphics g, RenderFrame frame) {
 	
-		ListIterator<SpaceCraft> iter = inSector.listIterator();
-
-		while (iter.hasNext()) {
-
-			((SpaceCraft) (iter.next())).draw(offGraphics);
+		for (int i = 0; i < frame.shipX.length; i++) {
 
+			SpaceCraft.draw(g, Color.GREEN, frame.shipX[i], frame.shipY[i], frame.shipHeading[i]);
 		}
 
 		if (this.ownShip != null) {
@@ -788,14 +529,13 @@ public class Sector extends Canvas implements Runnable {
 	 * Draws all obstacles in the sector. 
 	 * 
 	 * @param g Graphics context for rendering
+	 * @param frame positions to draw
 	 */
-	protected void drawObstacles(Graphics g) {
+	protected void drawObstacles(Graphics g, RenderFrame frame) {
 	
-		ListIterator<Obstacle> iter = obstacles.listIterator();
+		for (int i = 0; i < frame.obstacleX.length; i++) {
 
-		while (iter.hasNext()) {
-
-			((Obstacle) (iter.next())).draw(offGraphics);
+			Obstacle.draw(g, frame.obstacleX[i], frame.obstacleY[i]);
 		}
 
 	} // end drawObstacles
@@ -805,14 +545,13 @@ public class Sector extends Canvas implements Runnable {
 	 * Draws all torpedoes in the sector. 
 	 * 
 	 * @param g Graphics context for rendering
+	 * @param frame positions to draw
 	 */
-	protected synchronized void drawTorpedoes(Graphics g) {
+	protected void drawTorpedoes(Graphics g, RenderFrame frame) {
 	
-		ListIterator<Torpedo> iter = torpedoes.listIterator();
-
-		while (iter.hasNext()) {
+		for (int i = 0; i < frame.torpedoX.length; i++) {
 
-			((Torpedo) (iter.next())).draw(offGraphics);
+			Torpedo.draw(g, frame.torpedoX[i], frame.torpedoY[i]);
 		}
 
 	} // end drawTorpedoes
@@ -844,5 +583,4 @@ public class Sector extends Canvas implements Runnable {
 		}
 	} // end sizeChangeListener inner class
 
-} // end Sector class
-
+} // end Sector class
\ No newline at end of file
@@ -0,0 +1,187 @@
+package spaceWar;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A change to a SectorModel requested by a thread that does not own the
+ * model. Commands are submitted to the model and applied in order by the
+ * one thread that owns it. The change is given by a message code from
+ * Constants:
+ *
+ * JOIN or UPDATE_SHIP   adds or updates a ship
+ * UPDATE_TORPEDO        adds or updates a torpedo
+ * REMOVE_SHIP           removes a ship
+ * REMOVE_TORPEDO        removes a torpedo
+ * OBSTACLES             adds an obstacle. The ID is not used.
+ * REDIRECT              empties the sector. The ID is not used.
+ *
+ * A command is queued at most once. Setting a new position on a command
+ * that has not been applied yet replaces the old one, so a producer that
+ * reuses one command per ship costs at most one change per drain of the
+ * queue however often it sends.
+ */
+public class SectorCommand
+{
+	/**
+	 * Message code of the change
+	 */
+	public final int code;
+
+	/**
+	 * Session ID of the ship or torpedo changed
+	 */
+	public final int id;
+
+	// Position and heading packed by Snapshot.state. Written by the
+	// producer and read by the owner when the command is applied.
+	protected volatile int state;
+
+	// Life already used by a torpedo handed over by another server.
+	// Zero for a new torpedo.
+	protected final int life;
+
+	// True while the command is waiting in the queue of a model
+	protected final AtomicBoolean queued = new AtomicBoolean( false );
+
+
+	/**
+	 * Creates a command that changes one ship or torpedo.
+	 *
+	 * @param code message code of the change
+	 * @param id session ID of the ship or torpedo
+	 * @param x x position
+	 * @param y y position
+	 * @param heading heading
+	 */
+	public SectorCommand( int code, int id, int x, int y, int heading )
+	{
+		this( code, id, x, y, heading, 0 );
+
+	} // end SectorCommand constructor
+
+
+	/**
+	 * Creates a command that adds a torpedo that has already used some
+	 * of its life.
+	 *
+	 * @param code message code of the change
+	 * @param id session ID of the torpedo
+	 * @param x x position
+	 * @param y y position
+	 * @param heading heading
+	 * @param life life the torpedo has used
+	 */
+	public SectorCommand( int code, int id, int x, int y, int heading, int life )
+	{
+		this.code = code;
+		this.id = id;
+		this.life = life;
+		set( x, y, heading );
+
+	} // end SectorCommand constructor
+
+
+	/**
+	 * Creates a command that changes one ship or torpedo without a
+	 * position, such as a removal.
+	 *
+	 * @param code message code of the change
+	 * @param id session ID of the ship or torpedo
+	 */
+	public SectorCommand( int code, int id )
+	{
+		this( code, id, 0, 0, Constants.NORTH );
+
+	} // end SectorCommand constructor
+
+
+	/**
+	 * Sets the position and heading the command applies. May be called
+	 * while the command is queued.
+	 *
+	 * @param x x position
+	 * @param y y position
+	 * @param heading heading
+	 */
+	public void set( int x, int y, int heading )
+	{
+		state = Snapshot.state( x, y, heading );
+
+	} // end set
+
+
+	/**
+	 * Accessor method for the position and heading the command applies,
+	 * packed by Snapshot.state. Read once so that the parts agree.
+	 *
+	 * @return packed position and heading
+	 */
+	public int getState()
+	{
+		return state;
+
+	} // end getState
+
+
+	/**
+	 * Makes the change to a model. Only called by the thread owning it.
+	 *
+	 * @param sector model to change
+	 * @return index of the ship or torpedo added or updated in the store
+	 * holding it. -1 for removals and obstacles.
+	 */
+	public int apply( SectorModel sector )
+	{
+		// Cleared before the position is read so that a position set
+		// after this point queues the command again
+		queued.set( false );
+
+		int current = state;
+		int x = Snapshot.x( current ), y = Snapshot.y( current ), heading = Snapshot.heading( current );
+
+		switch ( code ) {
+
+		case Constants.JOIN:
+		case Constants.UPDATE_SHIP:
+
+			return sector.updateOrAddSpaceCraft( id, x, y, heading );
+
+		case Constants.UPDATE_TORPEDO:
+
+			int index = sector.updateOrAddTorpedo( id, x, y, heading );
+
+			if ( life > 0 ) {
+				sector.heldTorpedoes().life[index] = life;
+			}
+
+			return index;
+
+		case Constants.REMOVE_SHIP:
+
+			sector.removeSpaceCraft( id );
+			return -1;
+
+		case Constants.REMOVE_TORPEDO:
+
+			sector.removeTorpedo( id );
+			return -1;
+
+		case Constants.OBSTACLES:
+
+			sector.addObstacle( x, y );
+			return -1;
+
+		case Constants.REDIRECT:
+
+			sector.clear();
+			return -1;
+
+		default:
+
+			System.err.println("Case error in SectorCommand");
+			return -1;
+		}
+
+	} // end apply
+
+} // end SectorCommand class
@@ -0,0 +1,947 @@
+package spaceWar;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * Holds and simulates the state of the space game without displaying it. 
+ * Maintains all ships, obstacles and torpedoes in the sector. Provides method 
+ * for updating all torpedos and for checking collisions. Provides accessor and 
+ * mutator methods for adding and removing spacecraft and torpedoes.
+ * Ships and torpedoes are held in EntityStores rather than as objects.
+ * 
+ * No AWT classes are used so that a server can run the game without a 
+ * display. A Sector can be created to view a SectorModel.
+ * 
+ * A model is owned by one thread, which is the only one that calls its 
+ * mutators, so none of them lock. Other threads submit SectorCommands,
+ * which never block, and the owner applies them in order. The owner 
+ * publishes a RenderFrame after each update, which any thread may draw.
+ * 
+ * A large sector can be split into regions whose torpedoes are stepped 
+ * in parallel by a pool while the owner waits. The result is the same 
+ * as stepping them on the owner alone.
+ */
+public class SectorModel {
+
+	// Ships other than own ship in the sector, by session ID
+	protected EntityStore ships = new EntityStore();
+
+	// Grid of the ships used to find ships close enough to collide
+	protected SpatialGrid shipGrid = new SpatialGrid();
+
+	// Torpedoes in the sector, by the session ID of the ship that fired them
+	protected EntityStore torpedoes = new EntityStore();
+	
+	// Reused to hold which torpedoes moved in an update
+	protected int torpedoMoved[] = new int[0];
+	
+	// Pool stepping the regions of the sector. Null when the owner steps
+	// every torpedo itself.
+	protected ForkJoinPool regionPool;
+	
+	// Number of horizontal strips the sector is split into
+	protected int regions = 1;
+	
+	// Indices of the torpedoes in each region, region by region, and the
+	// position in regionMembers where each region starts
+	protected int regionMembers[] = new int[0];
+	protected int regionStart[] = new int[2];
+	
+	// Reused to hold what each region found about each torpedo
+	protected byte torpedoFlags[] = new byte[0];
+	
+	// Flags of a torpedo that has reached the end of its life or an 
+	// obstacle, of one that is close enough to a ship to hit it, and of
+	// a spent one stopped by the edge of the sector
+	protected static final byte SPENT = 1, NEAR_SHIP = 2, AT_EDGE = 4;
+	
+	// Fewer torpedoes than this are stepped by the owner even when the
+	// sector has regions. Forking costs more than it saves.
+	protected static final int REGION_MINIMUM = 2048;
+	
+	// Holds obstacles in the sector
+	protected ArrayList<Obstacle> obstacles = new ArrayList<Obstacle>();
+	
+	// Positions blocked by the obstacles
+	protected OccupancyMap blocked = new OccupancyMap();
+	
+	// Copy of blocked published with the frames. Null once the obstacles
+	// have changed, until the next frame is published.
+	protected OccupancyMap publishedBlocked = null;
+	
+	// Changes submitted by other threads waiting for the owner
+	protected ConcurrentLinkedQueue<SectorCommand> commands = new ConcurrentLinkedQueue<SectorCommand>();
+	
+	// Newest frame published by the owner
+	protected volatile RenderFrame frame = RenderFrame.EMPTY;
+	
+	// Objects closer than this are in collision. Squared so that distances 
+	// can be compared without a square root.
+	protected static final int COLLISION_DISTANCE_SQUARED 
+		= Constants.OBJECT_WIDTH * Constants.OBJECT_WIDTH;
+	
+	
+	/**
+	 * Accessor method for the obstacles contained in the sector.
+	 * 
+	 * @return list of the obstacles
+	 */
+	@SuppressWarnings("unchecked")
+	public ArrayList<Obstacle> getObstacles( ) {
+		
+		return  (ArrayList<Obstacle>)obstacles.clone();
+		
+	} // end getObstacles
+	
+	/**
+	 * Accessor method for the ships held by the sector. Only the thread
+	 * owning the sector may use it and it must not be modified.
+	 * 
+	 * @return store of the ships
+	 */
+	public EntityStore heldSpaceCraft( ) {
+		
+		return ships;
+		
+	} // end heldSpaceCraft
+	
+	/**
+	 * Accessor method for the torpedoes held by the sector. Only the 
+	 * thread owning the sector may use it and it must not be modified.
+	 * 
+	 * @return store of the torpedoes
+	 */
+	public EntityStore heldTorpedoes( ) {
+		
+		return torpedoes;
+		
+	} // end heldTorpedoes
+	
+	/**
+	 * Checks whether a ship is in the sector. Only called by the thread
+	 * owning the sector.
+	 * 
+	 * @param id session ID of the ship
+	 * @return true if the ship is in the sector
+	 */
+	public boolean hasSpaceCraft( int id ) {
+		
+		return ships.contains( id );
+		
+	} // end hasSpaceCraft
+	
+	/**
+	 * Makes the sector step its torpedoes in regions from now on. Only
+	 * called by the thread owning the sector.
+	 * 
+	 * @param pool pool stepping the regions. null to step every torpedo 
+	 * on the owner.
+	 * @param regions number of horizontal strips to split the sector into
+	 */
+	public void stepInRegions( ForkJoinPool pool, int regions ) {
+		
+		this.regionPool = ( regions > 1 ) ? pool : null;
+		this.regions = Math.max( 1, regions );
+		this.regionStart = new int[ this.regions + 1 ];
+		
+	} // end stepInRegions
+	
+	/**
+	 * Queues a change to be made by the thread owning the sector. May be
+	 * called by any thread and never blocks. A command that is already
+	 * queued is not queued again. It will apply its newest position.
+	 * 
+	 * @param command change to make
+	 */
+	public void submit( SectorCommand command ) {
+		
+		if ( command.queued.compareAndSet( false, true ) ) {
+			
+			commands.offer( command );
+		}
+		
+	} // end submit
+	
+	/**
+	 * Takes the oldest submitted change. Only called by the thread
+	 * owning the sector, which then applies it.
+	 * 
+	 * @return the change or null if none is waiting
+	 */
+	public SectorCommand pollCommand( ) {
+		
+		return commands.poll();
+		
+	} // end pollCommand
+	
+	/**
+	 * Applies every submitted change in the order submitted. Only 
+	 * called by the thread owning the sector.
+	 */
+	public void applyCommands( ) {
+		
+		SectorCommand command;
+		
+		while ( ( command = commands.poll() ) != null ) {
+			
+			command.apply( this );
+		}
+		
+	} // end applyCommands
+	
+	/**
+	 * Copies the positions of everything in the sector into a new frame
+	 * and makes it the newest. The positions blocked by obstacles are
+	 * only copied again after the obstacles have changed. Only called by
+	 * the thread owning the sector.
+	 */
+	public void publishFrame( ) {
+		
+		if ( publishedBlocked == null ) {
+			publishedBlocked = blocked.copy();
+		}
+		
+		frame = new RenderFrame( ships, torpedoes, obstacles, publishedBlocked );
+		
+	} // end publishFrame
+	
+	/**
+	 * Accessor method for the newest frame. May be called by any thread.
+	 * 
+	 * @return frame published last
+	 */
+	public RenderFrame getFrame( ) {
+		
+		return frame;
+		
+	} // end getFrame
+	
+	/**
+	 * Checks for a collision between the mover spacecraft and 
+	 * all other ships in the sector. It returns a list of ships 
+	 * destroyed in a collision if one occurred. If the collision 
+	 * between two ships was head-on both the mover and 
+	 * the ship it hit are destroyed. Destroyed ships are 
+	 * removed from the display. 
+	 * 
+	 * @param mover ship to check against all other ships
+	 * 
+	 * @return ships destroyed if a collision occurred. 
+	 * null otherwise.
+	 */
+	public ArrayList<SpaceCraft> collisionCheck( SpaceCraft mover ) {
+		
+		return collisionCheck( mover.ID );
+		
+	} // end collisionCheck
+	
+	/**
+	 * Checks for a collision between the ship with a session ID and 
+	 * all other ships in the sector. See collisionCheck(SpaceCraft).
+	 * 
+	 * @param id session ID of the ship to check against all other ships
+	 * 
+	 * @return ships destroyed if a collision occurred. 
+	 * null otherwise.
+	 */
+	public ArrayList<SpaceCraft> collisionCheck( int id ) {
+		
+		int mover = ships.indexOf( id );
+		
+		if ( mover < 0 ) {
+			return null;
+		}
+		
+		int moverX = ships.x[mover], moverY = ships.y[mover];
+		
+		// Go through the ships near mover and compare
+		// each against mover. Ships further away cannot be touching it.
+		int count = shipGrid.neighbours( moverX, moverY );
+		int near[] = shipGrid.found();
+		
+		int hit = firstCollision( moverX, moverY, ships, near, count, id );
+		
+		if ( hit >= 0 ) {
+			
+			int target = ships.indexOf( near[hit] );
+
+			// A collision has occurred. Create a list to hold the destroyed ships
+			ArrayList<SpaceCraft> destroyedShips = new ArrayList<SpaceCraft>();
+			
+			SpaceCraft struck = ships.toSpaceCraft( target );
+			
+			// Check for head-on collision.
+			if ( opposingHeading( ships.heading[mover], ships.heading[target] ) ) {
+
+				// Remove move and add to destroyed ship list
+				destroyedShips.add( ships.toSpaceCraft( mover ) );
+				removeSpaceCraft( id );
+			}
+			
+			// Add the ship that was hit to the destroyed ship list
+			removeSpaceCraft( struck.ID );
+			destroyedShips.add( struck );
+			
+			// Return the ship collided with 
+			return destroyedShips;	
+		}
+
+		// no  collision occurred
+		return null;
+
+	} // end collisionCheck
+
+	
+	/**
+	 * Updates the positions of all the torpedoes. If a torpedo
+	 * hits an obstacle, it is destroyed. If a torpedo hits a
+	 * spacecraft, both the ship and the torpedo are destroyed. 
+	 * Destroyed ships and torpedoes are removed from the display. 
+	 * 
+	 * @return destroyed ships and torpedoes. 
+	 * null otherwise.
+	 */
+	public ArrayList<SpaceCraft> updateTorpedoes(  ) {
+		
+		if ( regionPool != null && torpedoes.count >= REGION_MINIMUM ) {
+			
+			return updateTorpedoesInRegions();
+		}
+		
+		// List of ships and torpedoes in collision
+		ArrayList<SpaceCraft>  destroyedObjects = null;
+		
+		EntityStore t = torpedoes;
+		
+		// Update torpedo positions. Check for end of life
+		if ( torpedoMoved.length < t.count ) {
+			torpedoMoved = new int[ t.id.length ];
+		}
+		
+		Torpedo.update( t, torpedoMoved );
+		
+		// Check each torpedo for collision with an obstacle. Go backwards
+		// so torpedoes swapped into a removed torpedo's place have 
+		// already been checked.
+		for ( int i = t.count - 1; i >= 0; i-- ){
+
+			// Remove torpedo if it hit an obstacle or its life is over
+			if ( torpedoMoved[i] == 0 || !obstacleClear( t.x[i], t.y[i], t.heading[i], true ) ) {
+				
+				destroyedObjects = destroyTorpedo( i, stoppedAtEdge( i ), destroyedObjects );
+			}
+		} // end for
+		
+		// Check each remaining torpedo against the ships near it. The
+		// grid limits the exact collision test to candidate pairs.
+		for ( int i = t.count - 1; i >= 0; i-- ){
+		
+			destroyedObjects = strikeShip( i, destroyedObjects );
+			
+		} // end for
+		
+		return destroyedObjects;
+
+	} // end updateTorpedoes
+	
+	
+	/*
+	 * Updates the torpedoes the same as updateTorpedoes, with the regions
+	 * moving their torpedoes and checking them against the obstacles and
+	 * ships in parallel. Removals are then made by the owner in the same 
+	 * order as updateTorpedoes makes them, so the sector and the list 
+	 * returned are exactly the same.
+	 * 
+	 * @return destroyed ships and torpedoes. null otherwise.
+	 */
+	protected ArrayList<SpaceCraft> updateTorpedoesInRegions(  ) {
+		
+		ArrayList<SpaceCraft>  destroyedObjects = null;
+		
+		EntityStore t = torpedoes;
+		
+		if ( torpedoFlags.length < t.count ) {
+			
+			torpedoMoved = new int[ t.id.length ];
+			torpedoFlags = new byte[ t.id.length ];
+			regionMembers = new int[ t.id.length ];
+		}
+		
+		// Hand each torpedo to the region it is in now. Torpedoes that 
+		// crossed into another region during the last tick change hands
+		// here.
+		sortIntoRegions();
+		
+		regionPool.invoke( new RegionStep( this, 0, regions ) );
+		
+		// Remove spent torpedoes. The flags follow the torpedoes swapped
+		// into the removed places.
+		for ( int i = t.count - 1; i >= 0; i-- ){
+			
+			if ( ( torpedoFlags[i] & SPENT ) != 0 ) {
+				
+				destroyedObjects = destroyTorpedo( i, ( torpedoFlags[i] & AT_EDGE ) != 0, destroyedObjects );
+				torpedoFlags[i] = torpedoFlags[ t.count ];
+			}
+		} // end for
+		
+		// Resolve hits on ships. A torpedo that was not close to any ship
+		// cannot hit one now that ships have only been removed. Those that 
+		// were are checked again against the ships left, which settles 
+		// torpedoes of different regions striking the same ship.
+		for ( int i = t.count - 1; i >= 0; i-- ){
+			
+			if ( ( torpedoFlags[i] & NEAR_SHIP ) != 0 ) {
+				
+				destroyedObjects = strikeShip( i, destroyedObjects );
+			}
+		} // end for
+		
+		return destroyedObjects;
+		
+	} // end updateTorpedoesInRegions
+	
+	
+	/*
+	 * Files the index of every torpedo under the horizontal strip holding
+	 * it. Torpedoes keep their order within each region.
+	 */
+	protected void sortIntoRegions(  ) {
+		
+		EntityStore t = torpedoes;
+		int start[] = regionStart;
+		
+		Arrays.fill( start, 0 );
+		
+		// Count the torpedoes in each region
+		for ( int i = 0; i < t.count; i++ ) {
+			
+			start[ regionOf( t.y[i] ) + 1 ]++;
+		}
+		
+		for ( int r = 0; r < regions; r++ ) {
+			
+			start[r + 1] += start[r];
+		}
+		
+		// File them, moving each start along as its region fills
+		for ( int i = 0; i < t.count; i++ ) {
+			
+			regionMembers[ start[ regionOf( t.y[i] ) ]++ ] = i;
+		}
+		
+		// Every start has moved to the start of the next region
+		for ( int r = regions; r > 0; r-- ) {
+			
+			start[r] = start[r - 1];
+		}
+		start[0] = 0;
+		
+	} // end sortIntoRegions
+	
+	
+	/*
+	 * Finds the region holding a vertical position.
+	 */
+	protected int regionOf( int y ) {
+		
+		return Math.min( Math.max( y, 0 ) * regions / ( Constants.MAX_SECTOR_Y + 1 ), regions - 1 );
+		
+	} // end regionOf
+	
+	
+	/**
+	 * Moves the torpedoes of one region and flags those that are spent or
+	 * close to a ship. Only called by a RegionStep. It writes only the 
+	 * entries of the region's own torpedoes and reads the rest of the 
+	 * sector, so the regions can be stepped at the same time.
+	 * 
+	 * @param region region to step
+	 */
+	void stepRegion( int region ) {
+		
+		EntityStore t = torpedoes;
+		int from = regionStart[region], to = regionStart[region + 1];
+		
+		Torpedo.update( t, regionMembers, from, to, torpedoMoved );
+		
+		for ( int k = from; k < to; k++ ) {
+			
+			int i = regionMembers[k];
+			byte flags = 0;
+			
+			if ( torpedoMoved[i] == 0 || !obstacleClear( t.x[i], t.y[i], t.heading[i], true ) ) {
+				
+				flags = stoppedAtEdge( i ) ? SPENT | AT_EDGE : SPENT;
+			}
+			// Ships in the regions next to this one are checked as well
+			else if ( shipGrid.anyWithin( t.x[i], t.y[i], COLLISION_DISTANCE_SQUARED, ships, t.owner[i] ) ) {
+				
+				flags = NEAR_SHIP;
+			}
+			
+			torpedoFlags[i] = flags;
+		}
+		
+	} // end stepRegion
+	
+	
+	/*
+	 * Checks whether a torpedo that did not move this tick was stopped by
+	 * the edge of the sector rather than by reaching its range. Only
+	 * valid after the torpedo has been moved.
+	 * 
+	 * @param i index of the torpedo
+	 * @return true if it still has range but could not move
+	 */
+	protected boolean stoppedAtEdge( int i ) {
+		
+		return torpedoMoved[i] == 0 && torpedoes.life[i] < Torpedo.MAX_RANGE;
+		
+	} // end stoppedAtEdge
+	
+	
+	/*
+	 * Removes a torpedo and adds it to a list of destroyed objects.
+	 * 
+	 * @param i index of the torpedo
+	 * @param atEdge true if the edge of the sector stopped the torpedo
+	 * @param destroyedObjects list so far or null if there is none yet
+	 * @return the list with the torpedo added
+	 */
+	protected ArrayList<SpaceCraft> destroyTorpedo( int i, boolean atEdge, ArrayList<SpaceCraft> destroyedObjects ) {
+		
+		// Create destroyed list if it has not been created yet
+		if ( destroyedObjects== null ) {
+			destroyedObjects = new ArrayList<SpaceCraft>();
+		}
+
+		// Remove torpedo from display add to destroyed
+		Torpedo torpedo = torpedoes.toTorpedo( i );
+		torpedo.stoppedAtEdge = atEdge;
+		
+		destroyedObjects.add( torpedo );
+		torpedoes.remove( i );
+		
+		return destroyedObjects;
+		
+	} // end destroyTorpedo
+	
+	
+	/*
+	 * Checks a torpedo against the ships near it. If it hits one both 
+	 * are removed and added to a list of destroyed objects.
+	 * 
+	 * @param i index of the torpedo
+	 * @param destroyedObjects list so far or null if there is none yet
+	 * @return the list, which is still null if nothing was hit and
+	 * nothing had been destroyed before
+	 */
+	protected ArrayList<SpaceCraft> strikeShip( int i, ArrayList<SpaceCraft> destroyedObjects ) {
+		
+		EntityStore t = torpedoes;
+		int torpedoX = t.x[i], torpedoY = t.y[i];
+		
+		// Go through the ships close to the torpedo
+		int count = shipGrid.neighbours( torpedoX, torpedoY );
+		int near[] = shipGrid.found();
+		
+		// Topedoes cannot kill the shipd that fires them
+		int hit = firstCollision( torpedoX, torpedoY, ships, near, count, t.owner[i] );
+		
+		if ( hit >= 0 ) {
+			
+			if ( destroyedObjects== null ) {
+				destroyedObjects = new ArrayList<SpaceCraft>();
+			}
+			
+			// Add ship and torpedo  to destroyed
+			destroyedObjects.add( t.toTorpedo( i ) );
+			destroyedObjects.add( ships.toSpaceCraft( ships.indexOf( near[hit] ) ) );
+
+			// Remove torpedo and ship from display
+			t.remove( i );
+			removeSpaceCraft( near[hit] );
+		}
+		
+		return destroyedObjects;
+		
+	} // end strikeShip
+	
+	
+	/**
+	 * Adds a new torpedo to the sector display. If the
+	 * torpedo is already in the display, it is updated
+	 * 
+	 * @param id session ID of the torpedo
+	 * @param x torpedo x position
+	 * @param y torpedo y position
+	 * @param heading torpedo heading
+	 * 
+	 * @return index of the torpedo in the store of torpedoes
+	 */
+	public int updateOrAddTorpedo( int id, int x, int y, int heading ) {
+		
+		int index = torpedoes.indexOf( id );
+		
+		// Add the torpedo if it was not already in the sector
+		if ( index < 0 ) {
+			index = torpedoes.add( id );
+		}
+		
+		torpedoes.set( index, x, y, heading );
+		
+		return index;
+	 
+	} // end updateOrAddTorpedo
+
+	
+	/**
+	 * Adds a new torpedo to the sector display. If the
+	 * torpedo is already in the display, it is updated
+	 * 
+	 * @param torp torpedo to be added or updated
+	 */
+	public void updateOrAddTorpedo(Torpedo torp) {
+		
+		updateOrAddTorpedo( torp.ID, torp.xPosition, torp.yPosition, torp.heading );
+
+	} // end updateOrAddTorpedo
+	
+	
+	/**
+	 * If the IDed SpaceCraft is already in the sector 
+	 * its heading and/or position are updated. If the SpaceCraft 
+	 * is not found in the sector, it is added.
+	 * 
+	 * @param id session ID of the spacecraft
+	 * @param x spacecraft x position
+	 * @param y spacecraft y position
+	 * @param heading spacecraft heading
+	 * 
+	 * @return index of the ship in the store of ships
+	 */
+	public int updateOrAddSpaceCraft( int id, int x, int y, int heading ) {
+	
+		int index = ships.indexOf( id );
+		
+		// Add the ship if it was not already in the sector
+		if ( index < 0 ) {
+			index = ships.add( id );
+		}
+		
+		ships.set( index, x, y, heading );
+		shipGrid.move( id, ships.x[index], ships.y[index] );
+		
+		return index;
+	
+	} // end updateOrAddSpaceCraft
+	
+	/**
+	 * If the input parameter SpaceCraft is already in the sector 
+	 * its heading and/or position are updated. If the SpaceCraft 
+	 * is not found in the sector, it is added.
+	 * 
+	 * @param craft to be updated or added
+	 */
+	public void updateOrAddSpaceCraft(SpaceCraft craft) {
+		
+		updateOrAddSpaceCraft( craft.ID, craft.xPosition, craft.yPosition, craft.heading );
+
+	} // end updateOrAddSpaceCraft
+
+	
+	/**
+	 * Remove a SpaceCraft from the sector.
+	 * 
+	 * @param id session ID of the spacecraft
+	 * @param x spacecraft x position
+	 * @param y spacecraft y position
+	 * @param heading spacecraft heading
+	 */
+	public void removeSpaceCraft( int id, int x, int y, int heading ) {
+	
+		removeSpaceCraft( id );
+	
+	} // end removeSpaceCraft
+
+	
+	/**
+	 * Remove a SpaceCraft from the sector.
+	 * 
+	 * @param craft SpaceCraft to be removed.
+	 */
+	public void removeSpaceCraft(SpaceCraft craft) {
+		
+		removeSpaceCraft( craft.ID );
+
+	} // end removeSpaceCraft
+
+	
+	/**
+	 * Remove a SpaceCraft from the sector.
+	 * 
+	 * @param id session ID of the SpaceCraft to be removed.
+	 */
+	public void removeSpaceCraft(int id) {
+		
+		int index = ships.indexOf( id );
+
+		if ( index >= 0 ) {
+			
+			ships.remove( index );
+			shipGrid.remove( id );
+		}
+
+	} // end removeSpaceCraft
+
+	
+	/**
+	 * Remove a torpedo from the sector.
+	 * 
+	 * @param id session ID of the torpedo
+	 * @param x torpedo x position
+	 * @param y torpedo y position
+	 * @param heading torpedo heading
+	 */
+	public void removeTorpedo( int id, int x, int y, int heading ) {
+	
+		removeTorpedo( id );
+	
+	} // end removeTorpedo
+	
+	
+	/**
+	 * Remove a torpedo from the sector.
+	 * 
+	 * @param torp Torpedo to be removed.
+	 */
+	public void removeTorpedo(Torpedo torp) {
+		
+		removeTorpedo( torp.ID );
+		
+	} // end removeTorpedo
+	
+	
+	/**
+	 * Remove a torpedo from the sector.
+	 * 
+	 * @param id session ID of the torpedo to be removed.
+	 */
+	public void removeTorpedo(int id) {
+		
+		int index = torpedoes.indexOf( id );
+
+		if ( index >= 0 ) {
+
+			torpedoes.remove( index );
+		}
+
+	} // end remove
+	
+	
+	/**
+	 * Add a single obstacle to those in the sector. Assumes that is will only be
+	 * called once per obstacle. Does not check for duplicates.
+	 * 
+	 * @param obs obstacle to be added to the scene
+	 */
+	public void addObstacle(Obstacle obs) {
+		
+		obstacles.add(obs);
+		blocked.addObstacle(obs.getXPosition(), obs.getYPosition());
+		publishedBlocked = null;
+
+	} // end addObstacle
+	
+	
+	/**
+	 * Add a single obstacle to those in the sector. Assumes that is will only be
+	 * called once per obstacle. Does not check for duplicates.
+	 * 
+	 * @param x x position of the obstacle
+	 * @param y y position of the obstacle
+	 */
+	public void addObstacle(int x, int y) {
+		
+		addObstacle( new Obstacle(x, y));
+
+	} // end addObstacle
+	
+	
+	/**
+	 * Removes every ship, torpedo and obstacle from the sector. Used by a
+	 * client whose ship has moved to the sector of another server.
+	 */
+	public void clear() {
+		
+		ships = new EntityStore();
+		shipGrid.clear();
+		torpedoes = new EntityStore();
+		obstacles.clear();
+		blocked = new OccupancyMap();
+		publishedBlocked = null;
+		
+	} // end clear
+	
+	
+	/**
+	 * Check to see if an obstacle is in front of an object of the SpaceCraft class.
+	 * 
+	 * @param craft SpaceCraft or sub-class to check against the obstacles
+	 * @param forward true if checking for obstacles in front of craft. false if
+	 * checking for obstacles behind.
+	 * @return true if the position is clear, false otherwise
+	 */
+	public boolean obstacleClear(SpaceCraft craft, boolean forward) {
+		
+		return obstacleClear( craft.getXPosition(), craft.getYPosition(), craft.getHeading(), forward );
+		
+	} // end obstacleClear
+	
+	
+	/**
+	 * Check to see if an obstacle is in front of a position.
+	 * 
+	 * @param x x position
+	 * @param y y position
+	 * @param heading heading at the position
+	 * @param forward true if checking for obstacles in front of the position. 
+	 * false if checking for obstacles behind.
+	 * @return true if the position is clear, false otherwise
+	 */
+	public boolean obstacleClear(int x, int y, int heading, boolean forward) {
+		
+		int direction = (forward)? OwnSpaceCraft.INCREMENT : -OwnSpaceCraft.INCREMENT;
+
+		// Create hypothetical position
+		int xObs = x + Constants.dx( heading ) * direction;
+		int yObs = y + Constants.dy( heading ) * direction;
+
+		// Look the hypothetical position up in the map of blocked positions
+		if ( blocked.covers( xObs, yObs ) ) {
+			
+			return !blocked.isBlocked( xObs, yObs );
+		}
+
+		// Check a position off the map against all obstacles
+		for ( int i = 0; i < obstacles.size(); i++ ) {
+
+			Obstacle obs = obstacles.get( i );
+
+			if (Math.abs(obs.getXPosition() - xObs) < OccupancyMap.CLEARANCE
+					&& Math.abs(obs.getYPosition() - yObs) < OccupancyMap.CLEARANCE) {
+
+				// "Obstacle in path";
+				return false;
+			}
+		}
+
+		// "Path clear of obstacles"
+		return true;
+
+	} // end obstacleClear
+	
+	
+	
+	/*
+	 * Checks for collision between two SpaceCraft or sub-types.
+	 * 
+	 * @param first ship for collision check
+	 * @param seconds ship for collision check
+	 * @return true if the ships are in collision
+	 */
+	protected boolean inCollision(SpaceCraft sp1, SpaceCraft sp2)
+	{
+		return inCollision( sp1.getXPosition(), sp1.getYPosition(), 
+				sp2.getXPosition(), sp2.getYPosition() );
+		
+	} // end inCollision
+	
+	
+	/*
+	 * Checks for collision between two objects at the given positions.
+	 * 
+	 * @return true if the objects are in collision
+	 */
+	protected static boolean inCollision(int x1, int y1, int x2, int y2)
+	{
+		int diffX = x1 - x2;
+		int diffY = y1 - y2;
+		
+		// Compare squared distances so no square root is needed
+		return diffX * diffX + diffY * diffY <= COLLISION_DISTANCE_SQUARED;
+		
+	} // end inCollision
+	
+	
+	/*
+	 * Checks one object against a list of candidates held by a store and 
+	 * finds the first it is in collision with.
+	 * 
+	 * @param x x position of the object
+	 * @param y y position of the object
+	 * @param store store holding the candidates
+	 * @param ids session IDs of the candidates
+	 * @param count number of candidates
+	 * @param ignore session ID of a candidate to skip
+	 * @return position in ids of the first candidate in collision or -1 
+	 * if there is none
+	 */
+	protected static int firstCollision(int x, int y, EntityStore store, int ids[], int count, int ignore)
+	{
+		for ( int i = 0; i < count; i++ ) {
+			
+			if ( ids[i] != ignore ) {
+			
+				int index = store.indexOf( ids[i] );
+				int diffX = store.x[index] - x;
+				int diffY = store.y[index] - y;
+				
+				if ( diffX * diffX + diffY * diffY <= COLLISION_DISTANCE_SQUARED ) {
+					return i;
+				}
+			}
+		}
+		
+		return -1;
+		
+	} // end firstCollision
+	
+	
+	/*
+	 * Checks if two SpaceCraft or sub-types have opposing headings
+	 * 
+	 * @param first ship 
+	 * @param seconds ship 
+	 * @returns true if the ships face each other
+	 */
+	protected boolean opposingHeading( SpaceCraft sp1, SpaceCraft sp2)
+	{	
+		return opposingHeading( sp1.getHeading(), sp2.getHeading() );
+		
+	} // end opposingHeading
+	
+	
+	/*
+	 * Checks if two headings are opposed
+	 * 
+	 * @returns true if objects with the headings face each other
+	 */
+	protected boolean opposingHeading( int heading1, int heading2 )
+	{	
+		if (Math.abs(heading1 - heading2) == 4) {
+
+
+			return true;
+		}
+		else {
+			return false;
+		}
+		
+	} // end opposingHeading
+	
+} // end SectorModel class
@@ -19,10 +19,17 @@ public class ServerGUI extends Frame {
 	 */
 	private static final long serialVersionUID = 1L;
 
-	public ServerGUI(Sector sector) {
+	/**
+	 * Creates and shows a window holding a view of the game state.
+	 * 
+	 * @param model state of the game tracked by the server
+	 */
+	public ServerGUI(SectorModel model) {
 
 		super("Space War Server View");
 		
+		Sector sector = new Sector( model );
+		
 		this.setTitle("Space War Server View");
 		
 		sector.setPreferredSize(new Dimension(Constants.MAX_SECTOR_X, Constants.MAX_SECTOR_Y));
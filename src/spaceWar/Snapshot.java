@@ -0,0 +1,208 @@
+package spaceWar;
+
+import java.util.Arrays;
+
+/**
+ * State of the ships and torpedoes a client is shown at one update of
+ * the game. Each entity is a key made from its session ID and whether it
+ * is a torpedo, and a state holding its x position, y position and
+ * heading packed into an int the same way as a Protocol record. Entities
+ * are kept sorted by key so two snapshots can be compared in one pass.
+ *
+ * Snapshots are reused. The arrays only grow.
+ */
+public class Snapshot
+{
+	/**
+	 * Flag set in the key of a torpedo
+	 */
+	public static final int TORPEDO = 1 << 16;
+
+	/**
+	 * Sequence number of the snapshot. Zero for a snapshot that holds nothing
+	 * and has not been sent.
+	 */
+	public int seq = 0;
+
+	/**
+	 * Number of entities in the snapshot
+	 */
+	public int count = 0;
+
+	/**
+	 * Keys and states of the entities. Only the first count are used.
+	 */
+	public int keys[] = new int[64];
+	public int states[] = new int[64];
+
+	// Used when sorting
+	protected long scratch[] = new long[0];
+
+
+	/**
+	 * Empties the snapshot and gives it a sequence number.
+	 *
+	 * @param seq sequence number
+	 */
+	public void reset( int seq )
+	{
+		this.seq = seq;
+		this.count = 0;
+
+	} // end reset
+
+
+	/**
+	 * Appends an entity. Entities must be added in order of their keys
+	 * unless sort is called afterwards.
+	 *
+	 * @param key key of the entity
+	 * @param state packed state of the entity
+	 */
+	public void add( int key, int state )
+	{
+		if ( count == keys.length ) {
+
+			keys = Arrays.copyOf( keys, count * 2 );
+			states = Arrays.copyOf( states, count * 2 );
+		}
+
+		keys[count] = key;
+		states[count] = state;
+		count++;
+
+	} // end add
+
+
+	/**
+	 * Appends a ship or torpedo.
+	 *
+	 * @param craft entity to add
+	 */
+	public void add( SpaceCraft craft )
+	{
+		add( key( craft ), state( craft.xPosition, craft.yPosition, craft.heading ) );
+
+	} // end add
+
+
+	/**
+	 * Sorts the entities by key.
+	 */
+	public void sort()
+	{
+		if ( scratch.length < count ) {
+			scratch = new long[ keys.length ];
+		}
+
+		// Keys are never negative, so sorting key and state packed into 
+		// a long sorts by key
+		for ( int i = 0; i < count; i++ ) {
+			scratch[i] = (long) keys[i] << 32 | ( states[i] & 0xFFFFFFFFL );
+		}
+
+		Arrays.sort( scratch, 0, count );
+
+		for ( int i = 0; i < count; i++ ) {
+
+			keys[i] = (int) ( scratch[i] >>> 32 );
+			states[i] = (int) scratch[i];
+		}
+
+	} // end sort
+
+
+	/**
+	 * Makes this snapshot a copy of another.
+	 *
+	 * @param other snapshot to copy
+	 */
+	public void copy( Snapshot other )
+	{
+		reset( other.seq );
+
+		for ( int i = 0; i < other.count; i++ ) {
+			add( other.keys[i], other.states[i] );
+		}
+
+	} // end copy
+
+
+	/**
+	 * Key of a ship or torpedo.
+	 *
+	 * @param craft entity
+	 * @return key
+	 */
+	public static int key( SpaceCraft craft )
+	{
+		return ( craft instanceof Torpedo ) ? craft.ID | TORPEDO : craft.ID;
+
+	} // end key
+
+
+	/**
+	 * Packs a position and heading into a state.
+	 *
+	 * @param x x position
+	 * @param y y position
+	 * @param heading heading from 1 to 8
+	 * @return packed state
+	 */
+	public static int state( int x, int y, int heading )
+	{
+		return x << 16 | ( y & Protocol.MAX_Y ) << 3 | ( heading - 1 ) & 7;
+
+	} // end state
+
+
+	/**
+	 * Session ID held in a key.
+	 */
+	public static int id( int key )
+	{
+		return key & Protocol.MAX_SESSION_ID;
+
+	} // end id
+
+
+	/**
+	 * True if a key is that of a torpedo.
+	 */
+	public static boolean isTorpedo( int key )
+	{
+		return ( key & TORPEDO ) != 0;
+
+	} // end isTorpedo
+
+
+	/**
+	 * X position held in a state.
+	 */
+	public static int x( int state )
+	{
+		return state >>> 16;
+
+	} // end x
+
+
+	/**
+	 * Y position held in a state.
+	 */
+	public static int y( int state )
+	{
+		return ( state >>> 3 ) & Protocol.MAX_Y;
+
+	} // end y
+
+
+	/**
+	 * Heading held in a state.
+	 */
+	public static int heading( int state )
+	{
+		return ( state & 7 ) + 1;
+
+	} // end heading
+
+} // end Snapshot class
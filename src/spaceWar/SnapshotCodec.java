@@ -0,0 +1,320 @@
+package spaceWar;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes a snapshot as the changes from an earlier snapshot the client
+ * is known to hold, its baseline, and rebuilds the snapshot from the
+ * baseline and the changes. Without a baseline the changes are made from
+ * an empty snapshot.
+ *
+ * Each changed entity is written as a flags byte followed by its 16 bit
+ * session ID and the fields that differ from the baseline. Positions that
+ * moved less than 128 pixels are written as a one byte difference, others
+ * as a short. A heading is one byte. Entities that are in the baseline
+ * but not in the snapshot are written with the REMOVED flag and no fields.
+ * Entities that have not changed are not written at all. Changes are
+ * written in order of key.
+ *
+ * A snapshot too large for one datagram is split into fragments. Every
+ * fragment starts with a header holding the version, the SNAPSHOT code,
+ * the sequence numbers of the snapshot and of its baseline, the index of
+ * the fragment and the number of fragments. The changes are split at any
+ * byte and are decoded once all fragments have been joined.
+ */
+public class SnapshotCodec
+{
+	/**
+	 * Flags of a change
+	 */
+	public static final int TORPEDO = 0x01;
+	public static final int REMOVED = 0x02;
+	public static final int X = 0x04;
+	public static final int X_DIFFERENCE = 0x08;
+	public static final int Y = 0x10;
+	public static final int Y_DIFFERENCE = 0x20;
+	public static final int HEADING = 0x40;
+
+	/**
+	 * Size in bytes of the header of each fragment
+	 */
+	public static final int HEADER_SIZE = Protocol.HEADER_SIZE + 10;
+
+	/**
+	 * Number of bytes of changes carried by a fragment
+	 */
+	public static final int FRAGMENT_SIZE = Constants.MAX_DATAGRAM_SIZE - HEADER_SIZE;
+
+	/**
+	 * Largest number of fragments in a snapshot
+	 */
+	public static final int MAX_FRAGMENTS = 255;
+
+	/**
+	 * Largest size in bytes of one change
+	 */
+	public static final int MAX_CHANGE_SIZE = 8;
+
+
+	/**
+	 * Writes the changes that turn a baseline into a snapshot.
+	 *
+	 * @param base baseline known to the client. Null to send everything.
+	 * @param current snapshot to encode
+	 * @param changes buffer the changes are written to. Must have room for
+	 * MAX_CHANGE_SIZE bytes for every entity in both snapshots.
+	 * @return number of changes written
+	 */
+	public static int encode( Snapshot base, Snapshot current, ByteBuffer changes )
+	{
+		int written = 0;
+		int b = 0, c = 0;
+		int baseCount = ( base == null ) ? 0 : base.count;
+
+		while ( b < baseCount || c < current.count ) {
+
+			int baseKey = ( b < baseCount ) ? base.keys[b] : Integer.MAX_VALUE;
+			int key = ( c < current.count ) ? current.keys[c] : Integer.MAX_VALUE;
+
+			if ( baseKey < key ) {
+
+				// No longer in the snapshot
+				putKey( changes, baseKey, REMOVED );
+				b++;
+				written++;
+			}
+			else if ( baseKey == key ) {
+
+				// Only changed entities are written
+				if ( base.states[b] != current.states[c] ) {
+
+					putChange( changes, key, base.states[b], current.states[c] );
+					written++;
+				}
+				b++;
+				c++;
+			}
+			else {
+
+				// New entity. Written as a change from an all zero state.
+				putChange( changes, key, 0, current.states[c] );
+				c++;
+				written++;
+			}
+		}
+
+		return written;
+
+	} // end encode
+
+
+	/**
+	 * Rebuilds a snapshot from its baseline and changes.
+	 *
+	 * @param base baseline the changes were made against. Null if they were
+	 * made against an empty snapshot.
+	 * @param changes buffer holding the changes from its position to its limit
+	 * @param out snapshot to rebuild into. Its sequence number is not changed.
+	 * @return true if the changes were well formed
+	 */
+	public static boolean decode( Snapshot base, ByteBuffer changes, Snapshot out )
+	{
+		out.count = 0;
+
+		int b = 0;
+		int baseCount = ( base == null ) ? 0 : base.count;
+
+		try {
+
+			while ( changes.hasRemaining() ) {
+
+				int flags = changes.get() & 0xFF;
+				int key = ( changes.getShort() & 0xFFFF ) | ( ( flags & TORPEDO ) != 0 ? Snapshot.TORPEDO : 0 );
+
+				// Entities before the change did not change
+				while ( b < baseCount && base.keys[b] < key ) {
+
+					out.add( base.keys[b], base.states[b] );
+					b++;
+				}
+
+				int state = 0;
+
+				if ( b < baseCount && base.keys[b] == key ) {
+
+					state = base.states[b];
+					b++;
+				}
+
+				if ( ( flags & REMOVED ) == 0 ) {
+					out.add( key, getFields( changes, flags, state ) );
+				}
+			}
+
+		} catch ( BufferUnderflowException e ) {
+
+			return false;
+		}
+
+		// Entities after the last change did not change
+		while ( b < baseCount ) {
+
+			out.add( base.keys[b], base.states[b] );
+			b++;
+		}
+
+		return true;
+
+	} // end decode
+
+
+	/**
+	 * Writes the header of a fragment.
+	 *
+	 * @param buffer buffer holding the datagram
+	 * @param seq sequence number of the snapshot
+	 * @param baseSeq sequence number of the baseline. Zero if there is none.
+	 * @param fragment index of the fragment
+	 * @param fragments number of fragments in the snapshot
+	 */
+	public static void putHeader( ByteBuffer buffer, int seq, int baseSeq, int fragment, int fragments )
+	{
+		Protocol.putHeader( buffer, Constants.SNAPSHOT );
+		buffer.putInt( seq );
+		buffer.putInt( baseSeq );
+		buffer.put( (byte) fragment );
+		buffer.put( (byte) fragments );
+
+	} // end putHeader
+
+
+	/**
+	 * Reads the sequence number of a received fragment.
+	 */
+	public static int getSeq( ByteBuffer buffer )
+	{
+		return buffer.getInt( Protocol.HEADER_SIZE );
+
+	} // end getSeq
+
+
+	/**
+	 * Reads the baseline sequence number of a received fragment.
+	 */
+	public static int getBaseSeq( ByteBuffer buffer )
+	{
+		return buffer.getInt( Protocol.HEADER_SIZE + 4 );
+
+	} // end getBaseSeq
+
+
+	/**
+	 * Reads the index of a received fragment.
+	 */
+	public static int getFragment( ByteBuffer buffer )
+	{
+		return buffer.get( Protocol.HEADER_SIZE + 8 ) & 0xFF;
+
+	} // end getFragment
+
+
+	/**
+	 * Reads the number of fragments of the snapshot of a received fragment.
+	 */
+	public static int getFragments( ByteBuffer buffer )
+	{
+		return buffer.get( Protocol.HEADER_SIZE + 9 ) & 0xFF;
+
+	} // end getFragments
+
+
+	/**
+	 * Writes the flags and session ID of a change.
+	 */
+	protected static void putKey( ByteBuffer changes, int key, int flags )
+	{
+		if ( Snapshot.isTorpedo( key ) ) {
+			flags |= TORPEDO;
+		}
+
+		changes.put( (byte) flags );
+		changes.putShort( (short) Snapshot.id( key ) );
+
+	} // end putKey
+
+
+	/**
+	 * Writes a change holding the fields that differ between two states.
+	 */
+	protected static void putChange( ByteBuffer changes, int key, int from, int to )
+	{
+		int dx = Snapshot.x( to ) - Snapshot.x( from );
+		int dy = Snapshot.y( to ) - Snapshot.y( from );
+		int flags = 0;
+
+		if ( dx != 0 ) {
+			flags |= ( dx >= Byte.MIN_VALUE && dx <= Byte.MAX_VALUE ) ? X | X_DIFFERENCE : X;
+		}
+
+		if ( dy != 0 ) {
+			flags |= ( dy >= Byte.MIN_VALUE && dy <= Byte.MAX_VALUE ) ? Y | Y_DIFFERENCE : Y;
+		}
+
+		if ( Snapshot.heading( to ) != Snapshot.heading( from ) ) {
+			flags |= HEADING;
+		}
+
+		putKey( changes, key, flags );
+
+		if ( ( flags & X_DIFFERENCE ) != 0 ) {
+			changes.put( (byte) dx );
+		}
+		else if ( ( flags & X ) != 0 ) {
+			changes.putShort( (short) Snapshot.x( to ) );
+		}
+
+		if ( ( flags & Y_DIFFERENCE ) != 0 ) {
+			changes.put( (byte) dy );
+		}
+		else if ( ( flags & Y ) != 0 ) {
+			changes.putShort( (short) Snapshot.y( to ) );
+		}
+
+		if ( ( flags & HEADING ) != 0 ) {
+			changes.put( (byte) Snapshot.heading( to ) );
+		}
+
+	} // end putChange
+
+
+	/**
+	 * Reads the fields of a change and applies them to a state.
+	 */
+	protected static int getFields( ByteBuffer changes, int flags, int state )
+	{
+		int x = Snapshot.x( state ), y = Snapshot.y( state ), heading = Snapshot.heading( state );
+
+		if ( ( flags & X_DIFFERENCE ) != 0 ) {
+			x += changes.get();
+		}
+		else if ( ( flags & X ) != 0 ) {
+			x = changes.getShort() & 0xFFFF;
+		}
+
+		if ( ( flags & Y_DIFFERENCE ) != 0 ) {
+			y += changes.get();
+		}
+		else if ( ( flags & Y ) != 0 ) {
+			y = changes.getShort() & 0xFFFF;
+		}
+
+		if ( ( flags & HEADING ) != 0 ) {
+			heading = changes.get();
+		}
+
+		return Snapshot.state( x, y, heading );
+
+	} // end getFields
+
+} // end SnapshotCodec class
@@ -0,0 +1,266 @@
+package spaceWar;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rebuilds the snapshots sent by the server and shows them in a sector.
+ * Fragments are joined, the changes are applied to the baseline they were
+ * made against and the result is kept so that it can serve as the
+ * baseline of later snapshots. Only the changes between the snapshot
+ * shown last and a newer one are made to the sector. Snapshots that
+ * arrive out of order are kept but not shown. A relay passing the
+ * snapshots on gives no sector and reads the snapshot shown instead.
+ *
+ * Used by the one thread receiving game play messages.
+ */
+public class SnapshotReceiver
+{
+	/**
+	 * Number of snapshots kept as baselines. The server does not make
+	 * changes against a snapshot further back than this.
+	 */
+	public static final int HISTORY = 32;
+
+	// Rebuilt snapshots indexed by sequence number modulo HISTORY
+	protected Snapshot history[] = new Snapshot[ HISTORY ];
+
+	// Spare snapshot rebuilt into before it replaces one in the history
+	protected Snapshot decoded = new Snapshot();
+
+	// Snapshot shown in the sector
+	protected Snapshot shown = new Snapshot();
+
+	// Fragments of the snapshot being joined
+	protected int joiningSeq = 0, joiningBaseSeq, fragmentsExpected, fragmentsReceived;
+	protected boolean haveFragment[] = new boolean[ SnapshotCodec.MAX_FRAGMENTS ];
+	protected byte fragmentData[][] = new byte[ SnapshotCodec.MAX_FRAGMENTS ][];
+	protected int fragmentLength[] = new int[ SnapshotCodec.MAX_FRAGMENTS ];
+
+	// Changes of a snapshot made of several fragments
+	protected ByteBuffer joined = ByteBuffer.allocate( SnapshotCodec.FRAGMENT_SIZE * 4 );
+
+
+	/**
+	 * Creates a receiver with no snapshots.
+	 */
+	public SnapshotReceiver()
+	{
+		for ( int i = 0; i < HISTORY; i++ ) {
+			history[i] = new Snapshot();
+		}
+
+	} // end SnapshotReceiver constructor
+
+
+	/**
+	 * Handles a received fragment. Once the snapshot is complete it is
+	 * rebuilt and, if it is newer than the one shown, shown in the sector.
+	 *
+	 * @param datagram received fragment starting at index 0
+	 * @param length number of bytes received
+	 * @param sector sector to show snapshots in. May be null.
+	 * @return sequence number of a snapshot to acknowledge. Zero if none
+	 * has been completed.
+	 */
+	public int receive( ByteBuffer datagram, int length, Sector sector )
+	{
+		if ( length < SnapshotCodec.HEADER_SIZE ) {
+			return 0;
+		}
+
+		int seq = SnapshotCodec.getSeq( datagram );
+		int baseSeq = SnapshotCodec.getBaseSeq( datagram );
+		int fragment = SnapshotCodec.getFragment( datagram );
+		int fragments = SnapshotCodec.getFragments( datagram );
+
+		if ( fragments == 0 || fragment >= fragments ) {
+			return 0;
+		}
+
+		// Most snapshots fit in one datagram and are decoded in place
+		if ( fragments == 1 ) {
+
+			datagram.limit( length ).position( SnapshotCodec.HEADER_SIZE );
+			int ack = rebuild( seq, baseSeq, datagram, sector );
+			datagram.clear();
+
+			return ack;
+		}
+
+		// A newer snapshot replaces an unfinished one. Older ones are dropped.
+		if ( seq != joiningSeq ) {
+
+			if ( seq < joiningSeq ) {
+				return 0;
+			}
+
+			joiningSeq = seq;
+			joiningBaseSeq = baseSeq;
+			fragmentsExpected = fragments;
+			fragmentsReceived = 0;
+
+			for ( int i = 0; i < fragments; i++ ) {
+				haveFragment[i] = false;
+			}
+		}
+
+		if ( haveFragment[fragment] ) {
+			return 0;
+		}
+
+		if ( fragmentData[fragment] == null ) {
+			fragmentData[fragment] = new byte[ SnapshotCodec.FRAGMENT_SIZE ];
+		}
+
+		fragmentLength[fragment] = Math.min( length - SnapshotCodec.HEADER_SIZE, SnapshotCodec.FRAGMENT_SIZE );
+		datagram.position( SnapshotCodec.HEADER_SIZE );
+		datagram.get( fragmentData[fragment], 0, fragmentLength[fragment] );
+		datagram.clear();
+
+		haveFragment[fragment] = true;
+
+		if ( ++fragmentsReceived < fragmentsExpected ) {
+			return 0;
+		}
+
+		// Join the fragments in order
+		if ( joined.capacity() < fragmentsExpected * SnapshotCodec.FRAGMENT_SIZE ) {
+			joined = ByteBuffer.allocate( fragmentsExpected * SnapshotCodec.FRAGMENT_SIZE );
+		}
+
+		joined.clear();
+
+		for ( int i = 0; i < fragmentsExpected; i++ ) {
+			joined.put( fragmentData[i], 0, fragmentLength[i] );
+		}
+
+		joined.flip();
+
+		return rebuild( joiningSeq, joiningBaseSeq, joined, sector );
+
+	} // end receive
+
+
+	/**
+	 * Applies changes to their baseline, keeps the result and shows it if
+	 * it is newer than the snapshot shown.
+	 *
+	 * @return sequence number of the rebuilt snapshot. Zero if the
+	 * baseline is no longer held or the changes are malformed.
+	 */
+	protected int rebuild( int seq, int baseSeq, ByteBuffer changes, Sector sector )
+	{
+		Snapshot base = null;
+
+		if ( baseSeq != 0 ) {
+
+			base = history[ baseSeq % HISTORY ];
+
+			if ( base.seq != baseSeq ) {
+				return 0;
+			}
+		}
+
+		if ( !SnapshotCodec.decode( base, changes, decoded ) ) {
+			return 0;
+		}
+
+		decoded.seq = seq;
+
+		// Keep the snapshot as a possible baseline
+		Snapshot replaced = history[ seq % HISTORY ];
+		history[ seq % HISTORY ] = decoded;
+		decoded = replaced;
+
+		if ( seq > shown.seq ) {
+			show( history[ seq % HISTORY ], sector );
+		}
+
+		return seq;
+
+	} // end rebuild
+
+
+	/**
+	 * Accessor for the newest snapshot rebuilt. Only valid until the next
+	 * call to receive.
+	 *
+	 * @return snapshot shown, with sequence number zero before the first
+	 */
+	public Snapshot shown()
+	{
+		return shown;
+
+	} // end shown
+
+
+	/**
+	 * Makes the changes between the snapshot shown and a newer one to the
+	 * sector and remembers the newer one as shown.
+	 */
+	protected void show( Snapshot next, Sector sector )
+	{
+		int s = 0, n = 0;
+
+		while ( sector != null && ( s < shown.count || n < next.count ) ) {
+
+			int shownKey = ( s < shown.count ) ? shown.keys[s] : Integer.MAX_VALUE;
+			int key = ( n < next.count ) ? next.keys[n] : Integer.MAX_VALUE;
+
+			if ( shownKey < key ) {
+
+				remove( shownKey, sector );
+				s++;
+			}
+			else {
+
+				if ( shownKey != key || shown.states[s] != next.states[n] ) {
+					update( key, next.states[n], sector );
+				}
+
+				if ( shownKey == key ) {
+					s++;
+				}
+				n++;
+			}
+		}
+
+		shown.copy( next );
+
+	} // end show
+
+
+	/**
+	 * Adds or updates an entity in the sector.
+	 */
+	protected void update( int key, int state, Sector sector )
+	{
+		int id = Snapshot.id( key );
+
+		if ( Snapshot.isTorpedo( key ) ) {
+			sector.updateOrAddTorpedo( id, Snapshot.x( state ), Snapshot.y( state ), Snapshot.heading( state ) );
+		}
+		else {
+			sector.updateOrAddSpaceCraft( id, Snapshot.x( state ), Snapshot.y( state ), Snapshot.heading( state ) );
+		}
+
+	} // end update
+
+
+	/**
+	 * Removes an entity from the sector.
+	 */
+	protected void remove( int key, Sector sector )
+	{
+		int id = Snapshot.id( key );
+
+		if ( Snapshot.isTorpedo( key ) ) {
+			sector.removeTorpedo( id, 0, 0, 1 );
+		}
+		else {
+			sector.removeSpaceCraft( id, 0, 0, 1 );
+		}
+
+	} // end remove
+
+} // end SnapshotReceiver class
@@ -1,13 +1,12 @@
 package spaceWar;
 import java.awt.Color;
 import java.awt.Graphics;
-import java.net.InetSocketAddress;
 import java.util.Random;
 
 /**
  * Super class for all moving objects in the space game. Uniquely identifies each 
- * Spacecraft using a IP address and a port number. Maintains position and 
- * heading state for SpaceCraft objects.
+ * Spacecraft using the session ID the server assigned its owner. Maintains 
+ * position and heading state for SpaceCraft objects.
  * 
  * @author bachmaer
  * @author opyrchal
@@ -15,16 +14,16 @@ import java.util.Random;
 public class SpaceCraft 
 {
 	/**
-	 * IP address and port used to uniquely identify the SpaceCraft
+	 * Session ID used to uniquely identify the SpaceCraft
 	 */
-	public InetSocketAddress ID = null;
+	public int ID;
 	
 	// Two dimensional position of the SpaceCraft
 	int xPosition, yPosition;
 	
 	// Current heading of the SpaceCraft
 	int heading;
-
+	
 	// Position change increment 
 	static final int INCREMENT = Constants.INCREMENT; 
 		
@@ -35,11 +34,9 @@ public class SpaceCraft
 	 * Creates SpaceCraft with random position and heading.
 	 *
 	 */
-	public SpaceCraft( InetSocketAddress owner )
+	public SpaceCraft( int owner )
 	{
-		this.ID = new InetSocketAddress( 
-					owner.getAddress(),
-					owner.getPort());
+		this.ID = owner;
 		
 		this.heading = rand.nextInt(8) + 1;
 		
@@ -52,16 +49,14 @@ public class SpaceCraft
 	/**
 	 * Creates an AlienSpaceCraft with the values of the input parameters.
 	 * 
-	 * @param ID IP address and port associated with the ship
+	 * @param ID session ID associated with the ship
 	 * @param x position of the ship
 	 * @param y position of the ship
 	 * @param heading of the ship
 	 */
-	public SpaceCraft( InetSocketAddress ID, int x, int y, int heading )
+	public SpaceCraft( int ID, int x, int y, int heading )
 	{
-		this.ID 
-		= new InetSocketAddress( ID.getAddress(), 
-								 ID.getPort() );
+		this.ID = ID;
 		
 		this.setHeading( heading );
 	
@@ -86,17 +81,16 @@ public class SpaceCraft
 
 
 	/**
-	 * Checks to see if this SpaceCraft has the same ID and port number
-	 * as the input parameter.
+	 * Checks to see if this SpaceCraft has the same ID as the input parameter.
 	 * 
 	 * @param subject SpaceCraft being checked for equality
 	 * 
-	 * @return true if the SpaceCraft have same ID and port, false otherwise
+	 * @return true if the SpaceCraft have same ID, false otherwise
 	 */
 	public boolean equals( SpaceCraft subject)
 	{
 
-		return ( this.ID.equals(subject.ID) );
+		return ( this.ID == subject.ID );
 		
 	} // end equals
 	
@@ -181,82 +175,7 @@ public class SpaceCraft
 	 */
 	public boolean moveAhead(int inc)
 	{		
-		int possibleX = xPosition;
-		int possibleY = yPosition;
-		
-		switch (heading) {
-		
-		case Constants.NORTH:
-		
-			possibleY = ( possibleY - inc > 0 ) ? possibleY - inc : 0; 
-		
-		break;
-		
-		case Constants.NORTH_EAST:
-			
-			possibleX = ( possibleX + inc < Constants.MAX_SECTOR_X ) 
-						  ? possibleX + inc :  Constants.MAX_SECTOR_X;
-			possibleY = ( possibleY - inc > 0 ) ? possibleY - inc : 0; 
-		
-		break;
-		
-		case Constants.EAST:
-		
-			possibleX = ( possibleX + inc < Constants.MAX_SECTOR_X ) 
-				? possibleX + inc :  Constants.MAX_SECTOR_X;
-		
-		break;	
-		
-		case Constants.SOUTH_EAST:
-			
-			possibleX = ( possibleX + inc < Constants.MAX_SECTOR_X ) 
-				? possibleX + inc :  Constants.MAX_SECTOR_X;
-			possibleY = ( possibleY + inc < Constants.MAX_SECTOR_Y  ) 
-				? possibleY + inc : Constants.MAX_SECTOR_Y; 
-		
-		break;		
-		
-		case Constants.SOUTH:
-		
-			possibleY = ( possibleY + inc < Constants.MAX_SECTOR_Y  ) 
-				? possibleY + inc : Constants.MAX_SECTOR_Y; 
-		
-		break;	
-		
-		case Constants.SOUTH_WEST:
-			
-			possibleX = ( possibleX - inc > 0) ? possibleX - inc : 0;
-			possibleY = ( possibleY + inc < Constants.MAX_SECTOR_Y  ) 
-				? possibleY + inc : Constants.MAX_SECTOR_Y; 
-		
-		break;	
-		
-		case Constants.WEST:
-		
-			possibleX = ( possibleX - inc > 0) ? possibleX - inc : 0;
-		
-		break;
-		
-		case Constants.NORTH_WEST:
-			
-			possibleX = ( possibleX - inc > 0) ? possibleX - inc : 0;
-			possibleY = ( possibleY - inc > 0 ) ? possibleY - inc : 0;
-		break;
-		
-		default:
-		
-			System.err.println( "Illegal Heading");
-		break;	
-		}
-		
-		if (possibleX == xPosition && possibleY == yPosition ){
-			return false;
-		}
-		else {
-			xPosition = possibleX;
-			yPosition = possibleY;
-			return true;
-		}
+		return moveBy( Constants.dx( heading ) * inc, Constants.dy( heading ) * inc );
 			
 	} // end moveAhead
 	
@@ -268,74 +187,23 @@ public class SpaceCraft
 	 */
 	public boolean moveBack(int inc)
 	{		
-		int possibleX = xPosition;
-		int possibleY = yPosition;
-		
-		switch (heading) {
-		
-		case Constants.NORTH:
-		
-			possibleY = ( possibleY + inc < Constants.MAX_SECTOR_Y  ) 
-				? possibleY + inc : Constants.MAX_SECTOR_Y; 
-		
-		break;
-		
-		case Constants.NORTH_EAST:
-			
-			possibleX = ( possibleX - inc > 0) ? possibleX - inc : 0;
-			possibleY = ( possibleY + inc < Constants.MAX_SECTOR_Y  ) 
-				? possibleY + inc : Constants.MAX_SECTOR_Y; 
-		
-		break;
-		
-		case Constants.EAST:
-		
-			possibleX = ( possibleX - inc > 0) ? possibleX - inc : 0;
-		
-		break;	
-		
-		case Constants.SOUTH_EAST:
-			
-			possibleX = ( possibleX - inc > 0) ? possibleX - inc : 0;
-			possibleY = ( possibleY - inc > 0 ) ? possibleY - inc : 0;
-		
-		break;		
-		
-		case Constants.SOUTH:
-		
-			possibleY = ( possibleY - inc > 0 ) ? possibleY - inc : 0; 
-		
-		break;	
-		
-		case Constants.SOUTH_WEST:
-			
-			possibleX = ( possibleX + inc < Constants.MAX_SECTOR_X ) 
-			  ? possibleX + inc :  Constants.MAX_SECTOR_X;
-			possibleY = ( possibleY - inc > 0 ) ? possibleY - inc : 0; 
-		
-		break;	
-		
-		case Constants.WEST:
-		
-			possibleX = ( possibleX + inc < Constants.MAX_SECTOR_X ) 
-				? possibleX + inc :  Constants.MAX_SECTOR_X;
+		return moveBy( -Constants.dx( heading ) * inc, -Constants.dy( heading ) * inc );
 			
-		break;
-		
-		case Constants.NORTH_WEST:
-			
-			possibleX = ( possibleX + inc < Constants.MAX_SECTOR_X ) 
-				? possibleX + inc :  Constants.MAX_SECTOR_X;
-			possibleY = ( possibleY + inc < Constants.MAX_SECTOR_Y  ) 
-				? possibleY + inc : Constants.MAX_SECTOR_Y; 
-			
-		break;
-		
-		default:
-		
-			System.err.println( "Illegal Heading");
-		break;	
-		}
+	} // end moveBack
+	
+	
+	/**
+	 * Moves the SpaceCraft by an offset. Spacecraft is stopped at the 
+	 * edge of the world.
+	 * 
+	 * @param dx change in x position
+	 * @param dy change in y position
+	 * @return false if the SpaceCraft could not move. true otherwise.
+	 */
+	protected boolean moveBy(int dx, int dy)
+	{
+		int possibleX = clamp( xPosition + dx, Constants.MAX_SECTOR_X );
+		int possibleY = clamp( yPosition + dy, Constants.MAX_SECTOR_Y );
 		
 		if (possibleX == xPosition && possibleY == yPosition ){
 			return false;
@@ -345,8 +213,30 @@ public class SpaceCraft
 			yPosition = possibleY;
 			return true;
 		}
-			
-	} // end moveBack
+		
+	} // end moveBy
+	
+	
+	/**
+	 * Keeps a position between zero and a maximum without branching, so 
+	 * loops stepping many objects at once are not slowed by mispredicted 
+	 * jumps.
+	 * 
+	 * @param value position to clamp
+	 * @param max largest position allowed
+	 * @return value limited to 0 to max
+	 */
+	static int clamp( int value, int max )
+	{
+		// Zero if negative. The shift fills with the sign bit.
+		value &= ~( value >> 31 );
+		
+		// Add the negative excess if above max
+		int under = max - value;
+		
+		return value + ( under & ( under >> 31 ) );
+		
+	} // end clamp
 	
 	
 	/**
@@ -411,6 +301,23 @@ public class SpaceCraft
 	 * @param craftColor color in which the spacecraft is to be rendered
 	 */
 	protected void draw( Graphics g, Color craftColor )
+	{
+		draw( g, craftColor, xPosition, yPosition, heading );
+	
+	} // end draw
+	
+	
+	/**
+	 * Renders a space craft at a position using a specified color. Used 
+	 * to draw from a RenderFrame without a SpaceCraft object.
+	 * 
+	 * @param g Graphical render context
+	 * @param craftColor color in which the spacecraft is to be rendered
+	 * @param xPosition x position
+	 * @param yPosition y position
+	 * @param heading heading
+	 */
+	public static void draw( Graphics g, Color craftColor, int xPosition, int yPosition, int heading )
 	{
 		int halfWidth = Constants.OBJECT_WIDTH / 2;
 		
@@ -485,7 +392,7 @@ public class SpaceCraft
 	 */
 	public String toString(){
 	
-		return "Address: " + ID + " heading: " 
+		return "ID: " + ID + " heading: " 
 				+ heading + " x: " + xPosition + " y: " + yPosition;
 
 	} // end toString
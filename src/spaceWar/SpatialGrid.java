@@ -0,0 +1,261 @@
+package spaceWar;
+
+import java.util.Arrays;
+
+/**
+ * Uniform bucket grid over the sector used to find ships that are 
+ * close enough to collide. Cells are Constants.OBJECT_WIDTH wide, which
+ * is the collision distance, so anything that can touch a position is 
+ * in the cell holding that position or in one of the eight around it.
+ * 
+ * Ships are filed by session ID. The grid remembers the cell each ID was
+ * filed under so that moving or removing it only touches that cell. The 
+ * grid is not synchronized. It is used by the thread owning the 
+ * SectorModel that holds it.
+ */
+public class SpatialGrid 
+{
+	/**
+	 * Width and height of each cell
+	 */
+	public static final int CELL_SIZE = Constants.OBJECT_WIDTH;
+	
+	// Number of cells across and down the sector. Positions on the far
+	// edges of the sector get their own column and row.
+	protected final int columns = Constants.MAX_SECTOR_X / CELL_SIZE + 1;
+	protected final int rows = Constants.MAX_SECTOR_Y / CELL_SIZE + 1;
+	
+	// Session IDs filed under each cell and the number used in each. 
+	// Row major order.
+	protected int cells[][];
+	protected int cellCounts[];
+	
+	// Cell each session ID is filed under plus one. Zero when it is not
+	// in the grid.
+	protected int cellOf[] = new int[64];
+	
+	// Session IDs found by the last call to neighbours
+	protected int found[] = new int[16];
+	
+	
+	/**
+	 * Creates an empty grid covering the sector.
+	 */
+	public SpatialGrid()
+	{
+		cells = new int[ columns * rows ][];
+		cellCounts = new int[ columns * rows ];
+		
+		for ( int i = 0; i < cells.length; i++ ) {
+			cells[i] = new int[2];
+		}
+		
+	} // end SpatialGrid constructor
+	
+	
+	/**
+	 * Files a ship under the cell holding a position.
+	 * 
+	 * @param id session ID of the ship
+	 * @param x horizontal position
+	 * @param y vertical position
+	 */
+	public void insert( int id, int x, int y )
+	{
+		if ( id >= cellOf.length ) {
+			cellOf = Arrays.copyOf( cellOf, Integer.highestOneBit( id ) << 1 );
+		}
+		
+		int cell = cellIndex( x, y );
+		
+		if ( cellCounts[cell] == cells[cell].length ) {
+			cells[cell] = Arrays.copyOf( cells[cell], cellCounts[cell] * 2 );
+		}
+		
+		cells[cell][ cellCounts[cell]++ ] = id;
+		cellOf[id] = cell + 1;
+		
+	} // end insert
+	
+	
+	/**
+	 * Refiles a ship after its position has changed. Nothing is 
+	 * done if it is still in the same cell.
+	 * 
+	 * @param id session ID of the ship
+	 * @param x new horizontal position
+	 * @param y new vertical position
+	 */
+	public void move( int id, int x, int y )
+	{
+		if ( id >= cellOf.length || cellIndex( x, y ) + 1 != cellOf[id] ) {
+			
+			remove( id );
+			insert( id, x, y );
+		}
+		
+	} // end move
+	
+	
+	/**
+	 * Removes a ship from the grid.
+	 * 
+	 * @param id session ID of the ship
+	 */
+	public void remove( int id )
+	{
+		if ( id >= cellOf.length || cellOf[id] == 0 ) {
+			return;
+		}
+		
+		int cell = cellOf[id] - 1;
+		int ids[] = cells[cell];
+		
+		// Cells hold very few ships. Swap the last one into the
+		// removed slot.
+		for ( int i = 0; i < cellCounts[cell]; i++ ) {
+			
+			if ( ids[i] == id ) {
+				
+				ids[i] = ids[ --cellCounts[cell] ];
+				break;
+			}
+		}
+		
+		cellOf[id] = 0;
+		
+	} // end remove
+	
+	
+	/**
+	 * Collects the session IDs of every ship in the cell holding a 
+	 * position and in the cells around it. They are read from 
+	 * found() and stay there until the next call.
+	 * 
+	 * @param x horizontal position
+	 * @param y vertical position
+	 * @return the number of ships found
+	 */
+	public int neighbours( int x, int y )
+	{
+		int count = 0;
+		
+		int column = clamp( x / CELL_SIZE, columns );
+		int row = clamp( y / CELL_SIZE, rows );
+		
+		int lastColumn = Math.min( column + 1, columns - 1 );
+		int lastRow = Math.min( row + 1, rows - 1 );
+		
+		for ( int r = Math.max( row - 1, 0 ); r <= lastRow; r++ ) {
+			
+			for ( int c = Math.max( column - 1, 0 ); c <= lastColumn; c++ ) {
+				
+				int cell = r * columns + c;
+				
+				if ( count + cellCounts[cell] > found.length ) {
+					found = Arrays.copyOf( found, ( count + cellCounts[cell] ) * 2 );
+				}
+				
+				System.arraycopy( cells[cell], 0, found, count, cellCounts[cell] );
+				count += cellCounts[cell];
+			}
+		}
+		
+		return count;
+		
+	} // end neighbours
+	
+	
+	/**
+	 * Accessor method for the session IDs found by the last call to
+	 * neighbours. Only the number it returned are used.
+	 * 
+	 * @return session IDs found
+	 */
+	public int[] found()
+	{
+		return found;
+		
+	} // end found
+	
+	
+	/**
+	 * Checks whether any ship filed in the cell holding a position or in
+	 * the cells around it is within a distance of the position. Unlike
+	 * neighbours it only reads the grid, so several threads may call it
+	 * at once while the grid is not being changed.
+	 *
+	 * @param x horizontal position
+	 * @param y vertical position
+	 * @param distanceSquared square of the distance
+	 * @param store store holding the positions of the ships
+	 * @param ignore session ID of a ship to skip
+	 * @return true if a ship is close enough
+	 */
+	public boolean anyWithin( int x, int y, int distanceSquared, EntityStore store, int ignore )
+	{
+		int column = clamp( x / CELL_SIZE, columns );
+		int row = clamp( y / CELL_SIZE, rows );
+
+		int lastColumn = Math.min( column + 1, columns - 1 );
+		int lastRow = Math.min( row + 1, rows - 1 );
+
+		for ( int r = Math.max( row - 1, 0 ); r <= lastRow; r++ ) {
+
+			for ( int c = Math.max( column - 1, 0 ); c <= lastColumn; c++ ) {
+
+				int cell = r * columns + c;
+				int ids[] = cells[cell];
+
+				for ( int i = 0; i < cellCounts[cell]; i++ ) {
+
+					if ( ids[i] != ignore ) {
+
+						int index = store.indexOf( ids[i] );
+						int diffX = store.x[index] - x;
+						int diffY = store.y[index] - y;
+
+						if ( diffX * diffX + diffY * diffY <= distanceSquared ) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+
+		return false;
+
+	} // end anyWithin
+
+
+	/**
+	 * Removes all ships from the grid.
+	 */
+	public void clear()
+	{
+		Arrays.fill( cellCounts, 0 );
+		Arrays.fill( cellOf, 0 );
+		
+	} // end clear
+	
+	
+	/**
+	 * Determines the index of the cell holding a position.
+	 */
+	protected int cellIndex( int x, int y )
+	{
+		return clamp( y / CELL_SIZE, rows ) * columns + clamp( x / CELL_SIZE, columns );
+		
+	} // end cellIndex
+	
+	
+	/**
+	 * Keeps a cell coordinate between zero and one less than the limit.
+	 */
+	protected static int clamp( int value, int limit )
+	{
+		return ( value < 0 ) ? 0 : ( value >= limit ) ? limit - 1 : value;
+		
+	} // end clamp
+	
+} // end SpatialGrid class
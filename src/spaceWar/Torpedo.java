@@ -2,7 +2,6 @@ package spaceWar;
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.net.InetSocketAddress;
 
 /**
  * Torpedo class. Represents a moving torpedo 
@@ -18,16 +17,20 @@ public class Torpedo extends SpaceCraft {
 	// Tracks number of times Torpedo is updated.
 	int lifeCounter = 0;
 	
+	// True if a sector reported the torpedo destroyed because the edge 
+	// of the sector stopped it while it still had range
+	boolean stoppedAtEdge = false;
+	
 	
 	/**
 	 * Creates an Torpedo with the values of the input parameters
 	 * 
-	 * @param ID IP address and port associated with the ship that fired the torpedo
+	 * @param ID session ID of the ship that fired the torpedo
 	 * @param x position of the torpedo
 	 * @param y position of the torpedo
 	 * @param heading of the torpedo
 	 */
-	public Torpedo( InetSocketAddress ID, int x, int y, int heading )
+	public Torpedo( int ID, int x, int y, int heading )
 	{
 		super( ID, x, y, heading);
 		
@@ -38,13 +41,51 @@ public class Torpedo extends SpaceCraft {
 	 * Creates Torpedo with random position and heading.
 	 *
 	 */
-	public Torpedo( InetSocketAddress owner )
+	public Torpedo( int owner )
 	{
 		super( owner );
 		
 	} // end OwnSpaceCraft constructor
 
 	
+	/**
+	 * Accessor method for the distance the torpedo has travelled.
+	 * 
+	 * @return life used so far
+	 */
+	public int getLifeCounter()
+	{
+		return lifeCounter;
+		
+	} // end getLifeCounter
+	
+	
+	/**
+	 * Checks whether the torpedo can still travel further.
+	 * 
+	 * @return true if the torpedo has not reached maximum range
+	 */
+	public boolean inRange()
+	{
+		return lifeCounter < MAX_RANGE;
+		
+	} // end inRange
+	
+	
+	/**
+	 * Checks whether the torpedo was destroyed because the edge of the 
+	 * sector stopped it, rather than by its range, an obstacle or a ship.
+	 * Only set on torpedoes reported destroyed by SectorModel.
+	 * 
+	 * @return true if the edge stopped the torpedo while it had range
+	 */
+	public boolean isStoppedAtEdge()
+	{
+		return stoppedAtEdge;
+		
+	} // end isStoppedAtEdge
+	
+	
 	/**
 	 * Updates a torpedo by moving it forward.
 	 * 
@@ -67,14 +108,99 @@ public class Torpedo extends SpaceCraft {
 	} // end update 
 	
 	
+	/**
+	 * Updates every torpedo of a store by moving it forward, the same as 
+	 * update does for one Torpedo. The step uses the direction table and 
+	 * has no branches, so the JIT can unroll it over the arrays.
+	 * 
+	 * @param torpedoes store holding the torpedoes
+	 * @param moved filled with zero for each torpedo that has reached
+	 * maximum range or the edge of the sector. Must hold torpedoes.count.
+	 */
+	static void update( EntityStore torpedoes, int moved[] )
+	{
+		for ( int i = 0; i < torpedoes.count; i++ ) {
+			
+			step( torpedoes, i, moved );
+		}
+
+	} // end update
+
+
+	/**
+	 * Updates some of the torpedoes of a store by moving them forward,
+	 * the same as update( EntityStore, int[] ) does for all of them.
+	 * Used by the regions of a sector, which step their own torpedoes
+	 * in parallel.
+	 *
+	 * @param torpedoes store holding the torpedoes
+	 * @param indices indices of the torpedoes to update
+	 * @param from first position in indices to use
+	 * @param to one past the last position in indices to use
+	 * @param moved filled at the index of each torpedo updated, as for
+	 * update( EntityStore, int[] )
+	 */
+	static void update( EntityStore torpedoes, int indices[], int from, int to, int moved[] )
+	{
+		for ( int k = from; k < to; k++ ) {
+
+			step( torpedoes, indices[k], moved );
+		}
+
+	} // end update
+
+
+	/**
+	 * Moves one torpedo of a store forward. Both forms of update step
+	 * their torpedoes here, so a sector stepped in regions moves them 
+	 * exactly as one stepped whole.
+	 *
+	 * @param torpedoes store holding the torpedo
+	 * @param i index of the torpedo
+	 * @param moved set at i to zero if the torpedo has reached maximum
+	 * range or the edge of the sector
+	 */
+	protected static void step( EntityStore torpedoes, int i, int moved[] )
+	{
+		int x = torpedoes.x[i], y = torpedoes.y[i], heading = torpedoes.heading[i];
+		int life = torpedoes.life[i] += Constants.INCREMENT;
+		
+		// One while in range. Zero once range is reached so the 
+		// torpedo stays where it is.
+		int inc = ( ( life - MAX_RANGE ) >>> 31 ) * Constants.INCREMENT;
+		
+		int newX = clamp( x + Constants.dx( heading ) * inc, Constants.MAX_SECTOR_X );
+		int newY = clamp( y + Constants.dy( heading ) * inc, Constants.MAX_SECTOR_Y );
+		
+		moved[i] = ( newX ^ x ) | ( newY ^ y );
+		
+		torpedoes.x[i] = newX;
+		torpedoes.y[i] = newY;
+
+	} // end step
+	
+	
 	
 	/**
 	 * Draws the Torpedo as a blue box.
 	 */
 	public void draw( Graphics g )
 	{
-		int quarterWidth = Constants.OBJECT_WIDTH / 2;
-		
+		draw( g, xPosition, yPosition );
+
+	} // end draw
+	
+	
+	/**
+	 * Draws a torpedo at a position as a blue box. Used to draw from a 
+	 * RenderFrame without a Torpedo object.
+	 * 
+	 * @param g Graphical render context
+	 * @param xPosition x position
+	 * @param yPosition y position
+	 */
+	public static void draw( Graphics g, int xPosition, int yPosition )
+	{
 		// Draw the spacecraft with the appropriate heading	
 		g.setColor( Color.BLUE );
 		
@@ -0,0 +1,121 @@
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import spaceWar.Constants;
+import spaceWar.Protocol;
+import spaceWar.Snapshot;
+
+/**
+ * Checks that the BestEffortServer receives ship updates and snapshot
+ * acknowledgements from a registered client and queues them for the
+ * sector without allocating, once it has warmed up. The bytes allocated
+ * by its thread are read from the JVM before and after a run of updates.
+ */
+class BestEffortAllocationTest
+{
+	// Updates sent to warm the server up and then while it is measured
+	static final int WARMUP = 50000, MEASURED = 50000;
+
+	// Updates sent before waiting for the server to catch up, so that
+	// the socket buffer does not overflow
+	static final int BURST = 100;
+
+	// Bytes the measured updates may allocate in all, far fewer than one
+	// per update
+	static final long ALLOWED_BYTES = 4096;
+
+
+	static void run() throws Exception
+	{
+		TestServer server = new TestServer( 50 );
+
+		try {
+
+			DatagramChannel channel = DatagramChannel.open();
+			channel.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+			channel.connect( new InetSocketAddress( InetAddress.getLoopbackAddress(), server.port() ) );
+
+			TestServer.Client client = server.register( channel.socket().getLocalPort() );
+			ClientSocketConnection connection = server.server.clients.get( client.sessionID );
+
+			com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			long thread = server.server.bestEffortServer.getId();
+
+			send( channel, connection, client.sessionID, WARMUP );
+
+			long before = threads.getThreadAllocatedBytes( thread );
+			send( channel, connection, client.sessionID, MEASURED );
+			long allocated = threads.getThreadAllocatedBytes( thread ) - before;
+
+			Check.that( allocated <= ALLOWED_BYTES, allocated + " bytes allocated receiving "
+					+ MEASURED + " updates" );
+
+			client.socket.close();
+			channel.close();
+
+		} finally {
+			server.stop();
+		}
+
+	} // end run
+
+
+	/**
+	 * Sends ship updates, each followed by an acknowledgement, in bursts.
+	 * After each burst waits until the server has queued the last update
+	 * of the burst.
+	 */
+	static void send( DatagramChannel channel, ClientSocketConnection connection, int id, int count )
+			throws Exception
+	{
+		ByteBuffer update = ByteBuffer.allocate( Protocol.SHIP_UPDATE_SIZE );
+		ByteBuffer ack = ByteBuffer.allocate( Protocol.ACK_SIZE );
+
+		for ( int sent = 0; sent < count; sent += BURST ) {
+
+			int x = 0;
+
+			for ( int i = 0; i < BURST; i++ ) {
+
+				x = 1 + ( sent + i ) % ( Constants.MAX_SECTOR_X - 1 );
+
+				update.clear();
+				Protocol.putHeader( update, Constants.UPDATE_SHIP );
+				Protocol.putRecord( update, id, x, 100, Constants.NORTH );
+				update.flip();
+				channel.write( update );
+
+				ack.clear();
+				Protocol.putAck( ack, id, 0 );
+				ack.flip();
+				channel.write( ack );
+			}
+
+			caughtUp( connection, Snapshot.state( x, 100, Constants.NORTH ) );
+		}
+
+	} // end send
+
+
+	/**
+	 * Waits until the last update sent has been queued. A burst that lost
+	 * its last update to a full socket buffer is given up on after a short
+	 * wait.
+	 */
+	static void caughtUp( ClientSocketConnection connection, int state ) throws Exception
+	{
+		long giveUp = System.currentTimeMillis() + 200;
+
+		while ( ( connection.move == null || connection.move.getState() != state )
+				&& System.currentTimeMillis() < giveUp ) {
+
+			Thread.sleep( 0, 100000 );
+		}
+
+	} // end caughtUp
+
+} // end BestEffortAllocationTest class
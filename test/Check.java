@@ -0,0 +1,37 @@
+/**
+ * Checks used by the tests. A check that fails throws, so a test stops
+ * at the first thing found wrong.
+ */
+class Check
+{
+	/**
+	 * Fails unless a condition holds.
+	 * 
+	 * @param condition condition that must hold
+	 * @param message what is wrong if it does not
+	 */
+	static void that( boolean condition, String message )
+	{
+		if ( !condition ) {
+			throw new AssertionError( message );
+		}
+		
+	} // end that
+	
+	
+	/**
+	 * Fails unless a value is the one expected.
+	 * 
+	 * @param expected value expected
+	 * @param actual value found
+	 * @param what what the value is
+	 */
+	static void equal( long expected, long actual, String what )
+	{
+		if ( expected != actual ) {
+			throw new AssertionError( what + ": expected " + expected + " but was " + actual );
+		}
+		
+	} // end equal
+	
+} // end Check class
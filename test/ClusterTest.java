@@ -0,0 +1,138 @@
+import spaceWar.Constants;
+
+/**
+ * Checks which side of the sector a ship or torpedo is handed over at,
+ * given which neighbours are connected. The cluster tested has no links
+ * of its own. Which sides are connected is set by the test. Also checks
+ * that a released session ID is passed along a shortest path to the
+ * server that handed it out.
+ */
+class ClusterTest
+{
+	static final int MAX_X = Constants.MAX_SECTOR_X, MAX_Y = Constants.MAX_SECTOR_Y;
+
+
+	static void run()
+	{
+		// Away from the edges nothing is handed over
+		Check.equal( -1, side( 250, 250, Constants.NORTH, Cluster.NORTH, Cluster.WEST ), "middle of the sector" );
+
+		// One side reached
+		Check.equal( Cluster.NORTH, side( 250, 0, Constants.NORTH, Cluster.NORTH ), "north edge" );
+		Check.equal( -1, side( 250, 0, Constants.NORTH, Cluster.WEST ), "north edge, no link north" );
+
+		// A ship on the outer west wall of the map flying north still 
+		// crosses the north edge
+		Check.equal( Cluster.NORTH, side( 0, 0, Constants.NORTH, Cluster.NORTH ), "north-west corner heading north" );
+		Check.equal( Cluster.SOUTH, side( 0, MAX_Y, Constants.SOUTH, Cluster.SOUTH, Cluster.EAST ),
+				"south-west corner heading south" );
+
+		// The side ahead is taken over one also reached
+		Check.equal( Cluster.NORTH, side( MAX_X, 0, Constants.NORTH, Cluster.EAST, Cluster.NORTH ),
+				"north-east corner heading north" );
+		Check.equal( Cluster.EAST, side( MAX_X, 0, Constants.EAST, Cluster.EAST, Cluster.NORTH ),
+				"north-east corner heading east" );
+
+		// Heading north-east into the corner, either side is ahead
+		Check.equal( Cluster.EAST, side( MAX_X, 0, Constants.NORTH_EAST, Cluster.EAST, Cluster.NORTH ),
+				"north-east corner heading north-east" );
+		Check.equal( Cluster.NORTH, side( MAX_X, 0, Constants.NORTH_EAST, Cluster.NORTH ),
+				"north-east corner heading north-east, no link east" );
+
+		// A side reached but not ahead is used when none ahead is connected
+		Check.equal( Cluster.WEST, side( 0, 0, Constants.NORTH, Cluster.WEST ), "north-west corner, link west only" );
+
+		route( 3, 3 );
+		route( 4, 2 );
+		route( 1, 3 );
+
+	} // end run
+
+
+	/**
+	 * Follows the sides a release is passed on at from every node of a
+	 * cluster to every other, which must take one step to a neighbour 
+	 * inside the map for each column and row between them.
+	 */
+	static void route( int columns, int rows )
+	{
+		for ( int from = 0; from < columns * rows; from++ ) {
+
+			for ( int to = 0; to < columns * rows; to++ ) {
+
+				int node = from, steps = 0;
+
+				while ( node != to ) {
+
+					Check.that( steps < columns * rows, "no way from node " + from + " to node " + to );
+
+					int column = node % columns, row = node / columns;
+
+					switch ( Cluster.sideTowards( columns, node, to ) ) {
+
+					case Cluster.WEST:
+						Check.that( column > 0, "passed west of column 0" );
+						node--;
+						break;
+
+					case Cluster.EAST:
+						Check.that( column < columns - 1, "passed east of the last column" );
+						node++;
+						break;
+
+					case Cluster.NORTH:
+						Check.that( row > 0, "passed north of row 0" );
+						node -= columns;
+						break;
+
+					default:
+						Check.that( row < rows - 1, "passed south of the last row" );
+						node += columns;
+					}
+
+					steps++;
+				}
+
+				Check.equal( Math.abs( from % columns - to % columns ) + Math.abs( from / columns - to / columns ),
+						steps, "steps from node " + from + " to node " + to + " of " + columns + "x" + rows );
+			}
+		}
+
+	} // end route
+
+
+	/**
+	 * Side a position is handed over at when only some sides are connected.
+	 */
+	static int side( int x, int y, int heading, int... connected )
+	{
+		return new Connected( connected ).sideReached( x, y, heading );
+
+	} // end side
+
+
+	// Cluster with some sides connected and no links
+	static class Connected extends Cluster
+	{
+		boolean connected[] = new boolean[4];
+
+		Connected( int sides[] )
+		{
+			super( null, 1, 1, 0 );
+
+			for ( int i = 0; i < sides.length; i++ ) {
+				connected[ sides[i] ] = true;
+			}
+
+		} // end Connected constructor
+
+
+		protected boolean isConnected( int side )
+		{
+			return connected[side];
+
+		} // end isConnected
+
+	} // end Connected class
+
+} // end ClusterTest class
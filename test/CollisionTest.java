@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+
+import spaceWar.Constants;
+import spaceWar.EntityStore;
+import spaceWar.SectorModel;
+import spaceWar.SpaceCraft;
+
+/**
+ * Checks the integer collision tests of SectorModel against the test
+ * they replaced, which took the square root of the squared distance in
+ * doubles and compared it with OBJECT_WIDTH. Every offset in a square a
+ * little wider than the collision distance is tried, so every distance
+ * on either side of the boundary is covered.
+ */
+class CollisionTest
+{
+	// Offsets tried on each axis go this far past OBJECT_WIDTH
+	static final int SPAN = Constants.OBJECT_WIDTH + 3;
+
+	// Positions the offsets are tried from, including the edges of the
+	// sector and positions either side of a boundary of the ship grid.
+	// Positions wrap at MAX_SECTOR_X and MAX_SECTOR_Y.
+	static final int CENTRES[][] = {
+		{ 250, 250 }, { 0, 0 }, { Constants.MAX_SECTOR_X - 1, Constants.MAX_SECTOR_Y - 1 },
+		{ 199, 201 }, { 200, 200 }, { 13, Constants.MAX_SECTOR_Y - 7 },
+	};
+
+
+	static void run()
+	{
+		kernel();
+		batch();
+		ships();
+
+	} // end run
+
+
+	/**
+	 * True if objects this far apart collided before the integer test.
+	 */
+	static boolean baseline( int dx, int dy )
+	{
+		double diffX = dx, diffY = dy;
+
+		return Math.sqrt( diffX * diffX + diffY * diffY ) <= Constants.OBJECT_WIDTH;
+
+	} // end baseline
+
+
+	/**
+	 * inCollision agrees with the baseline at every offset.
+	 */
+	static void kernel()
+	{
+		for ( int c = 0; c < CENTRES.length; c++ ) {
+
+			int x = CENTRES[c][0], y = CENTRES[c][1];
+
+			for ( int dx = -SPAN; dx <= SPAN; dx++ ) {
+
+				for ( int dy = -SPAN; dy <= SPAN; dy++ ) {
+
+					Check.that( Kernel.collide( x, y, x + dx, y + dy ) == baseline( dx, dy ),
+							"inCollision at offset " + dx + "," + dy + " from " + x + "," + y );
+				}
+			}
+		}
+
+	} // end kernel
+
+
+	/**
+	 * firstCollision, given every offset as a candidate, finds the first
+	 * candidate the baseline finds, with and without skipping it.
+	 */
+	static void batch()
+	{
+		int x = 250, y = 250;
+
+		EntityStore store = new EntityStore();
+		int side = 2 * SPAN + 1;
+		int ids[] = new int[side * side];
+
+		// Candidates are listed from the furthest to the nearest, so the
+		// first in collision is on the boundary
+		int count = 0;
+
+		for ( int ring = SPAN; ring >= 0; ring-- ) {
+
+			for ( int dx = -ring; dx <= ring; dx++ ) {
+
+				for ( int dy = -ring; dy <= ring; dy++ ) {
+
+					if ( Math.max( Math.abs( dx ), Math.abs( dy ) ) == ring ) {
+
+						ids[count] = count + 1;
+						store.set( store.add( count + 1 ), x + dx, y + dy, Constants.NORTH );
+						count++;
+					}
+				}
+			}
+		}
+
+		for ( int i = 0; i < count; i++ ) {
+
+			int index = store.indexOf( ids[i] );
+			boolean hit = baseline( store.x[index] - x, store.y[index] - y );
+
+			// Each candidate alone
+			int single[] = { ids[i] };
+
+			Check.equal( hit ? 0 : -1, Kernel.first( x, y, store, single, 1, -1 ),
+					"firstCollision with candidate " + ids[i] + " alone" );
+
+			// The rest of the list from this candidate on, and the rest
+			// of the list skipping this candidate
+			int first = -1, firstSkipping = -1;
+
+			for ( int j = i; j < count && ( first < 0 || firstSkipping < 0 ); j++ ) {
+
+				int other = store.indexOf( ids[j] );
+
+				if ( baseline( store.x[other] - x, store.y[other] - y ) ) {
+
+					if ( first < 0 ) {
+						first = j;
+					}
+					if ( firstSkipping < 0 && j != i ) {
+						firstSkipping = j;
+					}
+				}
+			}
+
+			int rest[] = new int[count - i];
+			System.arraycopy( ids, i, rest, 0, count - i );
+
+			Check.equal( ( first < 0 ) ? -1 : first - i, Kernel.first( x, y, store, rest, count - i, -1 ),
+					"firstCollision from candidate " + ids[i] );
+			Check.equal( ( firstSkipping < 0 ) ? -1 : firstSkipping - i,
+					Kernel.first( x, y, store, rest, count - i, ids[i] ),
+					"firstCollision skipping candidate " + ids[i] );
+		}
+
+	} // end batch
+
+
+	/**
+	 * collisionCheck, which finds its candidates through the ship grid,
+	 * agrees with the baseline for two ships at every offset.
+	 */
+	static void ships()
+	{
+		for ( int c = 0; c < CENTRES.length; c++ ) {
+
+			int x = CENTRES[c][0], y = CENTRES[c][1];
+
+			for ( int dx = -SPAN; dx <= SPAN; dx++ ) {
+
+				for ( int dy = -SPAN; dy <= SPAN; dy++ ) {
+
+					int otherX = x + dx, otherY = y + dy;
+
+					if ( otherX < 0 || otherX >= Constants.MAX_SECTOR_X
+							|| otherY < 0 || otherY >= Constants.MAX_SECTOR_Y ) {
+						continue;
+					}
+
+					SectorModel sector = new SectorModel();
+
+					// Not head on, so only the ship hit is destroyed
+					sector.updateOrAddSpaceCraft( 1, x, y, Constants.NORTH );
+					sector.updateOrAddSpaceCraft( 2, otherX, otherY, Constants.NORTH );
+
+					ArrayList<SpaceCraft> destroyed = sector.collisionCheck( 1 );
+
+					Check.that( ( destroyed != null ) == baseline( dx, dy ),
+							"collisionCheck at offset " + dx + "," + dy + " from " + x + "," + y );
+				}
+			}
+		}
+
+	} // end ships
+
+
+	// Reaches the collision tests, which only subclasses of SectorModel
+	// can call from outside its package
+	static class Kernel extends SectorModel
+	{
+		static boolean collide( int x1, int y1, int x2, int y2 )
+		{
+			return inCollision( x1, y1, x2, y2 );
+
+		} // end collide
+
+
+		static int first( int x, int y, EntityStore store, int ids[], int count, int ignore )
+		{
+			return firstCollision( x, y, store, ids, count, ignore );
+
+		} // end first
+
+	} // end Kernel class
+
+} // end CollisionTest class
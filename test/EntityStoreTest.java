@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import spaceWar.EntityStore;
+
+/**
+ * Checks that an EntityStore keeps every entity's fields and lookup by
+ * session ID intact while entities are removed by moving the last one
+ * into their place.
+ */
+class EntityStoreTest
+{
+	static void run()
+	{
+		swapRemove();
+		randomOperations();
+		
+	} // end run
+	
+	
+	/**
+	 * Removing an entity moves the last one into its index, and removing
+	 * the last one moves nothing.
+	 */
+	static void swapRemove()
+	{
+		EntityStore store = new EntityStore();
+		
+		for ( int id = 1; id <= 4; id++ ) {
+			
+			int index = store.add( id );
+			store.set( index, 10 * id, 20 * id, id );
+		}
+		
+		store.remove( store.indexOf( 2 ) );
+		
+		Check.equal( 3, store.count, "entities left" );
+		Check.equal( 1, store.indexOf( 4 ), "index of the entity moved" );
+		Check.equal( 40, store.x[1], "x of the entity moved" );
+		Check.equal( 80, store.y[1], "y of the entity moved" );
+		Check.equal( 4, store.heading[1], "heading of the entity moved" );
+		Check.that( !store.contains( 2 ), "removed entity still held" );
+		
+		store.remove( store.indexOf( 3 ) );
+		
+		Check.equal( 2, store.count, "entities left" );
+		Check.equal( 0, store.indexOf( 1 ), "index of the first entity" );
+		Check.equal( 1, store.indexOf( 4 ), "index of the moved entity" );
+		
+		store.remove( 0 );
+		store.remove( 0 );
+		
+		Check.equal( 0, store.count, "entities left" );
+		Check.that( !store.contains( 1 ) && !store.contains( 4 ), "entity held by an empty store" );
+		
+	} // end swapRemove
+	
+	
+	/**
+	 * Random adds and removes, growing the store well past its first
+	 * size and using the largest session IDs, leave it holding exactly
+	 * the entities a map would.
+	 */
+	static void randomOperations()
+	{
+		Random random = new Random( 18 );
+		EntityStore store = new EntityStore();
+		HashMap<Integer, int[]> expected = new HashMap<Integer, int[]>();
+		ArrayList<Integer> held = new ArrayList<Integer>();
+		
+		for ( int step = 0; step < 100000; step++ ) {
+			
+			if ( held.isEmpty() || random.nextInt( 5 ) < 3 ) {
+				
+				int id = 1 + random.nextInt( 0xFFFF );
+				
+				if ( expected.containsKey( id ) ) {
+					continue;
+				}
+				
+				int fields[] = { 1 + random.nextInt( 498 ), 1 + random.nextInt( 498 ), 
+						1 + random.nextInt( 8 ), random.nextInt( 100 ), random.nextInt( 100 ) };
+				
+				int index = store.add( id );
+				store.set( index, fields[0], fields[1], fields[2] );
+				store.life[index] = fields[3];
+				store.owner[index] = fields[4];
+				
+				expected.put( id, fields );
+				held.add( id );
+			}
+			else {
+				
+				int id = held.remove( random.nextInt( held.size() ) );
+				
+				store.remove( store.indexOf( id ) );
+				expected.remove( id );
+			}
+			
+			if ( step % 1000 == 0 ) {
+				same( expected, store );
+			}
+		}
+		
+		same( expected, store );
+		
+	} // end randomOperations
+	
+	
+	/**
+	 * Fails unless a store holds exactly the entities of a map, each with
+	 * its fields, found at its index by session ID.
+	 */
+	static void same( HashMap<Integer, int[]> expected, EntityStore store )
+	{
+		Check.equal( expected.size(), store.count, "entities held" );
+		
+		for ( int i = 0; i < store.count; i++ ) {
+			
+			int id = store.id[i];
+			int fields[] = expected.get( id );
+			
+			Check.that( fields != null, "entity " + id + " held after it was removed" );
+			Check.equal( i, store.indexOf( id ), "index of entity " + id );
+			Check.equal( fields[0], store.x[i], "x of entity " + id );
+			Check.equal( fields[1], store.y[i], "y of entity " + id );
+			Check.equal( fields[2], store.heading[i], "heading of entity " + id );
+			Check.equal( fields[3], store.life[i], "life of entity " + id );
+			Check.equal( fields[4], store.owner[i], "owner of entity " + id );
+		}
+		
+	} // end same
+	
+} // end EntityStoreTest class
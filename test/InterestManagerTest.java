@@ -0,0 +1,201 @@
+import java.util.Random;
+
+import spaceWar.Constants;
+import spaceWar.Snapshot;
+
+/**
+ * Checks that the InterestManager brings ships into view at the view
+ * radius and only drops them past the view radius plus the hysteresis,
+ * and that the views it keeps up to date through its grid match what
+ * checking every pair of ships would give.
+ */
+class InterestManagerTest
+{
+	static final int RADIUS = 100, HYSTERESIS = 20;
+	
+	
+	static void run()
+	{
+		hysteresis();
+		randomWalk();
+		selection();
+		
+	} // end run
+	
+	
+	/**
+	 * A ship moving away stays in view until it passes the leave distance,
+	 * and coming back only enters view again inside the view radius.
+	 */
+	static void hysteresis()
+	{
+		InterestManager interest = new InterestManager( RADIUS, HYSTERESIS );
+		ClientSocketConnection a = client( interest, 1 ), b = client( interest, 2 );
+		
+		interest.update( 1, 200, 200, Constants.EAST );
+		interest.update( 2, 290, 200, Constants.EAST );
+		Check.that( a.visible.get( 2 ) && b.visible.get( 1 ), "ships 90 apart not in view" );
+		
+		interest.update( 2, 315, 200, Constants.EAST );
+		Check.that( a.visible.get( 2 ) && b.visible.get( 1 ), "ships 115 apart dropped inside the hysteresis" );
+		
+		interest.update( 2, 321, 200, Constants.EAST );
+		Check.that( !a.visible.get( 2 ) && !b.visible.get( 1 ), "ships 121 apart still in view" );
+		
+		interest.update( 2, 310, 200, Constants.WEST );
+		Check.that( !a.visible.get( 2 ) && !b.visible.get( 1 ), "ships 110 apart came back into view" );
+		
+		interest.update( 2, 300, 200, Constants.WEST );
+		Check.that( a.visible.get( 2 ) && b.visible.get( 1 ), "ships 100 apart not back in view" );
+		
+		interest.removeShip( 2 );
+		Check.that( !a.visible.get( 2 ), "removed ship still in view" );
+		Check.that( b.visible.isEmpty(), "client without a ship still has a view" );
+		
+	} // end hysteresis
+	
+	
+	/**
+	 * Ships walking and jumping around the sector have in view exactly the
+	 * ships the rules give when every pair is checked.
+	 */
+	static void randomWalk()
+	{
+		final int ships = 60;
+		Random random = new Random( 13 );
+		
+		InterestManager interest = new InterestManager( RADIUS, HYSTERESIS );
+		ClientSocketConnection clients[] = new ClientSocketConnection[ ships + 1 ];
+		boolean expected[][] = new boolean[ ships + 1 ][ ships + 1 ];
+		int x[] = new int[ ships + 1 ], y[] = new int[ ships + 1 ];
+		boolean inPlay[] = new boolean[ ships + 1 ];
+		
+		for ( int id = 1; id <= ships; id++ ) {
+			clients[id] = client( interest, id );
+		}
+		
+		for ( int step = 0; step < 20000; step++ ) {
+			
+			int id = 1 + random.nextInt( ships );
+			
+			if ( inPlay[id] && random.nextInt( 50 ) == 0 ) {
+				
+				interest.removeShip( id );
+				inPlay[id] = false;
+				
+				for ( int other = 1; other <= ships; other++ ) {
+					expected[id][other] = expected[other][id] = false;
+				}
+			}
+			else {
+				
+				// Mostly small moves, sometimes a jump across the sector
+				if ( !inPlay[id] || random.nextInt( 20 ) == 0 ) {
+					
+					x[id] = random.nextInt( Constants.MAX_SECTOR_X + 1 );
+					y[id] = random.nextInt( Constants.MAX_SECTOR_Y + 1 );
+				}
+				else {
+					
+					x[id] = clamp( x[id] + random.nextInt( 21 ) - 10, Constants.MAX_SECTOR_X );
+					y[id] = clamp( y[id] + random.nextInt( 21 ) - 10, Constants.MAX_SECTOR_Y );
+				}
+				
+				interest.update( id, x[id], y[id], 1 + random.nextInt( 8 ) );
+				inPlay[id] = true;
+				
+				for ( int other = 1; other <= ships; other++ ) {
+					
+					if ( other == id || !inPlay[other] ) {
+						continue;
+					}
+					
+					long dx = x[id] - x[other], dy = y[id] - y[other];
+					long distanceSq = dx * dx + dy * dy;
+					boolean seen = expected[other][id];
+					
+					if ( seen && distanceSq > (long) ( RADIUS + HYSTERESIS ) * ( RADIUS + HYSTERESIS ) ) {
+						seen = false;
+					}
+					else if ( !seen && distanceSq <= (long) RADIUS * RADIUS ) {
+						seen = true;
+					}
+					
+					expected[other][id] = expected[id][other] = seen;
+				}
+			}
+			
+			for ( int viewer = 1; viewer <= ships; viewer++ ) {
+				for ( int other = 1; other <= ships; other++ ) {
+					
+					if ( clients[viewer].visible.get( other ) != expected[viewer][other] ) {
+						
+						Check.that( false, "step " + step + ": view of " + viewer + " wrong about " + other );
+					}
+				}
+			}
+		}
+		
+	} // end randomWalk
+	
+	
+	/**
+	 * A client with a ship is sent the ships in view and the torpedoes
+	 * within the leave distance. A client without one is sent everything.
+	 */
+	static void selection()
+	{
+		InterestManager interest = new InterestManager( RADIUS, HYSTERESIS );
+		ClientSocketConnection a = client( interest, 1 ), watcher = client( interest, 3 );
+		
+		interest.update( 1, 200, 200, Constants.EAST );
+		interest.update( 2, 250, 200, Constants.EAST );
+		interest.update( 4, 400, 400, Constants.EAST );
+		
+		Snapshot world = new Snapshot();
+		world.add( 1, Snapshot.state( 200, 200, Constants.EAST ) );
+		world.add( 2, Snapshot.state( 250, 200, Constants.EAST ) );
+		world.add( 4, Snapshot.state( 400, 400, Constants.EAST ) );
+		world.add( 5 | Snapshot.TORPEDO, Snapshot.state( 200, 315, Constants.SOUTH ) );
+		world.add( 6 | Snapshot.TORPEDO, Snapshot.state( 200, 325, Constants.SOUTH ) );
+		world.sort();
+		interest.indexTorpedoes( world );
+		
+		Snapshot seen = new Snapshot();
+		interest.select( world, a, seen );
+		
+		Check.equal( 2, seen.count, "entities sent to a client with a ship" );
+		Check.equal( 2, seen.keys[0], "ship sent" );
+		Check.equal( 5 | Snapshot.TORPEDO, seen.keys[1], "torpedo sent" );
+		
+		seen.reset( 0 );
+		interest.select( world, watcher, seen );
+		Check.equal( world.count, seen.count, "entities sent to a client without a ship" );
+		
+	} // end selection
+	
+	
+	/**
+	 * Registers a client with a session ID.
+	 */
+	static ClientSocketConnection client( InterestManager interest, int id )
+	{
+		ClientSocketConnection client = new ClientSocketConnection( null, null, id, null, 1,
+				ClientSocketConnection.OverflowPolicy.DROP, 0 );
+		interest.addClient( client );
+		
+		return client;
+		
+	} // end client
+	
+	
+	/**
+	 * Keeps a position between 0 and max.
+	 */
+	static int clamp( int value, int max )
+	{
+		return Math.max( 0, Math.min( value, max ) );
+		
+	} // end clamp
+	
+} // end InterestManagerTest class
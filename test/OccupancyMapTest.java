@@ -0,0 +1,133 @@
+import java.util.Random;
+
+import spaceWar.Constants;
+import spaceWar.OccupancyMap;
+import spaceWar.RenderFrame;
+import spaceWar.SectorModel;
+
+/**
+ * Checks the occupancy map against a scan of every obstacle, which is
+ * how obstacles were probed before. The obstacles crowd the edges of the
+ * sector so that positions in the MARGIN band around it are blocked, and
+ * probes beyond the band, which the map does not cover, are answered by
+ * the scan the sector and its frames fall back to.
+ */
+class OccupancyMapTest
+{
+	static final int OBSTACLES = 60;
+
+	// Probes are made from this far past each edge of the sector
+	static final int REACH = OccupancyMap.MARGIN + 2 * Constants.INCREMENT;
+
+
+	static void run()
+	{
+		Random random = new Random( 21 );
+		int obstacleX[] = new int[OBSTACLES], obstacleY[] = new int[OBSTACLES];
+
+		OccupancyMap map = new OccupancyMap();
+		SectorModel sector = new SectorModel();
+
+		for ( int i = 0; i < OBSTACLES; i++ ) {
+
+			// Half of them within CLEARANCE of an edge
+			if ( i % 2 == 0 ) {
+
+				obstacleX[i] = random.nextInt( Constants.MAX_SECTOR_X );
+				obstacleY[i] = random.nextInt( Constants.MAX_SECTOR_Y );
+			}
+			else {
+
+				obstacleX[i] = nearEdge( random, Constants.MAX_SECTOR_X );
+				obstacleY[i] = nearEdge( random, Constants.MAX_SECTOR_Y );
+			}
+
+			map.addObstacle( obstacleX[i], obstacleY[i] );
+			sector.addObstacle( obstacleX[i], obstacleY[i] );
+		}
+
+		sector.publishFrame();
+		RenderFrame frame = sector.getFrame();
+
+		int blocked = 0, offMap = 0, offMapBlocked = 0;
+
+		for ( int x = -REACH; x <= Constants.MAX_SECTOR_X + REACH; x++ ) {
+
+			for ( int y = -REACH; y <= Constants.MAX_SECTOR_Y + REACH; y++ ) {
+
+				boolean expected = scan( obstacleX, obstacleY, x, y );
+
+				if ( map.covers( x, y ) ) {
+
+					Check.that( map.isBlocked( x, y ) == expected, "isBlocked at " + x + "," + y );
+
+					if ( expected ) {
+						blocked++;
+					}
+				}
+				else {
+
+					offMap++;
+
+					if ( expected ) {
+						offMapBlocked++;
+					}
+				}
+
+				// Probing forward from one step behind lands on the position
+				int heading = 1 + ( ( x + y ) & 7 );
+				int fromX = x - Constants.dx( heading ) * Constants.INCREMENT;
+				int fromY = y - Constants.dy( heading ) * Constants.INCREMENT;
+
+				Check.that( sector.obstacleClear( fromX, fromY, heading, true ) == !expected,
+						"SectorModel.obstacleClear at " + x + "," + y );
+				Check.that( frame.obstacleClear( fromX, fromY, heading, true ) == !expected,
+						"RenderFrame.obstacleClear at " + x + "," + y );
+
+				// As does probing backward from one step ahead
+				int aheadX = x + Constants.dx( heading ) * Constants.INCREMENT;
+				int aheadY = y + Constants.dy( heading ) * Constants.INCREMENT;
+
+				Check.that( frame.obstacleClear( aheadX, aheadY, heading, false ) == !expected,
+						"RenderFrame.obstacleClear backward at " + x + "," + y );
+			}
+		}
+
+		// Make sure the blocked and the fallback cases were both reached
+		Check.that( blocked > 0, "no position on the map blocked" );
+		Check.that( offMap > 0 && offMapBlocked > 0, "no position off the map blocked" );
+
+	} // end run
+
+
+	/**
+	 * Picks a position within CLEARANCE of either end of an axis.
+	 */
+	static int nearEdge( Random random, int max )
+	{
+		int offset = random.nextInt( OccupancyMap.CLEARANCE );
+
+		return random.nextBoolean() ? offset : max - 1 - offset;
+
+	} // end nearEdge
+
+
+	/**
+	 * True if a position is closer than CLEARANCE to an obstacle along
+	 * both axes.
+	 */
+	static boolean scan( int obstacleX[], int obstacleY[], int x, int y )
+	{
+		for ( int i = 0; i < obstacleX.length; i++ ) {
+
+			if ( Math.abs( obstacleX[i] - x ) < OccupancyMap.CLEARANCE
+					&& Math.abs( obstacleY[i] - y ) < OccupancyMap.CLEARANCE ) {
+				return true;
+			}
+		}
+
+		return false;
+
+	} // end scan
+
+} // end OccupancyMapTest class
@@ -0,0 +1,124 @@
+import java.io.DataInputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Checks what the outbound queue of a ClientSocketConnection does with
+ * frames sent while it is full. Frames are written to a real loopback 
+ * connection, so what the client receives is what it would read.
+ */
+class OutboundQueueTest
+{
+	static void run() throws Exception
+	{
+		drainBeforeStall();
+		disconnectAfterStall();
+		coalesceIsCapped();
+		
+	} // end run
+	
+	
+	/**
+	 * A client that catches up before the stall time receives every frame
+	 * sent while its queue was full.
+	 */
+	static void drainBeforeStall() throws Exception
+	{
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind( new InetSocketAddress( "127.0.0.1", 0 ) );
+		Socket client = new Socket( "127.0.0.1", server.socket().getLocalPort() );
+		SocketChannel channel = server.accept();
+		
+		// A lost frame fails the test instead of hanging it
+		client.setSoTimeout( 2000 );
+		
+		ClientSocketConnection connection = new ClientSocketConnection( channel, null, 1, null, 2,
+				ClientSocketConnection.OverflowPolicy.DISCONNECT, 60000 );
+		
+		// Nothing is written while the frames are sent
+		for ( int i = 0; i < 10; i++ ) {
+			connection.send( frame( i ) );
+		}
+		Check.that( !connection.isDisconnectRequested(), "disconnected before the stall time" );
+		
+		// The client catches up
+		Check.that( connection.flush(), "queue not written" );
+		
+		DataInputStream received = new DataInputStream( client.getInputStream() );
+		
+		for ( int i = 0; i < 10; i++ ) {
+			
+			Check.equal( 8, received.readInt(), "length of frame " + i );
+			Check.equal( 9, received.readInt(), "code of frame " + i );
+			Check.equal( i, received.readInt(), "frame" );
+		}
+		
+		client.close();
+		channel.close();
+		server.close();
+		
+	} // end drainBeforeStall
+	
+	
+	/**
+	 * A client whose queue stays full past the stall time is disconnected.
+	 */
+	static void disconnectAfterStall() throws Exception
+	{
+		ClientSocketConnection connection = new ClientSocketConnection( null, null, 1, null, 2,
+				ClientSocketConnection.OverflowPolicy.DISCONNECT, 20 );
+		
+		for ( int i = 0; i < 3; i++ ) {
+			connection.send( frame( i ) );
+		}
+		Thread.sleep( 40 );
+		connection.send( frame( 3 ) );
+		
+		Check.that( connection.isDisconnectRequested(), "stalled client not disconnected" );
+		
+	} // end disconnectAfterStall
+	
+	
+	/**
+	 * Frames merged for a full queue never grow one buffer past the cap.
+	 */
+	static void coalesceIsCapped() throws Exception
+	{
+		ClientSocketConnection connection = new ClientSocketConnection( null, null, 1, null, 1,
+				ClientSocketConnection.OverflowPolicy.COALESCE, 60000 );
+		
+		ByteBuffer big = ByteBuffer.allocate( 1000 );
+		
+		for ( int i = 0; i < 200; i++ ) {
+			connection.send( big );
+		}
+		
+		for ( ByteBuffer queued : connection.outbound ) {
+			Check.that( queued.remaining() <= ClientSocketConnection.MAX_COALESCED_BYTES, 
+					"merged buffer of " + queued.remaining() + " bytes" );
+		}
+		
+	} // end coalesceIsCapped
+	
+	
+	/**
+	 * Builds a small frame carrying a number.
+	 * 
+	 * @param number number carried
+	 * @return frame ready to be sent
+	 */
+	static ByteBuffer frame( int number )
+	{
+		ByteBuffer frame = ByteBuffer.allocate( 12 );
+		frame.putInt( 8 );
+		frame.putInt( 9 );
+		frame.putInt( number );
+		frame.flip();
+		return frame;
+		
+	} // end frame
+	
+} // end OutboundQueueTest class
@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import spaceWar.Constants;
+import spaceWar.EntityStore;
+import spaceWar.SectorModel;
+import spaceWar.SpaceCraft;
+import spaceWar.Torpedo;
+
+/**
+ * Checks that a sector stepping its torpedoes in regions on a pool ends
+ * every tick exactly as the same sector stepped on one thread: the same 
+ * ships and torpedoes at the same indices, and the same destroyed 
+ * objects reported in the same order.
+ */
+class RegionStepTest
+{
+	static final int SHIPS = 300, TORPEDOES = 6000, OBSTACLES = 200, TICKS = 60;
+	
+	// Torpedo session IDs start here so they are never a ship's
+	static final int FIRST_TORPEDO = 1000;
+	
+	
+	static void run()
+	{
+		ForkJoinPool pool = new ForkJoinPool( 4 );
+		
+		try {
+			
+			int counts[] = { 2, 3, 7 };
+			
+			for ( int i = 0; i < counts.length; i++ ) {
+				equivalence( pool, counts[i], 23 + i );
+			}
+			
+		} finally {
+			pool.shutdown();
+		}
+		
+	} // end run
+	
+	
+	/**
+	 * Steps a crowded sector with regions and without, topping the 
+	 * torpedoes up each tick so the regions stay in use, and compares 
+	 * the two after every tick.
+	 */
+	static void equivalence( ForkJoinPool pool, int regions, long seed )
+	{
+		SectorModel serial = new SectorModel(), split = new SectorModel();
+		split.stepInRegions( pool, regions );
+		
+		Random random = new Random( seed );
+		
+		for ( int i = 0; i < OBSTACLES; i++ ) {
+			
+			int x = random.nextInt( Constants.MAX_SECTOR_X ), y = random.nextInt( Constants.MAX_SECTOR_Y );
+			serial.addObstacle( x, y );
+			split.addObstacle( x, y );
+		}
+		
+		for ( int id = 1; id <= SHIPS; id++ ) {
+			place( serial, split, random, id, false );
+		}
+		
+		int nextTorpedo = FIRST_TORPEDO;
+		int destroyed = 0, stoppedAtEdge = 0;
+		
+		for ( int tick = 0; tick < TICKS; tick++ ) {
+			
+			while ( serial.heldTorpedoes().count < TORPEDOES ) {
+				place( serial, split, random, nextTorpedo++, true );
+			}
+			
+			ArrayList<SpaceCraft> expected = serial.updateTorpedoes();
+			ArrayList<SpaceCraft> actual = split.updateTorpedoes();
+			
+			String where = regions + " regions, tick " + tick;
+			
+			sameObjects( expected, actual, where );
+			sameStore( serial.heldSpaceCraft(), split.heldSpaceCraft(), "ships, " + where );
+			sameStore( serial.heldTorpedoes(), split.heldTorpedoes(), "torpedoes, " + where );
+			
+			destroyed += ( expected == null ) ? 0 : expected.size();
+			stoppedAtEdge += stoppedAtEdge( expected );
+		}
+		
+		// Make sure the comparison covered hits as well as expiry
+		Check.that( serial.heldSpaceCraft().count < SHIPS, "no ship was hit" );
+		Check.that( destroyed > TORPEDOES, "too few torpedoes destroyed" );
+		Check.that( stoppedAtEdge > 0, "no torpedo stopped at an edge" );
+		
+	} // end equivalence
+	
+	
+	/**
+	 * Counts the destroyed torpedoes stopped by the edge of the sector,
+	 * checking each is at an edge.
+	 */
+	static int stoppedAtEdge( ArrayList<SpaceCraft> destroyed )
+	{
+		int count = 0;
+		
+		for ( int i = 0; destroyed != null && i < destroyed.size(); i++ ) {
+			
+			SpaceCraft craft = destroyed.get( i );
+			
+			if ( craft instanceof Torpedo && ( (Torpedo) craft ).isStoppedAtEdge() ) {
+				
+				int x = craft.getXPosition(), y = craft.getYPosition();
+				
+				Check.that( x == 0 || y == 0 || x == Constants.MAX_SECTOR_X || y == Constants.MAX_SECTOR_Y,
+						"torpedo stopped at " + x + "," + y + " is not at an edge" );
+				count++;
+			}
+		}
+		
+		return count;
+		
+	} // end stoppedAtEdge
+	
+	
+	/**
+	 * Adds a ship or torpedo at the same random position to both sectors.
+	 */
+	static void place( SectorModel serial, SectorModel split, Random random, int id, boolean torpedo )
+	{
+		int x = 1 + random.nextInt( Constants.MAX_SECTOR_X - 1 );
+		int y = 1 + random.nextInt( Constants.MAX_SECTOR_Y - 1 );
+		int heading = 1 + random.nextInt( 8 );
+		
+		if ( torpedo ) {
+			
+			// Fired by one of the ships, which it cannot hit
+			int index = serial.updateOrAddTorpedo( id, x, y, heading );
+			serial.heldTorpedoes().owner[index] = 1 + id % SHIPS;
+			
+			index = split.updateOrAddTorpedo( id, x, y, heading );
+			split.heldTorpedoes().owner[index] = 1 + id % SHIPS;
+		}
+		else {
+			
+			serial.updateOrAddSpaceCraft( id, x, y, heading );
+			split.updateOrAddSpaceCraft( id, x, y, heading );
+		}
+		
+	} // end place
+	
+	
+	/**
+	 * Checks two lists of destroyed objects hold the same objects in the
+	 * same order.
+	 */
+	static void sameObjects( ArrayList<SpaceCraft> expected, ArrayList<SpaceCraft> actual, String where )
+	{
+		Check.that( ( expected == null ) == ( actual == null ), "destroyed list missing, " + where );
+		
+		if ( expected == null ) {
+			return;
+		}
+		
+		Check.equal( expected.size(), actual.size(), "objects destroyed, " + where );
+		
+		for ( int i = 0; i < expected.size(); i++ ) {
+			
+			SpaceCraft e = expected.get( i ), a = actual.get( i );
+			
+			Check.that( ( e instanceof Torpedo ) == ( a instanceof Torpedo ), "kind of object " + i + ", " + where );
+			
+			if ( e instanceof Torpedo ) {
+				
+				Check.that( ( (Torpedo) e ).isStoppedAtEdge() == ( (Torpedo) a ).isStoppedAtEdge(),
+						"edge stop of object " + i + ", " + where );
+			}
+
+			Check.equal( e.ID, a.ID, "ID of object " + i + ", " + where );
+			Check.equal( e.getXPosition(), a.getXPosition(), "x of object " + i + ", " + where );
+			Check.equal( e.getYPosition(), a.getYPosition(), "y of object " + i + ", " + where );
+		}
+		
+	} // end sameObjects
+	
+	
+	/**
+	 * Checks two stores hold the same entities at the same indices.
+	 */
+	static void sameStore( EntityStore expected, EntityStore actual, String what )
+	{
+		Check.equal( expected.count, actual.count, "count of " + what );
+		
+		for ( int i = 0; i < expected.count; i++ ) {
+			
+			Check.equal( expected.id[i], actual.id[i], "ID at " + i + " of " + what );
+			Check.equal( expected.x[i], actual.x[i], "x at " + i + " of " + what );
+			Check.equal( expected.y[i], actual.y[i], "y at " + i + " of " + what );
+			Check.equal( expected.heading[i], actual.heading[i], "heading at " + i + " of " + what );
+			Check.equal( expected.life[i], actual.life[i], "life at " + i + " of " + what );
+			Check.equal( expected.owner[i], actual.owner[i], "owner at " + i + " of " + what );
+		}
+		
+	} // end sameStore
+	
+} // end RegionStepTest class
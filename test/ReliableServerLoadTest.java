@@ -0,0 +1,303 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import spaceWar.Constants;
+
+/**
+ * Puts the selector loop of a headless server under load from many
+ * registered clients firing torpedoes over their connections, and
+ * reports how many fire events it handles a second. While they fire, one
+ * more client fires torpedoes straight off the edge of the sector, one at
+ * a time. The server destroys each in the tick after it applies the fire
+ * and sends its removal to every client in the room, so the time from
+ * sending FIRED_TORPEDO to reading that removal gives the p99 latency of
+ * handling a fire event on the loaded loop. It includes the wait for the
+ * next tick, which is kept short.
+ *
+ * The firing clients leave with EXIT. Clients that reset their connection
+ * instead must be dropped from the server and their room all the same,
+ * which is checked on a server of its own, where no removals are sent
+ * that could reveal a client that is not dropped.
+ */
+class ReliableServerLoadTest
+{
+	// Firing clients and the clients that reset their connection
+	static final int CLIENTS = 50, RESETTING = 10;
+
+	// Fire frames written together by a client
+	static final int BATCH = 10;
+
+	// Torpedoes fired off the edge while the others fire
+	static final int PROBES = 200;
+
+	// Length of a tick of the loaded server
+	static final int TICK_MILLIS = 5;
+
+	// Fewest fire events a second the loop must handle
+	static final double MIN_RATE = 1000;
+
+
+	static void run() throws Exception
+	{
+		// Snapshots for every client are sent here and never read
+		DatagramChannel snapshots = DatagramChannel.open();
+		snapshots.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+
+		try {
+			load( snapshots.socket().getLocalPort() );
+			reset( snapshots.socket().getLocalPort() );
+
+		} finally {
+			snapshots.close();
+		}
+
+	} // end run
+
+
+	/**
+	 * Measures the loop under load from the firing clients.
+	 * 
+	 * @param port port the clients are sent snapshots on
+	 */
+	static void load( int port ) throws Exception
+	{
+		TestServer server = new TestServer( TICK_MILLIS );
+
+		// The server reports every client coming and going, and every
+		// client that went away before it could be written to
+		PrintStream out = System.out, err = System.err;
+		System.setOut( new PrintStream( OutputStream.nullOutputStream() ) );
+		System.setErr( new PrintStream( OutputStream.nullOutputStream() ) );
+
+		try {
+
+			TestServer.Client clients[] = new TestServer.Client[CLIENTS];
+
+			for ( int i = 0; i < CLIENTS; i++ ) {
+				clients[i] = server.register( port );
+			}
+
+			TestServer.Client probe = server.register( port );
+
+			Thread firing[] = new Thread[CLIENTS];
+			final Exception failure[] = new Exception[1];
+			final AtomicLong fired = new AtomicLong();
+			final AtomicBoolean probing = new AtomicBoolean( true );
+			long start = System.nanoTime();
+
+			for ( int i = 0; i < CLIENTS; i++ ) {
+
+				final TestServer.Client client = clients[i];
+
+				firing[i] = new Thread() {
+					public void run() {
+
+						try {
+							fired.addAndGet( fire( client, probing, false ) );
+
+						} catch ( Exception e ) {
+							failure[0] = e;
+						}
+					}
+				};
+				firing[i].start();
+			}
+
+			long latencies[] = new long[PROBES];
+
+			try {
+
+				for ( int i = 0; i < PROBES; i++ ) {
+					latencies[i] = probe( probe );
+				}
+
+			} finally {
+				probing.set( false );
+			}
+
+			for ( int i = 0; i < CLIENTS; i++ ) {
+				firing[i].join();
+			}
+
+			Check.that( failure[0] == null, "client failed: " + failure[0] );
+
+			probe.send( Constants.EXIT );
+			probe.socket.close();
+
+			// Every fire of a client is handled before its EXIT
+			gone( server );
+			long took = System.nanoTime() - start;
+
+			Check.equal( 0, server.server.rooms.get( 0 ).clients.snapshot().length, "clients left in the room" );
+
+			double rate = fired.get() * 1e9 / took;
+			Arrays.sort( latencies );
+
+			out.println( String.format( "  %.0f fire events/s, p99 fire latency %.2f ms",
+					rate, latencies[PROBES * 99 / 100] / 1e6 ) );
+
+			Check.that( rate >= MIN_RATE, "only " + rate + " fire events/s" );
+
+		} finally {
+
+			System.setOut( out );
+			System.setErr( err );
+			server.stop();
+		}
+
+	} // end load
+
+
+	/**
+	 * Fires a torpedo off the west edge of the sector and waits for the
+	 * server to remove it.
+	 * 
+	 * @param client client firing. Has no other torpedo in the sector.
+	 * @return nanoseconds from sending the fire to reading the removal
+	 */
+	static long probe( TestServer.Client client ) throws Exception
+	{
+		long sent = System.nanoTime();
+
+		client.out.writeInt( 16 );
+		client.out.writeInt( Constants.FIRED_TORPEDO );
+		client.out.writeInt( 0 );
+		client.out.writeInt( Constants.MAX_SECTOR_Y / 2 );
+		client.out.writeInt( Constants.WEST );
+		client.out.flush();
+
+		// Removals of the other clients' torpedoes come in between
+		while ( true ) {
+
+			int length = client.in.readInt();
+
+			if ( client.in.readInt() != Constants.REMOVE_BATCH ) {
+
+				client.in.skipBytes( length - 4 );
+				continue;
+			}
+
+			boolean removed = false;
+
+			for ( int count = client.in.readInt(); count > 0; count-- ) {
+
+				int kind = client.in.readByte();
+				int id = client.in.readUnsignedShort();
+
+				removed |= ( kind == Constants.REMOVE_TORPEDO && id == client.sessionID );
+			}
+
+			if ( removed ) {
+				return System.nanoTime() - sent;
+			}
+		}
+
+	} // end probe
+
+
+	/**
+	 * Registers clients that reset their connection without firing, as 
+	 * a torpedo expiring would send a removal.
+	 * 
+	 * @param port port the clients are sent snapshots on
+	 */
+	static void reset( int port ) throws Exception
+	{
+		TestServer server = new TestServer( 50 );
+
+		PrintStream out = System.out, err = System.err;
+		System.setOut( new PrintStream( OutputStream.nullOutputStream() ) );
+		System.setErr( new PrintStream( OutputStream.nullOutputStream() ) );
+
+		try {
+
+			TestServer.Client clients[] = new TestServer.Client[RESETTING];
+
+			for ( int i = 0; i < RESETTING; i++ ) {
+				clients[i] = server.register( port );
+			}
+
+			for ( int i = 0; i < RESETTING; i++ ) {
+				fire( clients[i], new AtomicBoolean(), true );
+			}
+
+			gone( server );
+			Check.equal( 0, server.server.rooms.get( 0 ).clients.snapshot().length, "reset clients left in the room" );
+
+		} finally {
+
+			System.setOut( out );
+			System.setErr( err );
+			server.stop();
+		}
+
+	} // end reset
+
+
+	/**
+	 * Fires a client's torpedoes in batches of frames for as long as the
+	 * flag stays set, then leaves with EXIT or by resetting the connection.
+	 * 
+	 * @return number of torpedoes fired
+	 */
+	static long fire( TestServer.Client client, AtomicBoolean firing, boolean reset ) throws Exception
+	{
+		ByteBuffer batch = ByteBuffer.allocate( 20 * BATCH );
+
+		for ( int i = 0; i < BATCH; i++ ) {
+
+			batch.putInt( 16 );
+			batch.putInt( Constants.FIRED_TORPEDO );
+			batch.putInt( 100 + i );
+			batch.putInt( 100 );
+			batch.putInt( Constants.NORTH );
+		}
+
+		long fired = 0;
+
+		for ( ; firing.get(); fired += BATCH ) {
+			client.out.write( batch.array() );
+		}
+		client.out.flush();
+
+		if ( reset ) {
+
+			// Closing with a linger time of zero resets the connection
+			client.socket.setSoLinger( true, 0 );
+		}
+		else {
+
+			client.send( Constants.EXIT );
+		}
+		client.socket.close();
+
+		return fired;
+
+	} // end fire
+
+
+	/**
+	 * Waits until the server has no clients left. Fails if some are
+	 * still there after a few seconds.
+	 */
+	static void gone( TestServer server ) throws Exception
+	{
+		long giveUp = System.currentTimeMillis() + 5000;
+
+		while ( server.server.clients.snapshot().length > 0 ) {
+
+			Check.that( System.currentTimeMillis() < giveUp,
+					server.server.clients.snapshot().length + " clients never removed" );
+			Thread.sleep( 1 );
+		}
+
+	} // end gone
+
+} // end ReliableServerLoadTest class
@@ -0,0 +1,49 @@
+/**
+ * Runs every test and reports the ones that fail. Each test is a class
+ * with a static run method that throws when a check fails. Exits with
+ * status 1 if any test failed.
+ */
+public class RunTests
+{
+	// Tests that are run, in order
+	static final String TESTS[] = {
+		"OutboundQueueTest",
+		"SnapshotCodecTest",
+		"InterestManagerTest",
+		"EntityStoreTest",
+		"RegionStepTest",
+		"BestEffortAllocationTest",
+		"ReliableServerLoadTest",
+		"CollisionTest",
+		"OccupancyMapTest",
+		"ClusterTest",
+	};
+	
+	
+	public static void main( String[] args ) throws Exception
+	{
+		int failed = 0;
+		
+		for ( int i = 0; i < TESTS.length; i++ ) {
+			
+			try {
+				
+				Class.forName( TESTS[i] ).getDeclaredMethod( "run" ).invoke( null );
+				System.out.println( "PASS " + TESTS[i] );
+				
+			} catch ( java.lang.reflect.InvocationTargetException e ) {
+				
+				System.out.println( "FAIL " + TESTS[i] + ": " + e.getCause() );
+				failed++;
+			}
+		}
+		
+		System.out.println( ( TESTS.length - failed ) + " of " + TESTS.length + " tests passed." );
+		
+		if ( failed > 0 ) {
+			System.exit( 1 );
+		}
+		
+	} // end main
+	
+} // end RunTests class
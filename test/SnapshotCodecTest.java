@@ -0,0 +1,281 @@
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Random;
+
+import spaceWar.Constants;
+import spaceWar.Protocol;
+import spaceWar.Snapshot;
+import spaceWar.SnapshotCodec;
+import spaceWar.SnapshotReceiver;
+
+/**
+ * Checks that snapshots encoded as changes from a baseline are rebuilt
+ * exactly, both by the codec alone and sent by a SnapshotBroadcaster over
+ * a loopback socket to a SnapshotReceiver acknowledging them.
+ */
+class SnapshotCodecTest
+{
+	// Session ID of the client sent snapshots. Never in a snapshot.
+	static final int CLIENT_ID = Protocol.MAX_SESSION_ID;
+	
+	// Same snapshots on every run
+	static Random random = new Random( 14 );
+	
+	
+	static void run() throws Exception
+	{
+		roundTrip();
+		truncatedChanges();
+		broadcastRoundTrip();
+		
+	} // end run
+	
+	
+	/**
+	 * Changes from any baseline, or from none, rebuild the snapshot.
+	 */
+	static void roundTrip()
+	{
+		ByteBuffer changes = ByteBuffer.allocate( 64 * 1024 );
+		Snapshot rebuilt = new Snapshot();
+		
+		for ( int i = 0; i < 500; i++ ) {
+			
+			Snapshot base = randomSnapshot( random.nextInt( 300 ) );
+			Snapshot current = evolve( base );
+			
+			changes.clear();
+			SnapshotCodec.encode( base, current, changes );
+			changes.flip();
+			
+			Check.that( SnapshotCodec.decode( base, changes, rebuilt ), "changes not decoded" );
+			same( current, rebuilt, "rebuilt from baseline" );
+			
+			changes.clear();
+			SnapshotCodec.encode( null, current, changes );
+			changes.flip();
+			
+			Check.that( SnapshotCodec.decode( null, changes, rebuilt ), "snapshot not decoded" );
+			same( current, rebuilt, "rebuilt without baseline" );
+			
+			// Nothing is written for a snapshot equal to its baseline
+			changes.clear();
+			Check.equal( 0, SnapshotCodec.encode( current, current, changes ), "changes to itself" );
+		}
+		
+	} // end roundTrip
+	
+	
+	/**
+	 * Changes cut short in the middle of a change are rejected.
+	 */
+	static void truncatedChanges()
+	{
+		Snapshot current = new Snapshot();
+		current.add( 7, Snapshot.state( 300, 200, Constants.EAST ) );
+		
+		ByteBuffer changes = ByteBuffer.allocate( 64 );
+		SnapshotCodec.encode( null, current, changes );
+		changes.flip();
+		changes.limit( changes.limit() - 1 );
+		
+		Check.that( !SnapshotCodec.decode( null, changes, new Snapshot() ), "truncated changes decoded" );
+		
+	} // end truncatedChanges
+	
+	
+	/**
+	 * Snapshots sent by a broadcaster are rebuilt by a receiver, including
+	 * ones split into fragments and ones made after an acknowledgement
+	 * was lost.
+	 */
+	static void broadcastRoundTrip() throws Exception
+	{
+		DatagramSocket sender = new DatagramSocket( 0, InetAddress.getLoopbackAddress() );
+		DatagramSocket receiver = new DatagramSocket( 0, InetAddress.getLoopbackAddress() );
+		receiver.setReceiveBufferSize( 1 << 20 );
+		receiver.setSoTimeout( 2000 );
+		
+		ClientSocketConnection client = new ClientSocketConnection( null, 
+				(InetSocketAddress) receiver.getLocalSocketAddress(), CLIENT_ID, null, 1,
+				ClientSocketConnection.OverflowPolicy.DROP, 0 );
+		
+		SnapshotBroadcaster broadcaster = new SnapshotBroadcaster( null );
+		SnapshotReceiver snapshots = new SnapshotReceiver();
+		
+		ByteBuffer buffer = ByteBuffer.allocate( Constants.MAX_DATAGRAM_SIZE );
+		DatagramPacket packet = new DatagramPacket( buffer.array(), Constants.MAX_DATAGRAM_SIZE );
+		
+		// Large enough to need several fragments
+		Snapshot world = randomSnapshot( 1500 );
+		boolean deltaSeen = false;
+		
+		for ( int round = 0; round < 20; round++ ) {
+			
+			broadcaster.relay( world, new ClientSocketConnection[] { client }, sender );
+			
+			int acknowledged = 0;
+			
+			while ( acknowledged == 0 ) {
+				
+				packet.setLength( Constants.MAX_DATAGRAM_SIZE );
+				receiver.receive( packet );
+				
+				deltaSeen |= SnapshotCodec.getBaseSeq( buffer ) != 0;
+				acknowledged = snapshots.receive( buffer, packet.getLength(), null );
+			}
+			
+			same( world, snapshots.shown(), "snapshot " + acknowledged );
+			
+			// Every third acknowledgement is lost
+			if ( round % 3 != 2 ) {
+				client.acknowledge( acknowledged );
+			}
+			
+			world = evolve( world );
+		}
+		
+		Check.that( deltaSeen, "no snapshot was sent as changes" );
+		
+		sender.close();
+		receiver.close();
+		
+	} // end broadcastRoundTrip
+	
+	
+	/**
+	 * Makes a snapshot of entities with distinct keys in random states.
+	 * 
+	 * @param count number of entities
+	 * @return snapshot sorted by key
+	 */
+	static Snapshot randomSnapshot( int count )
+	{
+		Snapshot snapshot = new Snapshot();
+		BitSet used = new BitSet();
+		
+		while ( snapshot.count < count ) {
+			
+			int key = ( 1 + random.nextInt( CLIENT_ID - 1 ) ) 
+					| ( random.nextBoolean() ? Snapshot.TORPEDO : 0 );
+			
+			if ( !used.get( key ) ) {
+				
+				used.set( key );
+				snapshot.add( key, randomState() );
+			}
+		}
+		
+		snapshot.sort();
+		return snapshot;
+		
+	} // end randomSnapshot
+	
+	
+	/**
+	 * Makes the next snapshot of a game: some entities move a little, some
+	 * jump, some leave and some arrive.
+	 * 
+	 * @param base earlier snapshot
+	 * @return later snapshot sorted by key
+	 */
+	static Snapshot evolve( Snapshot base )
+	{
+		Snapshot next = new Snapshot();
+		
+		for ( int i = 0; i < base.count; i++ ) {
+			
+			int state = base.states[i];
+			int roll = random.nextInt( 10 );
+			
+			if ( roll == 0 ) {
+				continue;
+			}
+			
+			if ( roll < 4 ) {
+				
+				int x = clamp( Snapshot.x( state ) + random.nextInt( 11 ) - 5, Constants.MAX_SECTOR_X );
+				int y = clamp( Snapshot.y( state ) + random.nextInt( 11 ) - 5, Constants.MAX_SECTOR_Y );
+				state = Snapshot.state( x, y, 1 + random.nextInt( 8 ) );
+			}
+			else if ( roll == 4 ) {
+				
+				state = randomState();
+			}
+			
+			next.add( base.keys[i], state );
+		}
+		
+		Snapshot arrivals = randomSnapshot( random.nextInt( 20 ) );
+		
+		for ( int i = 0; i < arrivals.count; i++ ) {
+			
+			if ( indexOf( next, arrivals.keys[i] ) < 0 ) {
+				next.add( arrivals.keys[i], arrivals.states[i] );
+			}
+		}
+		
+		next.sort();
+		return next;
+		
+	} // end evolve
+	
+	
+	/**
+	 * Makes a random state anywhere in the sector.
+	 */
+	static int randomState()
+	{
+		return Snapshot.state( random.nextInt( Constants.MAX_SECTOR_X + 1 ), 
+				random.nextInt( Constants.MAX_SECTOR_Y + 1 ), 1 + random.nextInt( 8 ) );
+		
+	} // end randomState
+	
+	
+	/**
+	 * Keeps a position between 0 and max.
+	 */
+	static int clamp( int value, int max )
+	{
+		return Math.max( 0, Math.min( value, max ) );
+		
+	} // end clamp
+	
+	
+	/**
+	 * Finds an entity in a snapshot. Slow, but only used to build snapshots.
+	 */
+	static int indexOf( Snapshot snapshot, int key )
+	{
+		for ( int i = 0; i < snapshot.count; i++ ) {
+			
+			if ( snapshot.keys[i] == key ) {
+				return i;
+			}
+		}
+		
+		return -1;
+		
+	} // end indexOf
+	
+	
+	/**
+	 * Fails unless two snapshots hold the same entities in the same states.
+	 */
+	static void same( Snapshot expected, Snapshot actual, String what )
+	{
+		Check.equal( expected.count, actual.count, what + ": entities" );
+		
+		for ( int i = 0; i < expected.count; i++ ) {
+			
+			Check.equal( expected.keys[i], actual.keys[i], what + ": key " + i );
+			Check.equal( expected.states[i], actual.states[i], what + ": state of key " + expected.keys[i] );
+		}
+		
+	} // end same
+	
+} // end SnapshotCodecTest class
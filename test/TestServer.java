@@ -0,0 +1,134 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import spaceWar.Constants;
+import spaceWar.Protocol;
+
+/**
+ * Runs a headless SpaceGameServer on the loopback interface for the tests
+ * that talk to one over real sockets, and registers clients with it. Only
+ * one can run at a time, as every server listens on the same port.
+ */
+class TestServer
+{
+	// Server being run
+	SpaceGameServer server;
+
+
+	/**
+	 * Starts a headless server with one room.
+	 *
+	 * @param tickMillis length of a tick of the game
+	 */
+	TestServer( int tickMillis )
+	{
+		ServerOptions options = ServerOptions.parse( new String[] { "--headless", "--workers=1",
+				"--tick-ms=" + tickMillis } );
+
+		server = new SpaceGameServer( options );
+
+	} // end TestServer constructor
+
+
+	/**
+	 * Port the server listens on for TCP connections and UDP updates.
+	 */
+	int port()
+	{
+		return server.options.port();
+
+	} // end port
+
+
+	/**
+	 * Connects a client to the server and registers it in room 0.
+	 *
+	 * @param udpPort port the client says it receives snapshots on
+	 * @return the connection, with the OBSTACLES frame already read
+	 * @throws Exception
+	 */
+	Client register( int udpPort ) throws Exception
+	{
+		Socket socket = new Socket( InetAddress.getLoopbackAddress(), port() );
+
+		// A server that does not answer fails the test instead of hanging it
+		socket.setSoTimeout( 5000 );
+		socket.setTcpNoDelay( true );
+
+		ByteBuffer frame = ByteBuffer.allocate( Protocol.REGISTER_SIZE );
+		Protocol.putRegister( frame, udpPort, 0, 0, 0 );
+
+		DataOutputStream out = new DataOutputStream( socket.getOutputStream() );
+		out.write( frame.array() );
+		out.flush();
+
+		DataInputStream in = new DataInputStream( socket.getInputStream() );
+
+		int length = in.readInt();
+		Check.equal( Constants.OBSTACLES, in.readInt(), "code of the answer to REGISTER" );
+
+		Client client = new Client( socket, out, in, in.readInt() );
+		in.skipBytes( length - 8 );
+
+		return client;
+
+	} // end register
+
+
+	/**
+	 * Stops the server and waits for its network threads to end, so that
+	 * the next server can listen on the port.
+	 *
+	 * @throws InterruptedException
+	 */
+	void stop() throws InterruptedException
+	{
+		server.close();
+		server.reliableServer.join( 5000 );
+		server.bestEffortServer.join( 5000 );
+
+	} // end stop
+
+
+	// A registered client
+	static class Client
+	{
+		// Connection with the server and the streams writing to it and
+		// reading from it
+		Socket socket;
+		DataOutputStream out;
+		DataInputStream in;
+
+		// Session ID the server assigned
+		int sessionID;
+
+		Client( Socket socket, DataOutputStream out, DataInputStream in, int sessionID )
+		{
+			this.socket = socket;
+			this.out = out;
+			this.in = in;
+			this.sessionID = sessionID;
+
+		} // end Client constructor
+
+
+		/**
+		 * Writes a frame holding only a code.
+		 *
+		 * @param code code of the frame
+		 * @throws Exception
+		 */
+		void send( int code ) throws Exception
+		{
+			out.writeInt( 4 );
+			out.writeInt( code );
+			out.flush();
+
+		} // end send
+
+	} // end Client class
+
+} // end TestServer class